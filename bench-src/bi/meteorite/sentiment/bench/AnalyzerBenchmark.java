@@ -0,0 +1,79 @@
+package bi.meteorite.sentiment.bench;
+
+import bi.meteorite.sentiment.nlp.SentimentAnalyzer;
+import bi.meteorite.sentiment.nlp.SentimentClass;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A whole document through SentimentAnalyzer.INSTANCE, pipeline included, over the bundled corpus of
+ * short, medium and long documents.  The result cache is left off so every call runs the pipeline.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(value = 1, jvmArgsAppend = "-Xmx3g")
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+public class AnalyzerBenchmark
+{
+    @Param({"short", "medium", "long"})
+    public String corpus;
+
+    private String[] documents;
+    private int next;
+
+    @Setup
+    public void setup() throws IOException
+    {
+        documents = load("corpus/" + corpus + ".txt");
+        SentimentAnalyzer.INSTANCE.setCache(0, 0);
+        // build the pipeline outside of the measurement
+        SentimentAnalyzer.INSTANCE.apply(documents[0]);
+    }
+
+    @Benchmark
+    public SentimentClass apply()
+    {
+        String document = documents[next];
+        next = (next + 1) % documents.length;
+        return SentimentAnalyzer.INSTANCE.apply(document);
+    }
+
+    /**
+     * @return the non-blank lines of a classpath resource, one document per line
+     */
+    static String[] load(String resource) throws IOException
+    {
+        InputStream in = AnalyzerBenchmark.class.getResourceAsStream(resource);
+        if(in == null)
+        {
+            throw new IOException("Missing benchmark corpus " + resource);
+        }
+        List<String> ret = new ArrayList<String>();
+        BufferedReader reader = new BufferedReader(new InputStreamReader(in, "UTF-8"));
+        try
+        {
+            String line;
+            while((line = reader.readLine()) != null)
+            {
+                if(line.trim().length() > 0)
+                {
+                    ret.add(line.trim());
+                }
+            }
+        }
+        finally
+        {
+            reader.close();
+        }
+        return ret.toArray(new String[ret.size()]);
+    }
+}
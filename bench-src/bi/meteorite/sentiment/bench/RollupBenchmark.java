@@ -0,0 +1,94 @@
+package bi.meteorite.sentiment.bench;
+
+import bi.meteorite.sentiment.nlp.SentimentClass;
+import bi.meteorite.sentiment.nlp.rollup.ISentimentAccumulator;
+import bi.meteorite.sentiment.nlp.rollup.Sentence;
+import bi.meteorite.sentiment.nlp.rollup.SentenceBatch;
+import bi.meteorite.sentiment.nlp.rollup.SentenceBlock;
+import bi.meteorite.sentiment.nlp.rollup.SentimentRollup;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Every rollup strategy over documents of a growing number of sentences, through each of the three
+ * ways a rollup can be fed one document at a time as well as over a whole block of documents.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(1)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class RollupBenchmark
+{
+    @Param({"SIMPLE_VOTE", "AVERAGE_PROBABILITIES", "LAST_SENTENCE_WINS", "LONGEST_SENTENCE_WINS", "WILSON_SCORE"})
+    public String strategy;
+
+    @Param({"1", "4", "16", "64"})
+    public int sentences;
+
+    private static final int BLOCK_DOCUMENTS = 64;
+
+    private SentimentRollup rollup;
+    private List<Sentence> list;
+    private SentenceBatch batch;
+    private ISentimentAccumulator accumulator;
+    private SentenceBlock block;
+    private SentimentClass[] results;
+
+    @Setup
+    public void setup()
+    {
+        rollup = SentimentRollup.valueOf(strategy);
+        list = Synthetic.sentences(sentences, 42);
+        batch = SentenceBatch.of(list);
+        accumulator = rollup.newAccumulator();
+        block = new SentenceBlock(BLOCK_DOCUMENTS, BLOCK_DOCUMENTS * sentences);
+        for(int document = 0;document < BLOCK_DOCUMENTS;++document)
+        {
+            block.beginDocument();
+            for(Sentence sentence : Synthetic.sentences(sentences, document))
+            {
+                block.add(sentence.getSentiment().getIndex(), sentence.getProbabilities(), sentence.getSentence().length());
+            }
+        }
+        results = new SentimentClass[BLOCK_DOCUMENTS];
+    }
+
+    @Benchmark
+    public SentimentClass list()
+    {
+        return rollup.apply(list);
+    }
+
+    @Benchmark
+    public SentimentClass batch()
+    {
+        return rollup.apply(batch);
+    }
+
+    /**
+     * Rolls up a block of BLOCK_DOCUMENTS documents in one call, so divide the score by that many to
+     * compare with the per document forms.
+     */
+    @Benchmark
+    public SentimentClass[] block()
+    {
+        rollup.apply(block, results);
+        return results;
+    }
+
+    @Benchmark
+    public SentimentClass accumulator()
+    {
+        accumulator.begin();
+        for(Sentence sentence : list)
+        {
+            accumulator.add(sentence.getSentiment().getIndex(), sentence.getProbabilities(),
+                    sentence.getSentence().length());
+        }
+        return accumulator.finish();
+    }
+}
@@ -0,0 +1,39 @@
+package bi.meteorite.sentiment.bench;
+
+import bi.meteorite.sentiment.nlp.SentimentClass;
+import bi.meteorite.sentiment.nlp.rollup.Sentence;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The cost of building the Sentence objects that the list form of a rollup consumes.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(1)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class SentenceBenchmark
+{
+    private double[] probabilities;
+    private String text;
+    private SentimentClass sentimentClass;
+
+    @Setup
+    public void setup()
+    {
+        Random random = new Random(42);
+        probabilities = Synthetic.probabilities(random);
+        text = Synthetic.text(random);
+        sentimentClass = SentimentClass.getSpecific(Synthetic.argMax(probabilities));
+    }
+
+    @Benchmark
+    public Sentence construct()
+    {
+        return new Sentence(probabilities, text, sentimentClass);
+    }
+}
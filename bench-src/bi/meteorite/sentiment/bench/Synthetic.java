@@ -0,0 +1,75 @@
+package bi.meteorite.sentiment.bench;
+
+import bi.meteorite.sentiment.nlp.SentimentClass;
+import bi.meteorite.sentiment.nlp.rollup.Sentence;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Reproducible synthetic sentences, so that rollups can be measured without running the pipeline.
+ */
+final class Synthetic
+{
+    private Synthetic() {}
+
+    /**
+     * @return a probability distribution over the sentiment classes
+     */
+    static double[] probabilities(Random random)
+    {
+        double[] ret = new double[SentimentClass.count()];
+        double sum = 0;
+        for(int i = 0;i < ret.length;++i)
+        {
+            ret[i] = random.nextDouble();
+            sum += ret[i];
+        }
+        for(int i = 0;i < ret.length;++i)
+        {
+            ret[i] /= sum;
+        }
+        return ret;
+    }
+
+    static int argMax(double[] probabilities)
+    {
+        int ret = 0;
+        for(int i = 1;i < probabilities.length;++i)
+        {
+            if(probabilities[i] > probabilities[ret])
+            {
+                ret = i;
+            }
+        }
+        return ret;
+    }
+
+    static String text(Random random)
+    {
+        int words = 3 + random.nextInt(30);
+        StringBuilder ret = new StringBuilder();
+        for(int i = 0;i < words;++i)
+        {
+            if(i > 0)
+            {
+                ret.append(' ');
+            }
+            ret.append("word").append(random.nextInt(100));
+        }
+        return ret.toString();
+    }
+
+    static List<Sentence> sentences(int size, long seed)
+    {
+        Random random = new Random(seed);
+        List<Sentence> ret = new ArrayList<Sentence>(size);
+        for(int i = 0;i < size;++i)
+        {
+            double[] probabilities = probabilities(random);
+            ret.add(new Sentence(probabilities, text(random), SentimentClass.getSpecific(argMax(probabilities))));
+        }
+        return ret;
+    }
+}
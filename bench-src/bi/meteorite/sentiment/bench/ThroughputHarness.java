@@ -0,0 +1,312 @@
+package bi.meteorite.sentiment.bench;
+
+import bi.meteorite.sentiment.NLPStepMeta;
+import bi.meteorite.sentiment.nlp.metrics.LatencyHistogram;
+import bi.meteorite.sentiment.nlp.rollup.SentimentRollup;
+import org.pentaho.di.core.KettleEnvironment;
+import org.pentaho.di.core.RowProducer;
+import org.pentaho.di.core.annotations.Step;
+import org.pentaho.di.core.exception.KettleException;
+import org.pentaho.di.core.exception.KettleStepException;
+import org.pentaho.di.core.plugins.PluginRegistry;
+import org.pentaho.di.core.plugins.StepPluginType;
+import org.pentaho.di.core.row.RowMeta;
+import org.pentaho.di.core.row.RowMetaInterface;
+import org.pentaho.di.core.row.ValueMeta;
+import org.pentaho.di.core.row.ValueMetaInterface;
+import org.pentaho.di.trans.Trans;
+import org.pentaho.di.trans.TransHopMeta;
+import org.pentaho.di.trans.TransMeta;
+import org.pentaho.di.trans.step.RowAdapter;
+import org.pentaho.di.trans.step.StepMeta;
+import org.pentaho.di.trans.step.StepMetaInterface;
+import org.pentaho.di.trans.steps.dummytrans.DummyTransMeta;
+import org.pentaho.di.trans.steps.injector.InjectorMeta;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Runs NLPStep inside a real transformation, input -> NLPStep -> dummy, without Spoon and reports
+ * rows/sec, per-row latency and peak heap.  Unlike the JMH benchmarks this includes getRow/putRow,
+ * the row sets between steps, output row building and the memory of every step copy.
+ *
+ * Options are given as key=value, lists are comma separated, and every combination is run in turn:
+ * <pre>
+ * rows=10000           rows per run
+ * warmup=200           rows of an untimed run per corpus, which also loads the models
+ * copies=1             NLPStep copies
+ * corpus=mixed         short, medium, long or mixed: the text length distribution
+ * analysis=WILSON_SCORE  SentimentRollup names
+ * threads=1            worker threads per copy
+ * batch=1              documents per pipeline call
+ * </pre>
+ *
+ * Rows are fed through an injector rather than a row generator, because a row generator can only
+ * repeat one constant row.  Each row is stamped with the time it was injected and its latency is
+ * taken when it reaches the dummy step, so it includes the time spent waiting in the row sets.
+ *
+ * The peak heap is the most heap in use at any sample taken every {@value HeapSampler#INTERVAL_MILLIS}
+ * ms during the run.  It includes garbage not yet collected, so compare it between runs with the same
+ * heap settings.
+ */
+public class ThroughputHarness
+{
+    private static final String INPUT = "input";
+    private static final String NLP = "nlp";
+    private static final String OUTPUT = "output";
+
+    private static final String TEXT_FIELD = "text";
+    private static final String INJECTED_FIELD = "injected_nanos";
+    private static final String SENTIMENT_FIELD = "sentiment";
+
+    private static final String[] CORPORA = {"short", "medium", "long"};
+
+    public static void main(String[] args) throws Exception
+    {
+        Map<String, String> options = parse(args);
+        int rows = Integer.parseInt(option(options, "rows", "10000"));
+        int warmup = Integer.parseInt(option(options, "warmup", "200"));
+        int threads = Integer.parseInt(option(options, "threads", "1"));
+        int batch = Integer.parseInt(option(options, "batch", "1"));
+        String[] copies = option(options, "copies", "1").split(",");
+        String[] corpora = option(options, "corpus", "mixed").split(",");
+        String[] analyses = option(options, "analysis", SentimentRollup.WILSON_SCORE.name()).split(",");
+
+        KettleEnvironment.init(false);
+        PluginRegistry.getInstance().registerPluginClass(NLPStepMeta.class.getName(), StepPluginType.class, Step.class);
+
+        System.out.println("corpus\tanalysis\tcopies\tthreads\tbatch\trows\trows/sec\tp50 ms\tp99 ms\tmax ms\tpeak heap MB");
+        for(String corpus : corpora)
+        {
+            String[] documents = documents(corpus);
+            if(warmup > 0)
+            {
+                run(documents, warmup, 1, SentimentRollup.valueOf(analyses[0]), threads, batch);
+            }
+            for(String copy : copies)
+            {
+                for(String analysis : analyses)
+                {
+                    SentimentRollup rollup = SentimentRollup.valueOf(analysis);
+                    Result result = run(documents, rows, Integer.parseInt(copy), rollup, threads, batch);
+                    System.out.println(corpus + "\t" + analysis + "\t" + copy + "\t" + threads + "\t" + batch + "\t"
+                            + rows + "\t" + result);
+                }
+            }
+        }
+    }
+
+    private static class Result
+    {
+        double rowsPerSecond;
+        LatencyHistogram latency;
+        long peakHeapBytes;
+
+        @Override
+        public String toString()
+        {
+            return String.format("%.1f\t%.2f\t%.2f\t%.2f\t%d", rowsPerSecond, latency.getPercentileMillis(50),
+                    latency.getPercentileMillis(99), latency.getMaxMillis(), peakHeapBytes >> 20);
+        }
+    }
+
+    private static Result run(String[] documents, int rows, int copies, SentimentRollup rollup, int threads, int batch)
+            throws KettleException
+    {
+        TransMeta transMeta = new TransMeta();
+        transMeta.setName("nlp-throughput");
+
+        InjectorMeta injector = new InjectorMeta();
+        injector.allocate(2);
+        injector.setFieldname(new String[]{TEXT_FIELD, INJECTED_FIELD});
+        injector.setType(new int[]{ValueMetaInterface.TYPE_STRING, ValueMetaInterface.TYPE_INTEGER});
+        injector.setLength(new int[]{-1, -1});
+        injector.setPrecision(new int[]{-1, -1});
+
+        NLPStepMeta nlp = new NLPStepMeta();
+        nlp.setDefault();
+        nlp.allocate(1);
+        nlp.setFieldInStream(new String[]{TEXT_FIELD});
+        nlp.setFieldOutStream(new String[]{SENTIMENT_FIELD});
+        nlp.setAnalysisType(rollup.getDescription());
+        nlp.setWorkerThreads(threads);
+        nlp.setBatchSize(batch);
+
+        DummyTransMeta dummy = new DummyTransMeta();
+        dummy.setDefault();
+
+        StepMeta input = addStep(transMeta, INPUT, injector);
+        StepMeta scorer = addStep(transMeta, NLP, nlp);
+        scorer.setCopies(copies);
+        StepMeta output = addStep(transMeta, OUTPUT, dummy);
+        transMeta.addTransHop(new TransHopMeta(input, scorer));
+        transMeta.addTransHop(new TransHopMeta(scorer, output));
+
+        Trans trans = new Trans(transMeta);
+        trans.prepareExecution(null);
+
+        final LatencyHistogram latency = new LatencyHistogram();
+        trans.findRunThread(OUTPUT).addRowListener(new RowAdapter()
+        {
+            @Override
+            public void rowReadEvent(RowMetaInterface rowMeta, Object[] row) throws KettleStepException
+            {
+                long injected = (Long) row[rowMeta.indexOfValue(INJECTED_FIELD)];
+                latency.record(System.nanoTime() - injected);
+            }
+        });
+        RowProducer producer = trans.addRowProducer(INPUT, 0);
+
+        RowMetaInterface rowMeta = new RowMeta();
+        rowMeta.addValueMeta(new ValueMeta(TEXT_FIELD, ValueMetaInterface.TYPE_STRING));
+        rowMeta.addValueMeta(new ValueMeta(INJECTED_FIELD, ValueMetaInterface.TYPE_INTEGER));
+
+        System.gc();
+        HeapSampler heap = new HeapSampler();
+        heap.start();
+
+        Random random = new Random(42);
+        long start = System.nanoTime();
+        trans.startThreads();
+        for(int i = 0;i < rows;++i)
+        {
+            String document = documents[random.nextInt(documents.length)];
+            // blocks while the input row set is full, just as an upstream step would
+            producer.putRow(rowMeta, new Object[]{document, System.nanoTime()});
+        }
+        producer.finished();
+        trans.waitUntilFinished();
+        long elapsed = System.nanoTime() - start;
+        heap.finish();
+
+        if(trans.getErrors() > 0)
+        {
+            throw new KettleException("The transformation finished with " + trans.getErrors() + " errors");
+        }
+
+        Result result = new Result();
+        result.rowsPerSecond = rows * 1e9 / elapsed;
+        result.latency = latency;
+        result.peakHeapBytes = heap.getMaxUsed();
+        return result;
+    }
+
+    private static StepMeta addStep(TransMeta transMeta, String name, StepMetaInterface meta)
+    {
+        String id = PluginRegistry.getInstance().getPluginId(StepPluginType.class, meta);
+        StepMeta stepMeta = new StepMeta(id, name, meta);
+        transMeta.addStep(stepMeta);
+        return stepMeta;
+    }
+
+    /**
+     * Polls the heap in use on a thread of its own.  The peaks of the separate heap pools are reached
+     * at different times, eden's on nearly every run, so adding them up says little about the memory
+     * the step copies hold.
+     */
+    private static class HeapSampler extends Thread
+    {
+        static final int INTERVAL_MILLIS = 10;
+
+        private final MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        private volatile boolean finished;
+        private volatile long maxUsed;
+
+        HeapSampler()
+        {
+            super("HeapSampler");
+            setDaemon(true);
+        }
+
+        @Override
+        public void run()
+        {
+            while(!finished)
+            {
+                sample();
+                try
+                {
+                    Thread.sleep(INTERVAL_MILLIS);
+                }
+                catch(InterruptedException e)
+                {
+                    return;
+                }
+            }
+        }
+
+        private void sample()
+        {
+            maxUsed = Math.max(maxUsed, memory.getHeapMemoryUsage().getUsed());
+        }
+
+        /**
+         * Stops sampling after one last sample.
+         */
+        void finish()
+        {
+            finished = true;
+            interrupt();
+            try
+            {
+                join();
+            }
+            catch(InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+            }
+            sample();
+        }
+
+        long getMaxUsed()
+        {
+            return maxUsed;
+        }
+    }
+
+    /**
+     * @return the documents of a bundled corpus, or of all of them for "mixed"
+     */
+    private static String[] documents(String corpus) throws IOException
+    {
+        if(!"mixed".equals(corpus))
+        {
+            return AnalyzerBenchmark.load("corpus/" + corpus + ".txt");
+        }
+        List<String> ret = new ArrayList<String>();
+        for(String name : CORPORA)
+        {
+            ret.addAll(Arrays.asList(AnalyzerBenchmark.load("corpus/" + name + ".txt")));
+        }
+        return ret.toArray(new String[ret.size()]);
+    }
+
+    private static Map<String, String> parse(String[] args)
+    {
+        Map<String, String> ret = new HashMap<String, String>();
+        for(String arg : args)
+        {
+            int eq = arg.indexOf('=');
+            if(eq <= 0)
+            {
+                throw new IllegalArgumentException("Expected key=value but got " + arg);
+            }
+            ret.put(arg.substring(0, eq), arg.substring(eq + 1));
+        }
+        return ret;
+    }
+
+    private static String option(Map<String, String> options, String key, String defaultValue)
+    {
+        String value = options.get(key);
+        return value == null ? defaultValue : value;
+    }
+}
@@ -0,0 +1,31 @@
+package bi.meteorite.sentiment.bench;
+
+import bi.meteorite.sentiment.nlp.rollup.strategy.WilsonScore;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The Wilson lower bound on its own, for every positive count of a document of n sentences.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(1)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class WilsonScoreBenchmark
+{
+    @Param({"1", "8", "64"})
+    public int sentences;
+
+    private int positive;
+
+    @Benchmark
+    public double ciLowerBound()
+    {
+        // walk through every positive count so the argument is not a constant
+        positive = positive == sentences ? 0 : positive + 1;
+        return WilsonScore.ci_lower_bound(positive, sentences, 0.975);
+    }
+}
@@ -15,18 +15,37 @@
 */
 package bi.meteorite.sentiment;
 
+import bi.meteorite.sentiment.nlp.SentimentAnalyzer;
 import bi.meteorite.sentiment.nlp.SentimentClass;
-import bi.meteorite.sentiment.nlp.rollup.Sentence;
+import bi.meteorite.sentiment.nlp.SharedPipeline;
+import bi.meteorite.sentiment.nlp.StagedPipeline;
+import bi.meteorite.sentiment.nlp.budget.BudgetExceededException;
+import bi.meteorite.sentiment.nlp.budget.BudgetPolicy;
+import bi.meteorite.sentiment.nlp.budget.DeadlineAnnotator;
+import bi.meteorite.sentiment.nlp.budget.DocumentBudget;
+import bi.meteorite.sentiment.nlp.budget.DocumentTimeoutException;
+import bi.meteorite.sentiment.nlp.budget.TimeoutPolicy;
+import bi.meteorite.sentiment.nlp.cache.ResultCache;
+import bi.meteorite.sentiment.nlp.metrics.PipelineMetrics;
+import bi.meteorite.sentiment.nlp.metrics.Stage;
+import bi.meteorite.sentiment.nlp.cache.SentenceCache;
+import bi.meteorite.sentiment.nlp.cache.SentencePrediction;
+import bi.meteorite.sentiment.nlp.filter.SkipResult;
+import bi.meteorite.sentiment.nlp.filter.TextFilter;
+import bi.meteorite.sentiment.nlp.lexicon.LexiconClassifier;
+import bi.meteorite.sentiment.nlp.rollup.DocumentSentiment;
+import bi.meteorite.sentiment.nlp.rollup.ISentimentAccumulator;
+import bi.meteorite.sentiment.nlp.rollup.OutputType;
+import bi.meteorite.sentiment.nlp.rollup.SentimentStatistics;
 import bi.meteorite.sentiment.nlp.rollup.SentimentRollup;
-import edu.stanford.nlp.ie.machinereading.structure.AnnotationUtils;
+import bi.meteorite.sentiment.nlp.server.RemoteScorer;
+import com.google.common.base.Charsets;
+import com.google.common.hash.HashCode;
+import com.google.common.io.Files;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import edu.stanford.nlp.ling.CoreAnnotations;
-import edu.stanford.nlp.neural.rnn.RNNCoreAnnotations;
 import edu.stanford.nlp.pipeline.Annotation;
-import edu.stanford.nlp.pipeline.StanfordCoreNLP;
-import edu.stanford.nlp.sentiment.SentimentCoreAnnotations;
-import edu.stanford.nlp.trees.Tree;
 import edu.stanford.nlp.util.CoreMap;
-import org.ejml.simple.SimpleMatrix;
 import org.pentaho.di.core.Const;
 import org.pentaho.di.core.exception.KettleException;
 import org.pentaho.di.core.exception.KettleStepException;
@@ -37,9 +56,13 @@ import org.pentaho.di.trans.Trans;
 import org.pentaho.di.trans.TransMeta;
 import org.pentaho.di.trans.step.*;
 
-import java.util.ArrayList;
-import java.util.List;
-import java.util.Properties;
+import javax.management.ObjectName;
+import java.io.File;
+import java.io.IOException;
+import java.net.MalformedURLException;
+import java.lang.management.ManagementFactory;
+import java.util.*;
+import java.util.concurrent.*;
 
 /**
  * This class is part of the demo step plug-in implementation.
@@ -84,83 +107,543 @@ public class NLPStep extends BaseStep implements StepInterface {
 		meta = (NLPStepMeta) smi;
 		data = (NLPStepData) sdi;
 
-        return super.init(meta, data);
+        if ( !super.init( meta, data ) ) {
+            return false;
+        }
+
+        // Loading the models dominates the cost of scoring, so do it once and share it between copies
+        long start = System.currentTimeMillis();
+        try {
+            data.pipelineProperties = meta.getPipelineProperties( this );
+            String serverUrl = environmentSubstitute( meta.getServerUrl() );
+            if ( !Const.isEmpty( serverUrl ) ) {
+                // the server parses and scores, so only the tokenizer and the splitter are loaded here
+                data.remoteScorer = new RemoteScorer( serverUrl.trim(), data.pipelineProperties,
+                        meta.getServerBatchSentences(), meta.getServerMaxInFlight() );
+                data.pipelineProperties = SharedPipeline.withAnnotators( data.pipelineProperties, "tokenize, ssplit" );
+                logBasic( BaseMessages.getString( PKG, "Sentiment.Log.Server", serverUrl ) );
+            }
+            data.pipeline = SharedPipeline.INSTANCE.acquire( data.pipelineProperties );
+        } catch ( MalformedURLException e ) {
+            logError( BaseMessages.getString( PKG, "Sentiment.Log.UnableToUseServer" ), e );
+            return false;
+        } catch ( Exception e ) {
+            logError( BaseMessages.getString( PKG, "Sentiment.Log.UnableToLoadPipeline" ), e );
+            return false;
+        }
+        logBasic( BaseMessages.getString( PKG, "Sentiment.Log.Loaded",
+                String.valueOf( System.currentTimeMillis() - start ) ) );
+
+        data.textFilter = new TextFilter( meta.isSkipUrls(), meta.isSkipHashtags(), meta.isSkipSymbols() );
+        data.skippedSentiment = SkipResult.fromDescription( meta.getSkipResult() ).getSentiment();
+        // the index and class of a sentence, its text if asked for and the probability of every class
+        data.sentenceText = !Const.isEmpty( environmentSubstitute( meta.getSentenceTextField() ) );
+        data.nrSentenceFields = 2 + ( data.sentenceText ? 1 : 0 ) + SentimentClass.count();
+
+        // the pre-classifier and the document cache only hold rolled up classes, no use for sentence rows
+        if ( meta.getCascadeThreshold() > 0 && !meta.isSentenceOutput() ) {
+            // documents the lexicon is sure enough about never reach the parser
+            String lexiconFile = environmentSubstitute( meta.getLexiconFile() );
+            try {
+                data.lexicon = Const.isEmpty( lexiconFile )
+                        ? LexiconClassifier.defaultLexicon() : LexiconClassifier.load( new File( lexiconFile ) );
+            } catch ( IOException e ) {
+                logError( BaseMessages.getString( PKG, "Sentiment.Log.UnableToLoadLexicon" ), e );
+                return false;
+            }
+        }
+
+        int maxRollups = setupDocuments();
+
+        if ( ResultCache.isEnabled( meta.getCacheMaxEntries(), meta.getCacheMaxBytes() ) && !meta.isSentenceOutput() ) {
+            // the value holds an array of one shared enum constant per rollup and maybe the statistics
+            data.documentCache = new ResultCache<DocumentSentiment>( meta.getCacheMaxEntries(), meta.getCacheMaxBytes(),
+                    ResultCache.ENTRY_OVERHEAD_BYTES + 24 + 16 + 8 * maxRollups + 16 + 8 * SentimentStatistics.COUNT );
+        }
+
+        DocumentBudget budget = null;
+        if ( DocumentBudget.isEnabled( meta.getMaxDocumentChars(), meta.getMaxSentences(), meta.getMaxSentenceLength() ) ) {
+            budget = new DocumentBudget(
+                    meta.getMaxDocumentChars(), BudgetPolicy.fromDescription( meta.getDocumentCharsPolicy() ),
+                    meta.getMaxSentences(), BudgetPolicy.fromDescription( meta.getSentencesPolicy() ),
+                    meta.getMaxSentenceLength(), BudgetPolicy.fromDescription( meta.getSentenceLengthPolicy() ) );
+        }
+        data.timeoutPolicy = TimeoutPolicy.fromDescription( meta.getTimeoutPolicy() );
+        // the budgets are applied to the split sentences before and while they go through the parser,
+        // and every annotator is timed on its own
+        data.metrics = new PipelineMetrics();
+        data.stagedPipeline = new StagedPipeline( data.pipelineProperties, budget, meta.getTimeoutMillis(), data.metrics,
+                data.remoteScorer );
+        registerMetrics();
+        if ( ResultCache.isEnabled( meta.getSentenceCacheMaxEntries(), meta.getSentenceCacheMaxBytes() ) ) {
+            data.sentenceCache = new SentenceCache( data.stagedPipeline, meta.getSentenceCacheMaxEntries(),
+                    meta.getSentenceCacheMaxBytes() );
+        }
+
+        int threads = meta.getWorkerThreads();
+        if ( meta.getBatchSize() > 1 ) {
+            // the batch is annotated by the pipeline's own threads, see scoreBatch()
+            data.batch = new ArrayList<ScoredRow>( meta.getBatchSize() );
+        } else if ( threads > 1 ) {
+            // all workers share the pipeline above, so extra threads do not cost extra model heap
+            data.maxInFlight = threads * 4;
+            data.executor = new ThreadPoolExecutor( threads, threads, 0L, TimeUnit.MILLISECONDS,
+                    new ArrayBlockingQueue<Runnable>( data.maxInFlight ),
+                    new ThreadFactoryBuilder().setDaemon( true ).setNameFormat( getStepname() + "." + getCopy() + "-%d" ).build() );
+            data.completionService = new ExecutorCompletionService<ScoredRow>( data.executor );
+            data.pending = new ArrayDeque<Future<ScoredRow>>();
+        }
+        return warmUp();
     }
 
-    private String processString( String document){
-        // shut off the annoying intialization messages
-        Properties props = new Properties();
-        //specify the annotators that we want to use to annotate the text.  We need a tokenized sentence with POS tags to extract sentiment.
-        //this forms our pipeline
-        props.setProperty("annotators", "tokenize, ssplit, parse, sentiment");
-        StanfordCoreNLP pipeline = new StanfordCoreNLP(props);
-        Annotation annotation = pipeline.process(document);
-        List<Sentence> sentences = new ArrayList<Sentence>();
-        /*
-         * We're going to iterate over all of the sentences and extract the sentiment.  We'll adopt a majority rule policy
-         */
-        for( CoreMap sentence : annotation.get(CoreAnnotations.SentencesAnnotation.class))
-        {
-            //for each sentence, we get the sentiment that CoreNLP thinks this sentence indicates.
-            Tree sentimentTree = sentence.get(SentimentCoreAnnotations.AnnotatedTree.class);
-            int sentimentClassIdx = RNNCoreAnnotations.getPredictedClass(sentimentTree);
-            SentimentClass sentimentClass = SentimentClass.getSpecific(sentimentClassIdx);
+    /**
+     * Runs the warm-up documents through the shared pipeline, so that the first rows do not pay for
+     * class loading and for the JIT compiling the annotators.  The staged pipeline is left alone to keep
+     * the warm-up out of the metrics; it runs the same annotators.  With a CoreNLP server the split
+     * documents are scored there too, which also opens the connections to it.
+     *
+     * Only the first step copy to acquire a pipeline warms it up, the others share the warmed JVM.
+     */
+    private boolean warmUp() {
+        String warmUpFile = environmentSubstitute( meta.getWarmUpFile() );
+        if ( Const.isEmpty( warmUpFile ) ) {
+            return true;
+        }
+        if ( !SharedPipeline.INSTANCE.claimWarmUp( data.pipelineProperties ) ) {
+            logBasic( BaseMessages.getString( PKG, "Sentiment.Log.WarmUpSkipped" ) );
+            return true;
+        }
+        long start = System.currentTimeMillis();
+        List<Annotation> documents = new ArrayList<Annotation>();
+        try {
+            for ( String line : Files.readLines( new File( warmUpFile ), Charsets.UTF_8 ) ) {
+                if ( !Const.isEmpty( line.trim() ) ) {
+                    documents.add( new Annotation( line ) );
+                }
+            }
+        } catch ( IOException e ) {
+            logError( BaseMessages.getString( PKG, "Sentiment.Log.UnableToWarmUp" ), e );
+            return false;
+        }
+        int threads = Math.max( 1, meta.getWorkerThreads() );
+        if ( threads > 1 && documents.size() > 1 ) {
+            data.pipeline.annotate( documents, threads );
+        } else {
+            for ( Annotation document : documents ) {
+                data.pipeline.annotate( document );
+            }
+        }
+        if ( data.remoteScorer != null ) {
+            try {
+                data.remoteScorer.score( documents );
+            } catch ( IllegalStateException e ) {
+                logError( BaseMessages.getString( PKG, "Sentiment.Log.UnableToUseServer" ), e );
+                return false;
+            }
+        }
+        logBasic( BaseMessages.getString( PKG, "Sentiment.Log.WarmedUp", String.valueOf( documents.size() ),
+                String.valueOf( System.currentTimeMillis() - start ) ) );
+        return true;
+    }
+
+    /**
+     * Groups the output fields by input field, so each input field is annotated once per row and then
+     * rolled up by every strategy reading it.
+     *
+     * @return the largest number of rollups of one input field
+     */
+    private int setupDocuments() {
+        String[] fieldInStream = meta.getFieldInStream();
+        List<String> documents = new ArrayList<String>();
+        List<List<SentimentRollup>> rollups = new ArrayList<List<SentimentRollup>>();
+        data.documentNrs = new int[fieldInStream.length];
+        data.rollupNrs = new int[fieldInStream.length];
+        data.outputTypes = new OutputType[fieldInStream.length];
+        for ( int i = 0; i < fieldInStream.length; i++ ) {
+            int documentNr = documents.indexOf( fieldInStream[i] );
+            if ( documentNr < 0 ) {
+                documentNr = documents.size();
+                documents.add( fieldInStream[i] );
+                rollups.add( new ArrayList<SentimentRollup>() );
+            }
+            data.documentNrs[i] = documentNr;
+
+            SentimentRollup rollup = SentimentRollup.fromDescription( meta.getAnalysisType( i ) );
+            List<SentimentRollup> documentRollups = rollups.get( documentNr );
+            if ( rollup != null && !documentRollups.contains( rollup ) ) {
+                documentRollups.add( rollup );
+            }
+            data.rollupNrs[i] = documentRollups.indexOf( rollup );
+            data.outputTypes[i] = OutputType.fromDescription( meta.getOutputType( i ) );
+        }
+
+        int maxRollups = 0;
+        data.nrDocuments = documents.size();
+        data.documentRollups = new SentimentRollup[data.nrDocuments][];
+        data.documentStatistics = new boolean[data.nrDocuments];
+        data.documentCacheKeys = new String[data.nrDocuments];
+        for ( int i = 0; i < fieldInStream.length; i++ ) {
+            data.documentStatistics[data.documentNrs[i]] |= data.outputTypes[i].isStatistic();
+        }
+        for ( int d = 0; d < data.nrDocuments; d++ ) {
+            List<SentimentRollup> documentRollups = rollups.get( d );
+            data.documentRollups[d] = documentRollups.toArray( new SentimentRollup[documentRollups.size()] );
+            data.documentCacheKeys[d] = Arrays.toString( data.documentRollups[d] ) + ( data.documentStatistics[d] ? "+statistics" : "" );
+            maxRollups = Math.max( maxRollups, documentRollups.size() );
+        }
 
-            /*
-             * Each possible sentiment has an associated probability, so let's pull the entire
-             * set of probabilities across all sentiment classes.
-             */
-            double[] probs = new double[SentimentClass.values().length];
-            {
-                SimpleMatrix mat = RNNCoreAnnotations.getPredictions(sentimentTree);
-                for(int i = 0;i < SentimentClass.values().length;++i)
-                {
-                    probs[i] = mat.get(i);
+        final SentimentRollup[][] documentRollups = data.documentRollups;
+        final boolean[] documentStatistics = data.documentStatistics;
+        data.accumulators = new ThreadLocal<ISentimentAccumulator[][]>() {
+            @Override
+            protected ISentimentAccumulator[][] initialValue() {
+                ISentimentAccumulator[][] accumulators = new ISentimentAccumulator[documentRollups.length][];
+                for ( int d = 0; d < documentRollups.length; d++ ) {
+                    // the statistics are folded in by one more accumulator behind the rollups
+                    accumulators[d] = new ISentimentAccumulator[documentRollups[d].length + ( documentStatistics[d] ? 1 : 0 )];
+                    for ( int k = 0; k < documentRollups[d].length; k++ ) {
+                        accumulators[d][k] = documentRollups[d][k].newAccumulator();
+                    }
+                    if ( documentStatistics[d] ) {
+                        accumulators[d][documentRollups[d].length] = new SentimentStatistics();
+                    }
                 }
+                return accumulators;
             }
-            /*
-             * Add the sentence and the associated probabilities to our list.
-             */
-            String sentenceStr = AnnotationUtils.sentenceToString(sentence).replace("\n", "");
-            sentences.add(new Sentence(probs, sentenceStr, sentimentClass));
+        };
+        return maxRollups;
+    }
+
+    /**
+     * Annotates the document once and rolls it up with every rollup of the given document number.
+     *
+     * @return the result of the document, or null when no output field has a known analysis type
+     */
+    private DocumentSentiment processString( final int documentNr, final String document ) {
+        if ( !isScored( documentNr ) ) {
+            return null;
+        }
+        if ( data.textFilter.isSkipped( document ) ) {
+            return skip( documentNr );
         }
-        SentimentClass sentimentClass = null;
-        if(meta.getAnalysisType().equals("Wilson Score")) {
-             sentimentClass = SentimentRollup.WILSON_SCORE.apply(sentences);
+        DocumentSentiment preClassified = preClassify( documentNr, document );
+        if ( preClassified != null ) {
+            return preClassified;
         }
-        else if(meta.getAnalysisType().equals("Simple Vote Rollup")) {
-            sentimentClass = SentimentRollup.SIMPLE_VOTE.apply(sentences);
+        try {
+            if ( data.documentCache != null ) {
+                // identical documents in flight at the same time share a single annotation
+                HashCode key = data.documentCache.key( data.documentCacheKeys[documentNr], document );
+                return data.documentCache.get( key, new Callable<DocumentSentiment>() {
+                    public DocumentSentiment call() {
+                        return rollup( documentNr, annotate( document ) );
+                    }
+                } );
+            }
+            return rollup( documentNr, annotate( document ) );
+        } catch ( DocumentTimeoutException e ) {
+            // thrown out of the cache loader, so partial results are never cached
+            return timedOut( e );
         }
-        else if(meta.getAnalysisType().equals("Longest Sentence Wins")) {
-            sentimentClass = SentimentRollup.LONGEST_SENTENCE_WINS.apply(sentences);
+    }
+
+    /**
+     * @return true if an output field needs the document annotated: a known analysis type or a statistic
+     */
+    private boolean isScored( int documentNr ) {
+        return data.documentRollups[documentNr].length > 0 || data.documentStatistics[documentNr];
+    }
+
+    /**
+     * Annotates the document and turns each of its sentences into the new fields of a sentence row.
+     *
+     * @return the fields of each sentence row, none when the document was skipped
+     */
+    private List<Object[]> processSentences( String document ) {
+        if ( data.textFilter.isSkipped( document ) ) {
+            data.skipped.incrementAndGet();
+            return Collections.emptyList();
+        }
+        return sentences( annotate( document ) );
+    }
+
+    /**
+     * Reads the prediction of each sentence of an annotated document into the new fields of a row:
+     * its index, its text if asked for, its class and the probability of every class.  The trees of each
+     * sentence are released as soon as it has been read.
+     *
+     * @return the fields of each sentence row, none when the document was skipped by the budget
+     * @throws BudgetExceededException when the document went over a budget, or over the time budget, with
+     *         the error policy
+     */
+    private List<Object[]> sentences( Annotation annotation ) {
+        List<CoreMap> sentences = annotation.get( CoreAnnotations.SentencesAnnotation.class );
+        data.metrics.recordDocument( annotation.get( CoreAnnotations.TextAnnotation.class ).length(), sentences.size() );
+        DocumentBudget.checkExceeded( annotation );
+        if ( DocumentBudget.isSkipped( annotation ) ) {
+            return Collections.emptyList();
         }
-        else if(meta.getAnalysisType().equals("Last Sentence Wins")) {
-            sentimentClass = SentimentRollup.LAST_SENTENCE_WINS.apply(sentences);
+        int total = sentences.size();
+        int unfinished = DeadlineAnnotator.removeUnfinished( annotation );
+        if ( unfinished > 0 ) {
+            // the sentences finished in time are still emitted with the fallback policy
+            String message = BaseMessages.getString( PKG, "Sentiment.Log.Timeout",
+                    String.valueOf( meta.getTimeoutMillis() ), String.valueOf( unfinished ), String.valueOf( total ) );
+            timedOut( new DocumentTimeoutException( message, null ) );
         }
-        else if(meta.getAnalysisType().equals("Average Probabilities Rollup")) {
-            sentimentClass = SentimentRollup.AVERAGE_PROBABILITIES.apply(sentences);
+        long start = System.nanoTime();
+        sentences = annotation.get( CoreAnnotations.SentencesAnnotation.class );
+        List<Object[]> ret = new ArrayList<Object[]>( sentences.size() );
+        for ( CoreMap sentence : sentences ) {
+            SentencePrediction prediction = SentimentAnalyzer.getPrediction( sentence );
+            Object[] fields = new Object[data.nrSentenceFields];
+            int f = 0;
+            fields[f++] = Long.valueOf( ret.size() );
+            if ( data.sentenceText ) {
+                fields[f++] = SentimentAnalyzer.getOriginalText( annotation, sentence );
+            }
+            fields[f++] = SentimentClass.getSpecific( prediction.getSentimentClass() ).toString();
+            for ( double probability : prediction.getProbabilities() ) {
+                fields[f++] = Double.valueOf( probability );
+            }
+            SentimentAnalyzer.release( sentence );
+            ret.add( fields );
+        }
+        data.metrics.record( Stage.ROLLUP, System.nanoTime() - start );
+        return ret;
+    }
+
+    /**
+     * Counts a value the text filter keeps away from the pipeline.
+     *
+     * @return the configured result for every rollup, or null for none
+     */
+    private DocumentSentiment skip( int documentNr ) {
+        data.skipped.incrementAndGet();
+        if ( data.skippedSentiment == null ) {
+            return null;
+        }
+        return DocumentSentiment.of( data.skippedSentiment, data.documentRollups[documentNr].length );
+    }
+
+    /**
+     * Asks the lexicon pre-classifier for the document, which answers for every rollup of it at once.
+     *
+     * @return the result for every rollup, without statistics, or null when the pre-classifier is off or
+     *         not confident enough
+     */
+    private DocumentSentiment preClassify( int documentNr, String document ) {
+        if ( data.lexicon == null ) {
+            return null;
+        }
+        SentimentClass sentiment = data.lexicon.classify( document, meta.getCascadeThreshold() );
+        if ( sentiment == null ) {
+            data.forwarded.incrementAndGet();
+            return null;
+        }
+        data.preClassified.incrementAndGet();
+        return DocumentSentiment.of( sentiment, data.documentRollups[documentNr].length );
+    }
+
+    /**
+     * Counts a document over the time budget and applies the timeout policy to it.
+     *
+     * @return the fallback result
+     * @throws BudgetExceededException when the policy sends the row to the error stream
+     */
+    private DocumentSentiment timedOut( DocumentTimeoutException e ) {
+        data.timeouts.incrementAndGet();
+        if ( data.timeoutPolicy == TimeoutPolicy.ERROR ) {
+            throw new BudgetExceededException( e.getMessage() );
+        }
+        return e.getFallback();
+    }
+
+    /**
+     * @return the description of the limit the document went over, for the error row or the step failure
+     */
+    private static String describe( BudgetExceededException e ) {
+        if ( e.getLimit() == null ) {
+            return e.getMessage();
+        }
+        switch ( e.getLimit() ) {
+            case CHARACTERS:
+                return BaseMessages.getString( PKG, "Sentiment.Budget.Characters",
+                        String.valueOf( e.getActual() ), String.valueOf( e.getMaximum() ) );
+            case SENTENCES:
+                return BaseMessages.getString( PKG, "Sentiment.Budget.Sentences",
+                        String.valueOf( e.getActual() ), String.valueOf( e.getMaximum() ) );
+            default:
+                return BaseMessages.getString( PKG, "Sentiment.Budget.SentenceLength",
+                        String.valueOf( e.getActual() ), String.valueOf( e.getMaximum() ) );
+        }
+    }
+
+    private Annotation annotate( String document ) {
+        if ( data.sentenceCache != null ) {
+            return data.sentenceCache.process( document );
+        }
+        return data.stagedPipeline.process( document );
+    }
+
+    private void annotate( List<Annotation> annotations ) {
+        int threads = Math.max( 1, meta.getWorkerThreads() );
+        if ( data.sentenceCache != null ) {
+            data.sentenceCache.annotate( annotations, threads );
+        } else {
+            data.stagedPipeline.annotate( annotations, threads );
+        }
+    }
+
+    /**
+     * @return the value of an output field of the given type
+     */
+    private static Object toResult( DocumentSentiment sentiment, int rollupNr, OutputType outputType ) {
+        if ( outputType.isStatistic() ) {
+            return sentiment.hasStatistics() ? Double.valueOf( sentiment.getStatistic( outputType.getStatistic() ) ) : null;
+        }
+        if ( rollupNr < 0 ) {
+            return null;
+        }
+        SentimentClass sentimentClass = sentiment.getSentiment( rollupNr );
+        if ( sentimentClass == null ) {
+            return null;
+        }
+        if ( outputType == OutputType.CLASS_INDEX ) {
+            return Long.valueOf( sentimentClass.getIndex() );
+        }
+        return sentimentClass.toString();
+    }
+
+    /**
+     * @return the result of the document, or null when the document was skipped by the budget
+     * @throws BudgetExceededException when the document went over a budget with the error policy
+     * @throws DocumentTimeoutException when the document went over the time budget
+     */
+    private DocumentSentiment rollup( int documentNr, Annotation annotation ) {
+        int sentences = annotation.get( CoreAnnotations.SentencesAnnotation.class ).size();
+        data.metrics.recordDocument( annotation.get( CoreAnnotations.TextAnnotation.class ).length(), sentences );
+        DocumentBudget.checkExceeded( annotation );
+        if ( DocumentBudget.isSkipped( annotation ) ) {
+            return null;
+        }
+        int unfinished = DeadlineAnnotator.removeUnfinished( annotation );
+        if ( unfinished > 0 ) {
+            DocumentSentiment fallback = null;
+            if ( data.timeoutPolicy == TimeoutPolicy.FALLBACK ) {
+                if ( unfinished < sentences ) {
+                    fallback = rollupSentences( documentNr, annotation );
+                } else {
+                    fallback = DocumentSentiment.of( SentimentClass.NEUTRAL, data.documentRollups[documentNr].length );
+                }
+            }
+            throw new DocumentTimeoutException( BaseMessages.getString( PKG, "Sentiment.Log.Timeout",
+                    String.valueOf( meta.getTimeoutMillis() ), String.valueOf( unfinished ), String.valueOf( sentences ) ),
+                    fallback );
+        }
+        long start = System.nanoTime();
+        DocumentSentiment ret = rollupSentences( documentNr, annotation );
+        data.metrics.record( Stage.ROLLUP, System.nanoTime() - start );
+        return ret;
+    }
+
+    /**
+     * Folds the sentences of the annotation into every rollup of the document, and into its statistics
+     * when an output field reads them.
+     */
+    private DocumentSentiment rollupSentences( int documentNr, Annotation annotation ) {
+        ISentimentAccumulator[] accumulators = data.accumulators.get()[documentNr];
+        SentimentClass[] sentiments = SentimentAnalyzer.INSTANCE.rollup( annotation, accumulators );
+        if ( !data.documentStatistics[documentNr] ) {
+            return new DocumentSentiment( sentiments, null );
+        }
+        int rollups = data.documentRollups[documentNr].length;
+        double[] statistics = ( (SentimentStatistics) accumulators[rollups] ).getStatistics();
+        return new DocumentSentiment( Arrays.copyOf( sentiments, rollups ), statistics );
+    }
+
+    /**
+     * Publishes the metrics of this step copy over JMX.  A failure here is logged and does not stop the step.
+     * The name includes the container id of the transformation, so that concurrent runs of the same
+     * transformation, on Carte for example, each publish their own.
+     */
+    private void registerMetrics() {
+        try {
+            data.metricsName = new ObjectName( "bi.meteorite.sentiment:type=NLPStep"
+                    + ",transformation=" + ObjectName.quote( Const.NVL( getTransMeta().getName(), "" ) )
+                    + ",container=" + ObjectName.quote( Const.NVL( getTrans().getContainerObjectId(), "" ) )
+                    + ",step=" + ObjectName.quote( getStepname() )
+                    + ",copy=" + getCopy() );
+            ManagementFactory.getPlatformMBeanServer().registerMBean( data.metrics, data.metricsName );
+        } catch ( Exception e ) {
+            logError( BaseMessages.getString( PKG, "Sentiment.Log.UnableToRegisterMetrics" ), e );
+            data.metricsName = null;
+        }
+    }
+
+    /**
+     * Reads the documents to analyze from the row.  This must run on the step thread.
+     */
+    private ScoredRow readDocuments( Object[] row ) throws KettleException {
+        String[] documents = new String[data.nrDocuments];
+        for ( int d = 0; d < data.nrDocuments; d++ ) {
+            // Get source value
+            documents[d] = getInputRowMeta().getString( row, data.documentInStreamNrs[d] );
         }
+        return new ScoredRow( row, documents, data.nrFieldsInStream );
+    }
 
+    /**
+     * Scores every document of the row.  This is safe to call from the worker threads.
+     */
+    private ScoredRow score( ScoredRow scoredRow ) {
+        if ( meta.isSentenceOutput() ) {
+            List<Object[]> sentences = new ArrayList<Object[]>();
+            try {
+                for ( int d = 0; d < data.nrDocuments; d++ ) {
+                    sentences.addAll( processSentences( scoredRow.documents[d] ) );
+                }
+            } catch ( BudgetExceededException e ) {
+                scoredRow.error = describe( e );
+                return scoredRow;
+            }
+            scoredRow.sentences = sentences;
+            return scoredRow;
+        }
+        DocumentSentiment[] sentiments = new DocumentSentiment[data.nrDocuments];
+        try {
+            for ( int d = 0; d < data.nrDocuments; d++ ) {
+                sentiments[d] = processString( d, scoredRow.documents[d] );
+            }
+        } catch ( BudgetExceededException e ) {
+            scoredRow.error = describe( e );
+            return scoredRow;
+        }
+        setResults( scoredRow, sentiments );
+        return scoredRow;
+    }
 
-        if (sentimentClass != null) {
-            return sentimentClass.toString();
+    /**
+     * Picks the result of each output field out of the result of its document.
+     */
+    private void setResults( ScoredRow scoredRow, DocumentSentiment[] sentiments ) {
+        for ( int i = 0; i < data.nrFieldsInStream; i++ ) {
+            DocumentSentiment sentiment = sentiments[data.documentNrs[i]];
+            if ( sentiment != null ) {
+                scoredRow.results[i] = toResult( sentiment, data.rollupNrs[i], data.outputTypes[i] );
+            }
         }
-        else return null;
     }
 
-    private Object[] processRow( RowMetaInterface rowMeta, Object[] row ) throws KettleException {
+    private Object[] processRow( RowMetaInterface rowMeta, ScoredRow scoredRow ) throws KettleException {
 
         Object[] RowData = new Object[data.outputRowMeta.size()];
         // Copy the input fields.
-        System.arraycopy( row, 0, RowData, 0, rowMeta.size() );
+        System.arraycopy( scoredRow.row, 0, RowData, 0, rowMeta.size() );
         int j = 0; // Index into "new fields" area, past the first {data.inputFieldsNr} records
         for ( int i = 0; i < data.nrFieldsInStream; i++ ) {
             if ( data.inStreamNrs[i] >= 0 ) {
-                // Get source value
-                String value = getInputRowMeta().getString( row, data.inStreamNrs[i] );
-                // Apply String operations and return result value
-                value =
-                        processString( value );
+                Object value = scoredRow.results[i];
                 if ( Const.isEmpty(data.outStreamNrs[i]) ) {
                     // Update field
                     RowData[data.inStreamNrs[i]] = value;
@@ -176,6 +659,237 @@ public class NLPStep extends BaseStep implements StepInterface {
         return RowData;
     }
 
+    /**
+     * Hands the row to the worker pool, then emits whatever has finished in the meantime.  Once the
+     * number of rows in flight reaches the limit this blocks until a row can be emitted.
+     */
+    private void submit( final ScoredRow scoredRow ) throws KettleException {
+        Callable<ScoredRow> task = new Callable<ScoredRow>() {
+            public ScoredRow call() {
+                return score( scoredRow );
+            }
+        };
+        if ( meta.isUnorderedOutput() ) {
+            data.completionService.submit( task );
+            data.inFlight++;
+            Future<ScoredRow> done;
+            while ( ( done = data.completionService.poll() ) != null ) {
+                data.inFlight--;
+                putScoredRow( done );
+            }
+            if ( data.inFlight >= data.maxInFlight ) {
+                putScoredRow( take() );
+            }
+        } else {
+            // the pending queue is the reorder buffer: rows are only emitted from its head
+            data.pending.add( data.executor.submit( task ) );
+            while ( !data.pending.isEmpty() && data.pending.peek().isDone() ) {
+                putScoredRow( data.pending.poll() );
+            }
+            if ( data.pending.size() >= data.maxInFlight ) {
+                putScoredRow( data.pending.poll() );
+            }
+        }
+    }
+
+    /**
+     * Annotates all documents of the buffered rows with a single multi-document call to the pipeline,
+     * then emits the rows in input order.
+     */
+    private void scoreBatch() throws KettleException {
+        ResultCache<DocumentSentiment> cache = data.documentCache;
+        List<Annotation> annotations = new ArrayList<Annotation>(); // distinct documents to annotate
+        List<Integer> annotationDocumentNrs = new ArrayList<Integer>(); // the document number of each of them
+        List<Annotation> documentAnnotations = new ArrayList<Annotation>(); // per document, null on a cache hit
+        List<DocumentSentiment[]> batchSentiments = new ArrayList<DocumentSentiment[]>( data.batch.size() );
+        Map<HashCode, Annotation> misses = new HashMap<HashCode, Annotation>();
+        for ( ScoredRow scoredRow : data.batch ) {
+            DocumentSentiment[] sentiments = new DocumentSentiment[data.nrDocuments];
+            batchSentiments.add( sentiments );
+            for ( int d = 0; d < data.nrDocuments; d++ ) {
+                if ( !isScored( d ) && !meta.isSentenceOutput() ) {
+                    // no output field has a known analysis type for this document
+                    documentAnnotations.add( null );
+                    continue;
+                }
+                if ( data.textFilter.isSkipped( scoredRow.documents[d] ) ) {
+                    sentiments[d] = skip( d );
+                    documentAnnotations.add( null );
+                    continue;
+                }
+                DocumentSentiment preClassified = preClassify( d, scoredRow.documents[d] );
+                if ( preClassified != null ) {
+                    sentiments[d] = preClassified;
+                    documentAnnotations.add( null );
+                    continue;
+                }
+                Annotation annotation = null;
+                if ( cache != null ) {
+                    HashCode key = cache.key( data.documentCacheKeys[d], scoredRow.documents[d] );
+                    DocumentSentiment cached = cache.getIfPresent( key );
+                    if ( cached != null ) {
+                        sentiments[d] = cached;
+                    } else {
+                        // duplicates within the batch are annotated once
+                        annotation = misses.get( key );
+                        if ( annotation == null ) {
+                            annotation = new Annotation( scoredRow.documents[d] );
+                            misses.put( key, annotation );
+                            annotations.add( annotation );
+                            annotationDocumentNrs.add( d );
+                        }
+                    }
+                } else {
+                    annotation = new Annotation( scoredRow.documents[d] );
+                    annotations.add( annotation );
+                    annotationDocumentNrs.add( d );
+                }
+                documentAnnotations.add( annotation );
+            }
+        }
+        annotate( annotations );
+
+        Map<Annotation, DocumentSentiment> rolledUp = new IdentityHashMap<Annotation, DocumentSentiment>();
+        Map<Annotation, List<Object[]>> sentenceRows = new IdentityHashMap<Annotation, List<Object[]>>();
+        Map<Annotation, String> errors = new IdentityHashMap<Annotation, String>();
+        Set<Annotation> timedOut = Collections.newSetFromMap( new IdentityHashMap<Annotation, Boolean>() );
+        for ( int k = 0; k < annotations.size(); k++ ) {
+            Annotation annotation = annotations.get( k );
+            if ( meta.isSentenceOutput() ) {
+                try {
+                    sentenceRows.put( annotation, sentences( annotation ) );
+                } catch ( BudgetExceededException e ) {
+                    errors.put( annotation, describe( e ) );
+                }
+                continue;
+            }
+            try {
+                DocumentSentiment sentiments;
+                try {
+                    sentiments = rollup( annotationDocumentNrs.get( k ), annotation );
+                } catch ( DocumentTimeoutException e ) {
+                    timedOut.add( annotation );
+                    sentiments = timedOut( e );
+                }
+                rolledUp.put( annotation, sentiments );
+            } catch ( BudgetExceededException e ) {
+                errors.put( annotation, describe( e ) );
+            }
+        }
+        if ( cache != null ) {
+            for ( Map.Entry<HashCode, Annotation> miss : misses.entrySet() ) {
+                if ( !timedOut.contains( miss.getValue() ) ) {
+                    cache.put( miss.getKey(), rolledUp.get( miss.getValue() ) );
+                }
+            }
+        }
+
+        Iterator<Annotation> annotated = documentAnnotations.iterator();
+        Iterator<DocumentSentiment[]> rowSentiments = batchSentiments.iterator();
+        for ( ScoredRow scoredRow : data.batch ) {
+            DocumentSentiment[] sentiments = rowSentiments.next();
+            if ( meta.isSentenceOutput() ) {
+                scoredRow.sentences = new ArrayList<Object[]>();
+            }
+            for ( int d = 0; d < data.nrDocuments; d++ ) {
+                Annotation annotation = annotated.next();
+                if ( annotation != null ) {
+                    if ( meta.isSentenceOutput() && sentenceRows.containsKey( annotation ) ) {
+                        scoredRow.sentences.addAll( sentenceRows.get( annotation ) );
+                    }
+                    sentiments[d] = rolledUp.get( annotation );
+                    if ( errors.containsKey( annotation ) ) {
+                        scoredRow.error = errors.get( annotation );
+                    }
+                }
+            }
+            if ( scoredRow.error == null && !meta.isSentenceOutput() ) {
+                setResults( scoredRow, sentiments );
+            }
+            putScoredRow( scoredRow );
+        }
+        data.batch.clear();
+    }
+
+    /**
+     * Waits for every row still in flight or buffered and emits it.
+     */
+    private void flush() throws KettleException {
+        if ( data.batch != null && !data.batch.isEmpty() ) {
+            scoreBatch();
+        }
+        if ( data.executor == null ) {
+            return;
+        }
+        while ( data.inFlight > 0 ) {
+            putScoredRow( take() );
+        }
+        while ( !data.pending.isEmpty() ) {
+            putScoredRow( data.pending.poll() );
+        }
+    }
+
+    private Future<ScoredRow> take() throws KettleException {
+        try {
+            Future<ScoredRow> done = data.completionService.take();
+            data.inFlight--;
+            return done;
+        } catch ( InterruptedException e ) {
+            throw new KettleException( e );
+        }
+    }
+
+    private void putScoredRow( Future<ScoredRow> result ) throws KettleException {
+        try {
+            putScoredRow( result.get() );
+        } catch ( InterruptedException e ) {
+            throw new KettleException( e );
+        } catch ( ExecutionException e ) {
+            throw new KettleException( e.getCause() );
+        }
+    }
+
+    private void putScoredRow( ScoredRow scoredRow ) throws KettleException {
+        if ( scoredRow.error != null ) {
+            if ( !getStepMeta().isDoingErrorHandling() ) {
+                throw new KettleException( BaseMessages.getString( PKG, "Sentiment.Log.BudgetExceeded", scoredRow.error ) );
+            }
+            putError( getInputRowMeta(), scoredRow.row, 1, scoredRow.error, null, "NLP001" );
+            return;
+        }
+        if ( scoredRow.sentences != null ) {
+            putSentenceRows( getInputRowMeta(), scoredRow );
+            return;
+        }
+        putRow( data.outputRowMeta, processRow( getInputRowMeta(), scoredRow ) );
+    }
+
+    /**
+     * Emits one row per sentence, each a copy of the input row followed by the fields of the sentence.
+     */
+    private void putSentenceRows( RowMetaInterface rowMeta, ScoredRow scoredRow ) throws KettleException {
+        for ( Object[] fields : scoredRow.sentences ) {
+            Object[] rowData = new Object[data.outputRowMeta.size()];
+            System.arraycopy( scoredRow.row, 0, rowData, 0, rowMeta.size() );
+            System.arraycopy( fields, 0, rowData, data.inputFieldsNr, fields.length );
+            putRow( data.outputRowMeta, rowData );
+        }
+    }
+
+    /**
+     * @return the number of documents that went over the time budget so far
+     */
+    public long getTimeouts() {
+        return data.timeouts.get();
+    }
+
+    private void logCascade() {
+        long answered = data.preClassified.get();
+        long total = answered + data.forwarded.get();
+        logBasic( BaseMessages.getString( PKG, "Sentiment.Log.Cascade", String.valueOf( answered ), String.valueOf( total ),
+                String.valueOf( data.forwarded.get() ) ) );
+    }
+
 	public boolean processRow(StepMetaInterface smi, StepDataInterface sdi) throws KettleException {
 
 		NLPStepMeta meta = (NLPStepMeta) smi;
@@ -184,6 +898,7 @@ public class NLPStep extends BaseStep implements StepInterface {
 		Object[] r = getRow();
 
 		if (r == null){
+			flush();
 			setOutputDone();
 			return false;
 		}
@@ -212,18 +927,49 @@ public class NLPStep extends BaseStep implements StepInterface {
                 }
             }
 
+            data.documentInStreamNrs = new int[data.nrDocuments];
+            for ( int i = 0; i < data.nrFieldsInStream; i++ ) {
+                data.documentInStreamNrs[data.documentNrs[i]] = data.inStreamNrs[i];
+            }
+
             data.outStreamNrs = new String[data.nrFieldsInStream];
             for ( int i = 0; i < meta.getFieldInStream().length; i++ ) {
                 data.outStreamNrs[i] = meta.getFieldOutStream()[i];
             }
 		}
-        Object[] output = processRow( getInputRowMeta(), r );
-
-		putRow(data.outputRowMeta, output);
+        ScoredRow scoredRow = readDocuments( r );
+        if ( data.batch != null ) {
+            data.batch.add( scoredRow );
+            if ( data.batch.size() >= meta.getBatchSize() ) {
+                scoreBatch();
+            }
+        } else if ( data.executor != null ) {
+            submit( scoredRow );
+        } else {
+            putScoredRow( score( scoredRow ) );
+        }
 
 		// log progress if it is time to to so
 		if (checkFeedback(getLinesRead())) {
 			logBasic("Linenr " + getLinesRead()); // Some basic logging
+            if ( data.documentCache != null ) {
+                logBasic( BaseMessages.getString( PKG, "Sentiment.Log.DocumentCache", data.documentCache.describe() ) );
+            }
+            if ( data.sentenceCache != null ) {
+                logBasic( BaseMessages.getString( PKG, "Sentiment.Log.SentenceCache", data.sentenceCache.describe() ) );
+            }
+            if ( meta.getTimeoutMillis() > 0 ) {
+                logBasic( BaseMessages.getString( PKG, "Sentiment.Log.Timeouts", String.valueOf( getTimeouts() ) ) );
+            }
+            logBasic( BaseMessages.getString( PKG, "Sentiment.Log.Skipped", String.valueOf( data.skipped.get() ) ) );
+            if ( data.lexicon != null ) {
+                logCascade();
+            }
+            if ( isDetailed() ) {
+                for ( String line : data.metrics.describe() ) {
+                    logDetailed( BaseMessages.getString( PKG, "Sentiment.Log.Metrics", line ) );
+                }
+            }
 		}
 
 		return true;
@@ -248,7 +994,50 @@ public class NLPStep extends BaseStep implements StepInterface {
 		// Casting to step-specific implementation classes is safe
 		NLPStepMeta meta = (NLPStepMeta) smi;
 		NLPStepData data = (NLPStepData) sdi;
-		
+
+        if ( data.documentCache != null ) {
+            logBasic( BaseMessages.getString( PKG, "Sentiment.Log.DocumentCache", data.documentCache.describe() ) );
+            data.documentCache = null;
+        }
+        if ( data.sentenceCache != null ) {
+            logBasic( BaseMessages.getString( PKG, "Sentiment.Log.SentenceCache", data.sentenceCache.describe() ) );
+            data.sentenceCache = null;
+        }
+        if ( meta.getTimeoutMillis() > 0 ) {
+            logBasic( BaseMessages.getString( PKG, "Sentiment.Log.Timeouts", String.valueOf( getTimeouts() ) ) );
+        }
+        logBasic( BaseMessages.getString( PKG, "Sentiment.Log.Skipped", String.valueOf( data.skipped.get() ) ) );
+        if ( data.lexicon != null ) {
+            logCascade();
+            data.lexicon = null;
+        }
+        if ( data.metrics != null ) {
+            for ( String line : data.metrics.describe() ) {
+                logBasic( BaseMessages.getString( PKG, "Sentiment.Log.Metrics", line ) );
+            }
+            data.metrics = null;
+        }
+        if ( data.metricsName != null ) {
+            try {
+                ManagementFactory.getPlatformMBeanServer().unregisterMBean( data.metricsName );
+            } catch ( Exception e ) {
+                logError( BaseMessages.getString( PKG, "Sentiment.Log.UnableToUnregisterMetrics" ), e );
+            }
+            data.metricsName = null;
+        }
+        if ( data.executor != null ) {
+            data.executor.shutdownNow();
+            data.executor = null;
+        }
+        if ( data.pipeline != null ) {
+            SharedPipeline.INSTANCE.release( data.pipelineProperties );
+            data.pipeline = null;
+        }
+        if ( data.remoteScorer != null ) {
+            data.remoteScorer.close();
+            data.remoteScorer = null;
+        }
+
 		super.dispose(meta, data);
 	}
 
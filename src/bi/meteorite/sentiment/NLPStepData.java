@@ -15,10 +15,33 @@
 */
 package bi.meteorite.sentiment;
 
+import bi.meteorite.sentiment.nlp.SentimentClass;
+import bi.meteorite.sentiment.nlp.StagedPipeline;
+import bi.meteorite.sentiment.nlp.budget.TimeoutPolicy;
+import bi.meteorite.sentiment.nlp.cache.ResultCache;
+import bi.meteorite.sentiment.nlp.metrics.PipelineMetrics;
+import bi.meteorite.sentiment.nlp.cache.SentenceCache;
+import bi.meteorite.sentiment.nlp.filter.TextFilter;
+import bi.meteorite.sentiment.nlp.lexicon.LexiconClassifier;
+import bi.meteorite.sentiment.nlp.rollup.DocumentSentiment;
+import bi.meteorite.sentiment.nlp.rollup.ISentimentAccumulator;
+import bi.meteorite.sentiment.nlp.rollup.OutputType;
+import bi.meteorite.sentiment.nlp.rollup.SentimentRollup;
+import bi.meteorite.sentiment.nlp.server.RemoteScorer;
+import edu.stanford.nlp.pipeline.AnnotationPipeline;
 import org.pentaho.di.core.row.RowMetaInterface;
 import org.pentaho.di.trans.step.BaseStepData;
 import org.pentaho.di.trans.step.StepDataInterface;
 
+import javax.management.ObjectName;
+import java.util.List;
+import java.util.Properties;
+import java.util.Queue;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
 /**
  * This class is part of the demo step plug-in implementation.
  * It demonstrates the basics of developing a plug-in step for PDI. 
@@ -53,6 +76,74 @@ public class NLPStepData extends BaseStepData implements StepDataInterface {
 
     public int nrFieldsInStream;
 
+    public AnnotationPipeline pipeline; // shared, read-only; see SharedPipeline.  Keeps the models loaded
+
+    public Properties pipelineProperties;
+
+    public ExecutorService executor; // only set when more than one worker thread is configured
+
+    public CompletionService<ScoredRow> completionService;
+
+    public Queue<Future<ScoredRow>> pending; // reorder buffer for ordered output
+
+    public int inFlight; // rows submitted to the completion service and not yet emitted
+
+    public int maxInFlight;
+
+    public List<ScoredRow> batch; // only set when micro-batching is configured
+
+    public ResultCache<DocumentSentiment> documentCache; // only set when the document cache is enabled
+
+    public SentenceCache sentenceCache; // only set when the sentence cache is enabled
+
+    public StagedPipeline stagedPipeline; // runs the annotators of the shared pipeline stage by stage
+    public RemoteScorer remoteScorer; // parses and scores on a CoreNLP server instead, null for in-process
+
+    public PipelineMetrics metrics;
+
+    public ObjectName metricsName; // null when the metrics could not be published over JMX
+
+    public TimeoutPolicy timeoutPolicy;
+
+    public final AtomicLong timeouts = new AtomicLong(); // documents over the time budget, counted by every scoring thread
+
+    public TextFilter textFilter; // keeps values with nothing to analyze away from the pipeline
+
+    public SentimentClass skippedSentiment; // the result of every rollup of a skipped value, null for none
+
+    public final AtomicLong skipped = new AtomicLong(); // values answered by the text filter
+
+    public LexiconClassifier lexicon; // only set when the pre-classifier is enabled
+
+    public final AtomicLong preClassified = new AtomicLong(); // documents answered by the pre-classifier
+
+    public final AtomicLong forwarded = new AtomicLong(); // documents the pre-classifier passed on to the pipeline
+
+    // Each distinct input field is a document that is annotated once and rolled up by every strategy reading it
+
+    public int nrDocuments;
+
+    public int[] documentInStreamNrs; // input field of each document
+
+    public SentimentRollup[][] documentRollups; // distinct rollups of each document
+
+    public String[] documentCacheKeys; // names the rollups of each document within the document cache
+
+    public int[] documentNrs; // document of each output field
+
+    public int[] rollupNrs; // index into documentRollups of each output field, -1 when the analysis type is unknown
+
+    public OutputType[] outputTypes; // what each output field holds
+
+    public boolean[] documentStatistics; // whether an output field reads the statistics of each document
+
+    public boolean sentenceText; // sentence mode: whether the text of each sentence is emitted
+
+    public int nrSentenceFields; // sentence mode: the fields added to the input row for each sentence
+
+    // one accumulator per rollup and document for each scoring thread, reused for every document it rolls up
+    public ThreadLocal<ISentimentAccumulator[][]> accumulators;
+
     public NLPStepData()
 	{
 		super();
@@ -16,14 +16,22 @@
 package bi.meteorite.sentiment;
 
 import bi.meteorite.sentiment.NLPStepMeta;
+import bi.meteorite.sentiment.nlp.budget.BudgetPolicy;
+import bi.meteorite.sentiment.nlp.budget.TimeoutPolicy;
+import bi.meteorite.sentiment.nlp.filter.SkipResult;
+import bi.meteorite.sentiment.nlp.rollup.OutputType;
+import bi.meteorite.sentiment.nlp.rollup.SentimentRollup;
 import org.eclipse.swt.SWT;
 import org.eclipse.swt.custom.CCombo;
+import org.eclipse.swt.custom.CTabFolder;
+import org.eclipse.swt.custom.CTabItem;
 import org.eclipse.swt.events.*;
 import org.eclipse.swt.layout.FormAttachment;
 import org.eclipse.swt.layout.FormData;
 import org.eclipse.swt.layout.FormLayout;
 import org.eclipse.swt.widgets.*;
 import org.pentaho.di.core.Const;
+import org.pentaho.di.core.Props;
 import org.pentaho.di.core.exception.KettleException;
 import org.pentaho.di.core.row.RowMetaInterface;
 import org.pentaho.di.core.row.ValueMeta;
@@ -84,6 +92,51 @@ public class NLPStepDialog extends BaseStepDialog implements StepDialogInterface
     private Label wlAnalysisType;
     private FormData fdlAnalysisType,fdAnalysisType;
     private ColumnInfo[] ciKey;
+    private Label wlWorkerThreads, wlUnorderedOutput, wlBatchSize, wlCacheMaxEntries, wlCacheMaxBytes;
+    private Text wWorkerThreads, wBatchSize, wCacheMaxEntries, wCacheMaxBytes;
+    private Button wUnorderedOutput;
+    private FormData fdlWorkerThreads, fdWorkerThreads, fdlUnorderedOutput, fdUnorderedOutput, fdlBatchSize, fdBatchSize;
+    private FormData fdlCacheMaxEntries, fdCacheMaxEntries, fdlCacheMaxBytes, fdCacheMaxBytes;
+    private Label wlSentenceCacheMaxEntries, wlSentenceCacheMaxBytes;
+    private Text wSentenceCacheMaxEntries, wSentenceCacheMaxBytes;
+    private FormData fdlSentenceCacheMaxEntries, fdSentenceCacheMaxEntries, fdlSentenceCacheMaxBytes, fdSentenceCacheMaxBytes;
+    private Label wlMaxDocumentChars, wlMaxSentences, wlMaxSentenceLength;
+    private Text wMaxDocumentChars, wMaxSentences, wMaxSentenceLength;
+    private CCombo wDocumentCharsPolicy, wSentencesPolicy, wSentenceLengthPolicy;
+    private FormData fdlMaxDocumentChars, fdMaxDocumentChars, fdDocumentCharsPolicy;
+    private FormData fdlMaxSentences, fdMaxSentences, fdSentencesPolicy;
+    private FormData fdlMaxSentenceLength, fdMaxSentenceLength, fdSentenceLengthPolicy;
+    private Label wlTimeout;
+    private Text wTimeout;
+    private CCombo wTimeoutPolicy;
+    private FormData fdlTimeout, fdTimeout, fdTimeoutPolicy;
+    private Label wlCascadeThreshold, wlLexiconFile;
+    private Text wCascadeThreshold, wLexiconFile;
+    private FormData fdlCascadeThreshold, fdCascadeThreshold, fdlLexiconFile, fdLexiconFile;
+    private Label wlWarmUpFile;
+    private Text wWarmUpFile;
+    private FormData fdlWarmUpFile, fdWarmUpFile;
+    private Label wlServerUrl, wlServerBatchSentences, wlServerMaxInFlight;
+    private Text wServerUrl, wServerBatchSentences, wServerMaxInFlight;
+    private FormData fdlServerUrl, fdServerUrl, fdlServerBatchSentences, fdServerBatchSentences;
+    private FormData fdlServerMaxInFlight, fdServerMaxInFlight;
+    private Label wlSkip, wlSkipResult;
+    private Button wSkipUrls, wSkipHashtags, wSkipSymbols;
+    private CCombo wSkipResult;
+    private FormData fdlSkip, fdSkipUrls, fdSkipHashtags, fdSkipSymbols, fdlSkipResult, fdSkipResult;
+    private Label wlSentenceOutput, wlSentenceIndexField, wlSentenceTextField, wlSentenceSentimentField, wlProbabilityPrefix;
+    private Button wSentenceOutput;
+    private Text wSentenceIndexField, wSentenceTextField, wSentenceSentimentField, wProbabilityPrefix;
+    private FormData fdlSentenceOutput, fdSentenceOutput, fdlSentenceIndexField, fdSentenceIndexField;
+    private FormData fdlSentenceTextField, fdSentenceTextField, fdlSentenceSentimentField, fdSentenceSentimentField;
+    private FormData fdlProbabilityPrefix, fdProbabilityPrefix;
+    private CTabFolder wTabFolder;
+    private FormData fdTabFolder;
+    private CTabItem wTabFields, wTabGeneral, wTabPerformance, wTabBudgets, wTabCascade, wTabServer;
+    private Composite wFieldsComp, wGeneralComp, wPerformanceComp, wBudgetsComp, wCascadeComp, wServerComp;
+    private Label wlProperties;
+    private TableView wProperties;
+    private FormData fdlProperties, fdProperties;
 	/**
 	 * The constructor should simply invoke super() and save the incoming meta
 	 * object to a local variable, so it can conveniently read and write settings
@@ -188,21 +241,588 @@ public class NLPStepDialog extends BaseStepDialog implements StepDialogInterface
         fdAnalysisType.top = new FormAttachment( wStepname, margin );
         fdAnalysisType.right = new FormAttachment( 100, 0 );
         wAnalysisType.setLayoutData( fdAnalysisType );
-        wAnalysisType.add( "Wilson Score" );
-        wAnalysisType.add( "Simple Vote Rollup" );
-        wAnalysisType.add( "Longest Sentence Wins" );
-        wAnalysisType.add( "Last Sentence Wins" );
-        wAnalysisType.add( "Average Probabilities Rollup" );
+        wAnalysisType.setItems( getAnalysisTypes( false ) );
 
-        wlKey = new Label( shell, SWT.NONE );
+        wTabFolder = new CTabFolder( shell, SWT.BORDER );
+        props.setLook( wTabFolder, Props.WIDGET_STYLE_TAB );
+        FormLayout tabLayout = new FormLayout();
+        tabLayout.marginWidth = 3;
+        tabLayout.marginHeight = 3;
+
+        // General tab
+        wTabGeneral = new CTabItem( wTabFolder, SWT.NONE );
+        wTabGeneral.setText( BaseMessages.getString( PKG, "Sentiment.Tab.General" ) );
+        wGeneralComp = new Composite( wTabFolder, SWT.NONE );
+        props.setLook( wGeneralComp );
+        wGeneralComp.setLayout( tabLayout );
+
+        wlSkip = new Label( wGeneralComp, SWT.RIGHT );
+        wlSkip.setText( BaseMessages.getString( PKG, "Sentiment.Skip.Label" ) );
+        props.setLook( wlSkip );
+        fdlSkip = new FormData();
+        fdlSkip.left = new FormAttachment( 0, 0 );
+        fdlSkip.top = new FormAttachment( 0, margin );
+        fdlSkip.right = new FormAttachment( middle, -margin );
+        wlSkip.setLayoutData( fdlSkip );
+        wSkipUrls = new Button( wGeneralComp, SWT.CHECK );
+        wSkipUrls.setText( BaseMessages.getString( PKG, "Sentiment.SkipUrls.Label" ) );
+        props.setLook( wSkipUrls );
+        fdSkipUrls = new FormData();
+        fdSkipUrls.left = new FormAttachment( middle, 0 );
+        fdSkipUrls.top = new FormAttachment( 0, margin );
+        wSkipUrls.setLayoutData( fdSkipUrls );
+        wSkipUrls.addSelectionListener( new SelectionAdapter() {
+            public void widgetSelected( SelectionEvent e ) {
+                input.setChanged();
+            }
+        } );
+
+        wSkipHashtags = new Button( wGeneralComp, SWT.CHECK );
+        wSkipHashtags.setText( BaseMessages.getString( PKG, "Sentiment.SkipHashtags.Label" ) );
+        props.setLook( wSkipHashtags );
+        fdSkipHashtags = new FormData();
+        fdSkipHashtags.left = new FormAttachment( wSkipUrls, margin );
+        fdSkipHashtags.top = new FormAttachment( 0, margin );
+        wSkipHashtags.setLayoutData( fdSkipHashtags );
+        wSkipHashtags.addSelectionListener( new SelectionAdapter() {
+            public void widgetSelected( SelectionEvent e ) {
+                input.setChanged();
+            }
+        } );
+
+        wSkipSymbols = new Button( wGeneralComp, SWT.CHECK );
+        wSkipSymbols.setText( BaseMessages.getString( PKG, "Sentiment.SkipSymbols.Label" ) );
+        props.setLook( wSkipSymbols );
+        fdSkipSymbols = new FormData();
+        fdSkipSymbols.left = new FormAttachment( wSkipHashtags, margin );
+        fdSkipSymbols.top = new FormAttachment( 0, margin );
+        wSkipSymbols.setLayoutData( fdSkipSymbols );
+        wSkipSymbols.addSelectionListener( new SelectionAdapter() {
+            public void widgetSelected( SelectionEvent e ) {
+                input.setChanged();
+            }
+        } );
+
+        wlSkipResult = new Label( wGeneralComp, SWT.RIGHT );
+        wlSkipResult.setText( BaseMessages.getString( PKG, "Sentiment.SkipResult.Label" ) );
+        props.setLook( wlSkipResult );
+        fdlSkipResult = new FormData();
+        fdlSkipResult.left = new FormAttachment( 0, 0 );
+        fdlSkipResult.top = new FormAttachment( wSkipUrls, margin );
+        fdlSkipResult.right = new FormAttachment( middle, -margin );
+        wlSkipResult.setLayoutData( fdlSkipResult );
+        wSkipResult = new CCombo( wGeneralComp, SWT.BORDER | SWT.READ_ONLY );
+        props.setLook( wSkipResult );
+        wSkipResult.addModifyListener( lsMod );
+        wSkipResult.setToolTipText( BaseMessages.getString( PKG, "Sentiment.SkipResult.Tooltip" ) );
+        fdSkipResult = new FormData();
+        fdSkipResult.left = new FormAttachment( middle, 0 );
+        fdSkipResult.top = new FormAttachment( wSkipUrls, margin );
+        fdSkipResult.right = new FormAttachment( 100, 0 );
+        wSkipResult.setLayoutData( fdSkipResult );
+        for ( SkipResult result : SkipResult.values() ) {
+            wSkipResult.add( result.getDescription() );
+        }
+
+        wlSentenceOutput = new Label( wGeneralComp, SWT.RIGHT );
+        wlSentenceOutput.setText( BaseMessages.getString( PKG, "Sentiment.SentenceOutput.Label" ) );
+        props.setLook( wlSentenceOutput );
+        fdlSentenceOutput = new FormData();
+        fdlSentenceOutput.left = new FormAttachment( 0, 0 );
+        fdlSentenceOutput.top = new FormAttachment( wSkipResult, margin );
+        fdlSentenceOutput.right = new FormAttachment( middle, -margin );
+        wlSentenceOutput.setLayoutData( fdlSentenceOutput );
+        wSentenceOutput = new Button( wGeneralComp, SWT.CHECK );
+        props.setLook( wSentenceOutput );
+        wSentenceOutput.setToolTipText( BaseMessages.getString( PKG, "Sentiment.SentenceOutput.Tooltip" ) );
+        fdSentenceOutput = new FormData();
+        fdSentenceOutput.left = new FormAttachment( middle, 0 );
+        fdSentenceOutput.top = new FormAttachment( wSkipResult, margin );
+        fdSentenceOutput.right = new FormAttachment( 100, 0 );
+        wSentenceOutput.setLayoutData( fdSentenceOutput );
+        wSentenceOutput.addSelectionListener( new SelectionAdapter() {
+            public void widgetSelected( SelectionEvent e ) {
+                input.setChanged();
+                setSentenceOutputFlags();
+            }
+        } );
+
+        wlSentenceIndexField = new Label( wGeneralComp, SWT.RIGHT );
+        wlSentenceIndexField.setText( BaseMessages.getString( PKG, "Sentiment.SentenceIndexField.Label" ) );
+        props.setLook( wlSentenceIndexField );
+        fdlSentenceIndexField = new FormData();
+        fdlSentenceIndexField.left = new FormAttachment( 0, 0 );
+        fdlSentenceIndexField.top = new FormAttachment( wSentenceOutput, margin );
+        fdlSentenceIndexField.right = new FormAttachment( middle, -margin );
+        wlSentenceIndexField.setLayoutData( fdlSentenceIndexField );
+        wSentenceIndexField = new Text( wGeneralComp, SWT.SINGLE | SWT.LEFT | SWT.BORDER );
+        props.setLook( wSentenceIndexField );
+        wSentenceIndexField.addModifyListener( lsMod );
+        fdSentenceIndexField = new FormData();
+        fdSentenceIndexField.left = new FormAttachment( middle, 0 );
+        fdSentenceIndexField.top = new FormAttachment( wSentenceOutput, margin );
+        fdSentenceIndexField.right = new FormAttachment( 100, 0 );
+        wSentenceIndexField.setLayoutData( fdSentenceIndexField );
+
+        wlSentenceTextField = new Label( wGeneralComp, SWT.RIGHT );
+        wlSentenceTextField.setText( BaseMessages.getString( PKG, "Sentiment.SentenceTextField.Label" ) );
+        props.setLook( wlSentenceTextField );
+        fdlSentenceTextField = new FormData();
+        fdlSentenceTextField.left = new FormAttachment( 0, 0 );
+        fdlSentenceTextField.top = new FormAttachment( wSentenceIndexField, margin );
+        fdlSentenceTextField.right = new FormAttachment( middle, -margin );
+        wlSentenceTextField.setLayoutData( fdlSentenceTextField );
+        wSentenceTextField = new Text( wGeneralComp, SWT.SINGLE | SWT.LEFT | SWT.BORDER );
+        props.setLook( wSentenceTextField );
+        wSentenceTextField.addModifyListener( lsMod );
+        fdSentenceTextField = new FormData();
+        fdSentenceTextField.left = new FormAttachment( middle, 0 );
+        fdSentenceTextField.top = new FormAttachment( wSentenceIndexField, margin );
+        fdSentenceTextField.right = new FormAttachment( 100, 0 );
+        wSentenceTextField.setLayoutData( fdSentenceTextField );
+
+        wlSentenceSentimentField = new Label( wGeneralComp, SWT.RIGHT );
+        wlSentenceSentimentField.setText( BaseMessages.getString( PKG, "Sentiment.SentenceSentimentField.Label" ) );
+        props.setLook( wlSentenceSentimentField );
+        fdlSentenceSentimentField = new FormData();
+        fdlSentenceSentimentField.left = new FormAttachment( 0, 0 );
+        fdlSentenceSentimentField.top = new FormAttachment( wSentenceTextField, margin );
+        fdlSentenceSentimentField.right = new FormAttachment( middle, -margin );
+        wlSentenceSentimentField.setLayoutData( fdlSentenceSentimentField );
+        wSentenceSentimentField = new Text( wGeneralComp, SWT.SINGLE | SWT.LEFT | SWT.BORDER );
+        props.setLook( wSentenceSentimentField );
+        wSentenceSentimentField.addModifyListener( lsMod );
+        fdSentenceSentimentField = new FormData();
+        fdSentenceSentimentField.left = new FormAttachment( middle, 0 );
+        fdSentenceSentimentField.top = new FormAttachment( wSentenceTextField, margin );
+        fdSentenceSentimentField.right = new FormAttachment( 100, 0 );
+        wSentenceSentimentField.setLayoutData( fdSentenceSentimentField );
+
+        wlProbabilityPrefix = new Label( wGeneralComp, SWT.RIGHT );
+        wlProbabilityPrefix.setText( BaseMessages.getString( PKG, "Sentiment.ProbabilityPrefix.Label" ) );
+        props.setLook( wlProbabilityPrefix );
+        fdlProbabilityPrefix = new FormData();
+        fdlProbabilityPrefix.left = new FormAttachment( 0, 0 );
+        fdlProbabilityPrefix.top = new FormAttachment( wSentenceSentimentField, margin );
+        fdlProbabilityPrefix.right = new FormAttachment( middle, -margin );
+        wlProbabilityPrefix.setLayoutData( fdlProbabilityPrefix );
+        wProbabilityPrefix = new Text( wGeneralComp, SWT.SINGLE | SWT.LEFT | SWT.BORDER );
+        props.setLook( wProbabilityPrefix );
+        wProbabilityPrefix.addModifyListener( lsMod );
+        fdProbabilityPrefix = new FormData();
+        fdProbabilityPrefix.left = new FormAttachment( middle, 0 );
+        fdProbabilityPrefix.top = new FormAttachment( wSentenceSentimentField, margin );
+        fdProbabilityPrefix.right = new FormAttachment( 100, 0 );
+        wProbabilityPrefix.setLayoutData( fdProbabilityPrefix );
+
+        wGeneralComp.layout();
+        wTabGeneral.setControl( wGeneralComp );
+
+        // Performance tab
+        wTabPerformance = new CTabItem( wTabFolder, SWT.NONE );
+        wTabPerformance.setText( BaseMessages.getString( PKG, "Sentiment.Tab.Performance" ) );
+        wPerformanceComp = new Composite( wTabFolder, SWT.NONE );
+        props.setLook( wPerformanceComp );
+        wPerformanceComp.setLayout( tabLayout );
+
+        wlWorkerThreads = new Label( wPerformanceComp, SWT.RIGHT );
+        wlWorkerThreads.setText( BaseMessages.getString( PKG, "Sentiment.WorkerThreads.Label" ) );
+        props.setLook( wlWorkerThreads );
+        fdlWorkerThreads = new FormData();
+        fdlWorkerThreads.left = new FormAttachment( 0, 0 );
+        fdlWorkerThreads.top = new FormAttachment( 0, margin );
+        fdlWorkerThreads.right = new FormAttachment( middle, -margin );
+        wlWorkerThreads.setLayoutData( fdlWorkerThreads );
+        wWorkerThreads = new Text( wPerformanceComp, SWT.SINGLE | SWT.LEFT | SWT.BORDER );
+        props.setLook( wWorkerThreads );
+        wWorkerThreads.addModifyListener( lsMod );
+        fdWorkerThreads = new FormData();
+        fdWorkerThreads.left = new FormAttachment( middle, 0 );
+        fdWorkerThreads.top = new FormAttachment( 0, margin );
+        fdWorkerThreads.right = new FormAttachment( 100, 0 );
+        wWorkerThreads.setLayoutData( fdWorkerThreads );
+
+        wlUnorderedOutput = new Label( wPerformanceComp, SWT.RIGHT );
+        wlUnorderedOutput.setText( BaseMessages.getString( PKG, "Sentiment.UnorderedOutput.Label" ) );
+        props.setLook( wlUnorderedOutput );
+        fdlUnorderedOutput = new FormData();
+        fdlUnorderedOutput.left = new FormAttachment( 0, 0 );
+        fdlUnorderedOutput.top = new FormAttachment( wWorkerThreads, margin );
+        fdlUnorderedOutput.right = new FormAttachment( middle, -margin );
+        wlUnorderedOutput.setLayoutData( fdlUnorderedOutput );
+        wUnorderedOutput = new Button( wPerformanceComp, SWT.CHECK );
+        props.setLook( wUnorderedOutput );
+        fdUnorderedOutput = new FormData();
+        fdUnorderedOutput.left = new FormAttachment( middle, 0 );
+        fdUnorderedOutput.top = new FormAttachment( wWorkerThreads, margin );
+        fdUnorderedOutput.right = new FormAttachment( 100, 0 );
+        wUnorderedOutput.setLayoutData( fdUnorderedOutput );
+        wUnorderedOutput.addSelectionListener( new SelectionAdapter() {
+            public void widgetSelected( SelectionEvent e ) {
+                input.setChanged();
+            }
+        } );
+
+        wlBatchSize = new Label( wPerformanceComp, SWT.RIGHT );
+        wlBatchSize.setText( BaseMessages.getString( PKG, "Sentiment.BatchSize.Label" ) );
+        props.setLook( wlBatchSize );
+        fdlBatchSize = new FormData();
+        fdlBatchSize.left = new FormAttachment( 0, 0 );
+        fdlBatchSize.top = new FormAttachment( wUnorderedOutput, margin );
+        fdlBatchSize.right = new FormAttachment( middle, -margin );
+        wlBatchSize.setLayoutData( fdlBatchSize );
+        wBatchSize = new Text( wPerformanceComp, SWT.SINGLE | SWT.LEFT | SWT.BORDER );
+        props.setLook( wBatchSize );
+        wBatchSize.addModifyListener( lsMod );
+        fdBatchSize = new FormData();
+        fdBatchSize.left = new FormAttachment( middle, 0 );
+        fdBatchSize.top = new FormAttachment( wUnorderedOutput, margin );
+        fdBatchSize.right = new FormAttachment( 100, 0 );
+        wBatchSize.setLayoutData( fdBatchSize );
+
+        wlCacheMaxEntries = new Label( wPerformanceComp, SWT.RIGHT );
+        wlCacheMaxEntries.setText( BaseMessages.getString( PKG, "Sentiment.CacheMaxEntries.Label" ) );
+        props.setLook( wlCacheMaxEntries );
+        fdlCacheMaxEntries = new FormData();
+        fdlCacheMaxEntries.left = new FormAttachment( 0, 0 );
+        fdlCacheMaxEntries.top = new FormAttachment( wBatchSize, margin );
+        fdlCacheMaxEntries.right = new FormAttachment( middle, -margin );
+        wlCacheMaxEntries.setLayoutData( fdlCacheMaxEntries );
+        wCacheMaxEntries = new Text( wPerformanceComp, SWT.SINGLE | SWT.LEFT | SWT.BORDER );
+        props.setLook( wCacheMaxEntries );
+        wCacheMaxEntries.addModifyListener( lsMod );
+        wCacheMaxEntries.setToolTipText( BaseMessages.getString( PKG, "Sentiment.Cache.Tooltip" ) );
+        fdCacheMaxEntries = new FormData();
+        fdCacheMaxEntries.left = new FormAttachment( middle, 0 );
+        fdCacheMaxEntries.top = new FormAttachment( wBatchSize, margin );
+        fdCacheMaxEntries.right = new FormAttachment( 100, 0 );
+        wCacheMaxEntries.setLayoutData( fdCacheMaxEntries );
+
+        wlCacheMaxBytes = new Label( wPerformanceComp, SWT.RIGHT );
+        wlCacheMaxBytes.setText( BaseMessages.getString( PKG, "Sentiment.CacheMaxBytes.Label" ) );
+        props.setLook( wlCacheMaxBytes );
+        fdlCacheMaxBytes = new FormData();
+        fdlCacheMaxBytes.left = new FormAttachment( 0, 0 );
+        fdlCacheMaxBytes.top = new FormAttachment( wCacheMaxEntries, margin );
+        fdlCacheMaxBytes.right = new FormAttachment( middle, -margin );
+        wlCacheMaxBytes.setLayoutData( fdlCacheMaxBytes );
+        wCacheMaxBytes = new Text( wPerformanceComp, SWT.SINGLE | SWT.LEFT | SWT.BORDER );
+        props.setLook( wCacheMaxBytes );
+        wCacheMaxBytes.addModifyListener( lsMod );
+        wCacheMaxBytes.setToolTipText( BaseMessages.getString( PKG, "Sentiment.Cache.Tooltip" ) );
+        fdCacheMaxBytes = new FormData();
+        fdCacheMaxBytes.left = new FormAttachment( middle, 0 );
+        fdCacheMaxBytes.top = new FormAttachment( wCacheMaxEntries, margin );
+        fdCacheMaxBytes.right = new FormAttachment( 100, 0 );
+        wCacheMaxBytes.setLayoutData( fdCacheMaxBytes );
+
+        wlSentenceCacheMaxEntries = new Label( wPerformanceComp, SWT.RIGHT );
+        wlSentenceCacheMaxEntries.setText( BaseMessages.getString( PKG, "Sentiment.SentenceCacheMaxEntries.Label" ) );
+        props.setLook( wlSentenceCacheMaxEntries );
+        fdlSentenceCacheMaxEntries = new FormData();
+        fdlSentenceCacheMaxEntries.left = new FormAttachment( 0, 0 );
+        fdlSentenceCacheMaxEntries.top = new FormAttachment( wCacheMaxBytes, margin );
+        fdlSentenceCacheMaxEntries.right = new FormAttachment( middle, -margin );
+        wlSentenceCacheMaxEntries.setLayoutData( fdlSentenceCacheMaxEntries );
+        wSentenceCacheMaxEntries = new Text( wPerformanceComp, SWT.SINGLE | SWT.LEFT | SWT.BORDER );
+        props.setLook( wSentenceCacheMaxEntries );
+        wSentenceCacheMaxEntries.addModifyListener( lsMod );
+        wSentenceCacheMaxEntries.setToolTipText( BaseMessages.getString( PKG, "Sentiment.Cache.Tooltip" ) );
+        fdSentenceCacheMaxEntries = new FormData();
+        fdSentenceCacheMaxEntries.left = new FormAttachment( middle, 0 );
+        fdSentenceCacheMaxEntries.top = new FormAttachment( wCacheMaxBytes, margin );
+        fdSentenceCacheMaxEntries.right = new FormAttachment( 100, 0 );
+        wSentenceCacheMaxEntries.setLayoutData( fdSentenceCacheMaxEntries );
+
+        wlSentenceCacheMaxBytes = new Label( wPerformanceComp, SWT.RIGHT );
+        wlSentenceCacheMaxBytes.setText( BaseMessages.getString( PKG, "Sentiment.SentenceCacheMaxBytes.Label" ) );
+        props.setLook( wlSentenceCacheMaxBytes );
+        fdlSentenceCacheMaxBytes = new FormData();
+        fdlSentenceCacheMaxBytes.left = new FormAttachment( 0, 0 );
+        fdlSentenceCacheMaxBytes.top = new FormAttachment( wSentenceCacheMaxEntries, margin );
+        fdlSentenceCacheMaxBytes.right = new FormAttachment( middle, -margin );
+        wlSentenceCacheMaxBytes.setLayoutData( fdlSentenceCacheMaxBytes );
+        wSentenceCacheMaxBytes = new Text( wPerformanceComp, SWT.SINGLE | SWT.LEFT | SWT.BORDER );
+        props.setLook( wSentenceCacheMaxBytes );
+        wSentenceCacheMaxBytes.addModifyListener( lsMod );
+        wSentenceCacheMaxBytes.setToolTipText( BaseMessages.getString( PKG, "Sentiment.Cache.Tooltip" ) );
+        fdSentenceCacheMaxBytes = new FormData();
+        fdSentenceCacheMaxBytes.left = new FormAttachment( middle, 0 );
+        fdSentenceCacheMaxBytes.top = new FormAttachment( wSentenceCacheMaxEntries, margin );
+        fdSentenceCacheMaxBytes.right = new FormAttachment( 100, 0 );
+        wSentenceCacheMaxBytes.setLayoutData( fdSentenceCacheMaxBytes );
+
+        wlWarmUpFile = new Label( wPerformanceComp, SWT.RIGHT );
+        wlWarmUpFile.setText( BaseMessages.getString( PKG, "Sentiment.WarmUpFile.Label" ) );
+        props.setLook( wlWarmUpFile );
+        fdlWarmUpFile = new FormData();
+        fdlWarmUpFile.left = new FormAttachment( 0, 0 );
+        fdlWarmUpFile.top = new FormAttachment( wSentenceCacheMaxBytes, margin );
+        fdlWarmUpFile.right = new FormAttachment( middle, -margin );
+        wlWarmUpFile.setLayoutData( fdlWarmUpFile );
+        wWarmUpFile = new Text( wPerformanceComp, SWT.SINGLE | SWT.LEFT | SWT.BORDER );
+        props.setLook( wWarmUpFile );
+        wWarmUpFile.addModifyListener( lsMod );
+        wWarmUpFile.setToolTipText( BaseMessages.getString( PKG, "Sentiment.WarmUpFile.Tooltip" ) );
+        fdWarmUpFile = new FormData();
+        fdWarmUpFile.left = new FormAttachment( middle, 0 );
+        fdWarmUpFile.top = new FormAttachment( wSentenceCacheMaxBytes, margin );
+        fdWarmUpFile.right = new FormAttachment( 100, 0 );
+        wWarmUpFile.setLayoutData( fdWarmUpFile );
+
+        wPerformanceComp.layout();
+        wTabPerformance.setControl( wPerformanceComp );
+
+        // Budgets tab
+        wTabBudgets = new CTabItem( wTabFolder, SWT.NONE );
+        wTabBudgets.setText( BaseMessages.getString( PKG, "Sentiment.Tab.Budgets" ) );
+        wBudgetsComp = new Composite( wTabFolder, SWT.NONE );
+        props.setLook( wBudgetsComp );
+        wBudgetsComp.setLayout( tabLayout );
+
+        wlMaxDocumentChars = new Label( wBudgetsComp, SWT.RIGHT );
+        wlMaxDocumentChars.setText( BaseMessages.getString( PKG, "Sentiment.MaxDocumentChars.Label" ) );
+        props.setLook( wlMaxDocumentChars );
+        fdlMaxDocumentChars = new FormData();
+        fdlMaxDocumentChars.left = new FormAttachment( 0, 0 );
+        fdlMaxDocumentChars.top = new FormAttachment( 0, margin );
+        fdlMaxDocumentChars.right = new FormAttachment( middle, -margin );
+        wlMaxDocumentChars.setLayoutData( fdlMaxDocumentChars );
+        wMaxDocumentChars = new Text( wBudgetsComp, SWT.SINGLE | SWT.LEFT | SWT.BORDER );
+        props.setLook( wMaxDocumentChars );
+        wMaxDocumentChars.addModifyListener( lsMod );
+        wMaxDocumentChars.setToolTipText( BaseMessages.getString( PKG, "Sentiment.Budget.Tooltip" ) );
+        fdMaxDocumentChars = new FormData();
+        fdMaxDocumentChars.left = new FormAttachment( middle, 0 );
+        fdMaxDocumentChars.top = new FormAttachment( 0, margin );
+        fdMaxDocumentChars.right = new FormAttachment( 75, -margin );
+        wMaxDocumentChars.setLayoutData( fdMaxDocumentChars );
+        wDocumentCharsPolicy = new CCombo( wBudgetsComp, SWT.BORDER | SWT.READ_ONLY );
+        props.setLook( wDocumentCharsPolicy );
+        wDocumentCharsPolicy.addModifyListener( lsMod );
+        wDocumentCharsPolicy.setToolTipText( BaseMessages.getString( PKG, "Sentiment.BudgetPolicy.Tooltip" ) );
+        fdDocumentCharsPolicy = new FormData();
+        fdDocumentCharsPolicy.left = new FormAttachment( 75, 0 );
+        fdDocumentCharsPolicy.top = new FormAttachment( 0, margin );
+        fdDocumentCharsPolicy.right = new FormAttachment( 100, 0 );
+        wDocumentCharsPolicy.setLayoutData( fdDocumentCharsPolicy );
+        wDocumentCharsPolicy.setItems( getBudgetPolicies() );
+
+        wlMaxSentences = new Label( wBudgetsComp, SWT.RIGHT );
+        wlMaxSentences.setText( BaseMessages.getString( PKG, "Sentiment.MaxSentences.Label" ) );
+        props.setLook( wlMaxSentences );
+        fdlMaxSentences = new FormData();
+        fdlMaxSentences.left = new FormAttachment( 0, 0 );
+        fdlMaxSentences.top = new FormAttachment( wMaxDocumentChars, margin );
+        fdlMaxSentences.right = new FormAttachment( middle, -margin );
+        wlMaxSentences.setLayoutData( fdlMaxSentences );
+        wMaxSentences = new Text( wBudgetsComp, SWT.SINGLE | SWT.LEFT | SWT.BORDER );
+        props.setLook( wMaxSentences );
+        wMaxSentences.addModifyListener( lsMod );
+        wMaxSentences.setToolTipText( BaseMessages.getString( PKG, "Sentiment.Budget.Tooltip" ) );
+        fdMaxSentences = new FormData();
+        fdMaxSentences.left = new FormAttachment( middle, 0 );
+        fdMaxSentences.top = new FormAttachment( wMaxDocumentChars, margin );
+        fdMaxSentences.right = new FormAttachment( 75, -margin );
+        wMaxSentences.setLayoutData( fdMaxSentences );
+        wSentencesPolicy = new CCombo( wBudgetsComp, SWT.BORDER | SWT.READ_ONLY );
+        props.setLook( wSentencesPolicy );
+        wSentencesPolicy.addModifyListener( lsMod );
+        wSentencesPolicy.setToolTipText( BaseMessages.getString( PKG, "Sentiment.BudgetPolicy.Tooltip" ) );
+        fdSentencesPolicy = new FormData();
+        fdSentencesPolicy.left = new FormAttachment( 75, 0 );
+        fdSentencesPolicy.top = new FormAttachment( wMaxDocumentChars, margin );
+        fdSentencesPolicy.right = new FormAttachment( 100, 0 );
+        wSentencesPolicy.setLayoutData( fdSentencesPolicy );
+        wSentencesPolicy.setItems( getBudgetPolicies() );
+
+        wlMaxSentenceLength = new Label( wBudgetsComp, SWT.RIGHT );
+        wlMaxSentenceLength.setText( BaseMessages.getString( PKG, "Sentiment.MaxSentenceLength.Label" ) );
+        props.setLook( wlMaxSentenceLength );
+        fdlMaxSentenceLength = new FormData();
+        fdlMaxSentenceLength.left = new FormAttachment( 0, 0 );
+        fdlMaxSentenceLength.top = new FormAttachment( wMaxSentences, margin );
+        fdlMaxSentenceLength.right = new FormAttachment( middle, -margin );
+        wlMaxSentenceLength.setLayoutData( fdlMaxSentenceLength );
+        wMaxSentenceLength = new Text( wBudgetsComp, SWT.SINGLE | SWT.LEFT | SWT.BORDER );
+        props.setLook( wMaxSentenceLength );
+        wMaxSentenceLength.addModifyListener( lsMod );
+        wMaxSentenceLength.setToolTipText( BaseMessages.getString( PKG, "Sentiment.Budget.Tooltip" ) );
+        fdMaxSentenceLength = new FormData();
+        fdMaxSentenceLength.left = new FormAttachment( middle, 0 );
+        fdMaxSentenceLength.top = new FormAttachment( wMaxSentences, margin );
+        fdMaxSentenceLength.right = new FormAttachment( 75, -margin );
+        wMaxSentenceLength.setLayoutData( fdMaxSentenceLength );
+        wSentenceLengthPolicy = new CCombo( wBudgetsComp, SWT.BORDER | SWT.READ_ONLY );
+        props.setLook( wSentenceLengthPolicy );
+        wSentenceLengthPolicy.addModifyListener( lsMod );
+        wSentenceLengthPolicy.setToolTipText( BaseMessages.getString( PKG, "Sentiment.BudgetPolicy.Tooltip" ) );
+        fdSentenceLengthPolicy = new FormData();
+        fdSentenceLengthPolicy.left = new FormAttachment( 75, 0 );
+        fdSentenceLengthPolicy.top = new FormAttachment( wMaxSentences, margin );
+        fdSentenceLengthPolicy.right = new FormAttachment( 100, 0 );
+        wSentenceLengthPolicy.setLayoutData( fdSentenceLengthPolicy );
+        wSentenceLengthPolicy.setItems( getBudgetPolicies() );
+
+        wlTimeout = new Label( wBudgetsComp, SWT.RIGHT );
+        wlTimeout.setText( BaseMessages.getString( PKG, "Sentiment.Timeout.Label" ) );
+        props.setLook( wlTimeout );
+        fdlTimeout = new FormData();
+        fdlTimeout.left = new FormAttachment( 0, 0 );
+        fdlTimeout.top = new FormAttachment( wMaxSentenceLength, margin );
+        fdlTimeout.right = new FormAttachment( middle, -margin );
+        wlTimeout.setLayoutData( fdlTimeout );
+        wTimeout = new Text( wBudgetsComp, SWT.SINGLE | SWT.LEFT | SWT.BORDER );
+        props.setLook( wTimeout );
+        wTimeout.addModifyListener( lsMod );
+        wTimeout.setToolTipText( BaseMessages.getString( PKG, "Sentiment.Timeout.Tooltip" ) );
+        fdTimeout = new FormData();
+        fdTimeout.left = new FormAttachment( middle, 0 );
+        fdTimeout.top = new FormAttachment( wMaxSentenceLength, margin );
+        fdTimeout.right = new FormAttachment( 75, -margin );
+        wTimeout.setLayoutData( fdTimeout );
+        wTimeoutPolicy = new CCombo( wBudgetsComp, SWT.BORDER | SWT.READ_ONLY );
+        props.setLook( wTimeoutPolicy );
+        wTimeoutPolicy.addModifyListener( lsMod );
+        wTimeoutPolicy.setToolTipText( BaseMessages.getString( PKG, "Sentiment.TimeoutPolicy.Tooltip" ) );
+        fdTimeoutPolicy = new FormData();
+        fdTimeoutPolicy.left = new FormAttachment( 75, 0 );
+        fdTimeoutPolicy.top = new FormAttachment( wMaxSentenceLength, margin );
+        fdTimeoutPolicy.right = new FormAttachment( 100, 0 );
+        wTimeoutPolicy.setLayoutData( fdTimeoutPolicy );
+        for ( TimeoutPolicy policy : TimeoutPolicy.values() ) {
+            wTimeoutPolicy.add( policy.getDescription() );
+        }
+
+        wBudgetsComp.layout();
+        wTabBudgets.setControl( wBudgetsComp );
+
+        // Cascade tab
+        wTabCascade = new CTabItem( wTabFolder, SWT.NONE );
+        wTabCascade.setText( BaseMessages.getString( PKG, "Sentiment.Tab.Cascade" ) );
+        wCascadeComp = new Composite( wTabFolder, SWT.NONE );
+        props.setLook( wCascadeComp );
+        wCascadeComp.setLayout( tabLayout );
+
+        wlCascadeThreshold = new Label( wCascadeComp, SWT.RIGHT );
+        wlCascadeThreshold.setText( BaseMessages.getString( PKG, "Sentiment.CascadeThreshold.Label" ) );
+        props.setLook( wlCascadeThreshold );
+        fdlCascadeThreshold = new FormData();
+        fdlCascadeThreshold.left = new FormAttachment( 0, 0 );
+        fdlCascadeThreshold.top = new FormAttachment( 0, margin );
+        fdlCascadeThreshold.right = new FormAttachment( middle, -margin );
+        wlCascadeThreshold.setLayoutData( fdlCascadeThreshold );
+        wCascadeThreshold = new Text( wCascadeComp, SWT.SINGLE | SWT.LEFT | SWT.BORDER );
+        props.setLook( wCascadeThreshold );
+        wCascadeThreshold.addModifyListener( lsMod );
+        wCascadeThreshold.setToolTipText( BaseMessages.getString( PKG, "Sentiment.CascadeThreshold.Tooltip" ) );
+        fdCascadeThreshold = new FormData();
+        fdCascadeThreshold.left = new FormAttachment( middle, 0 );
+        fdCascadeThreshold.top = new FormAttachment( 0, margin );
+        fdCascadeThreshold.right = new FormAttachment( 100, 0 );
+        wCascadeThreshold.setLayoutData( fdCascadeThreshold );
+
+        wlLexiconFile = new Label( wCascadeComp, SWT.RIGHT );
+        wlLexiconFile.setText( BaseMessages.getString( PKG, "Sentiment.LexiconFile.Label" ) );
+        props.setLook( wlLexiconFile );
+        fdlLexiconFile = new FormData();
+        fdlLexiconFile.left = new FormAttachment( 0, 0 );
+        fdlLexiconFile.top = new FormAttachment( wCascadeThreshold, margin );
+        fdlLexiconFile.right = new FormAttachment( middle, -margin );
+        wlLexiconFile.setLayoutData( fdlLexiconFile );
+        wLexiconFile = new Text( wCascadeComp, SWT.SINGLE | SWT.LEFT | SWT.BORDER );
+        props.setLook( wLexiconFile );
+        wLexiconFile.addModifyListener( lsMod );
+        wLexiconFile.setToolTipText( BaseMessages.getString( PKG, "Sentiment.LexiconFile.Tooltip" ) );
+        fdLexiconFile = new FormData();
+        fdLexiconFile.left = new FormAttachment( middle, 0 );
+        fdLexiconFile.top = new FormAttachment( wCascadeThreshold, margin );
+        fdLexiconFile.right = new FormAttachment( 100, 0 );
+        wLexiconFile.setLayoutData( fdLexiconFile );
+
+        wCascadeComp.layout();
+        wTabCascade.setControl( wCascadeComp );
+
+        // Server tab
+        wTabServer = new CTabItem( wTabFolder, SWT.NONE );
+        wTabServer.setText( BaseMessages.getString( PKG, "Sentiment.Tab.Server" ) );
+        wServerComp = new Composite( wTabFolder, SWT.NONE );
+        props.setLook( wServerComp );
+        wServerComp.setLayout( tabLayout );
+
+        wlServerUrl = new Label( wServerComp, SWT.RIGHT );
+        wlServerUrl.setText( BaseMessages.getString( PKG, "Sentiment.ServerUrl.Label" ) );
+        props.setLook( wlServerUrl );
+        fdlServerUrl = new FormData();
+        fdlServerUrl.left = new FormAttachment( 0, 0 );
+        fdlServerUrl.top = new FormAttachment( 0, margin );
+        fdlServerUrl.right = new FormAttachment( middle, -margin );
+        wlServerUrl.setLayoutData( fdlServerUrl );
+        wServerUrl = new Text( wServerComp, SWT.SINGLE | SWT.LEFT | SWT.BORDER );
+        props.setLook( wServerUrl );
+        wServerUrl.addModifyListener( lsMod );
+        wServerUrl.setToolTipText( BaseMessages.getString( PKG, "Sentiment.ServerUrl.Tooltip" ) );
+        fdServerUrl = new FormData();
+        fdServerUrl.left = new FormAttachment( middle, 0 );
+        fdServerUrl.top = new FormAttachment( 0, margin );
+        fdServerUrl.right = new FormAttachment( 100, 0 );
+        wServerUrl.setLayoutData( fdServerUrl );
+
+        wlServerBatchSentences = new Label( wServerComp, SWT.RIGHT );
+        wlServerBatchSentences.setText( BaseMessages.getString( PKG, "Sentiment.ServerBatchSentences.Label" ) );
+        props.setLook( wlServerBatchSentences );
+        fdlServerBatchSentences = new FormData();
+        fdlServerBatchSentences.left = new FormAttachment( 0, 0 );
+        fdlServerBatchSentences.top = new FormAttachment( wServerUrl, margin );
+        fdlServerBatchSentences.right = new FormAttachment( middle, -margin );
+        wlServerBatchSentences.setLayoutData( fdlServerBatchSentences );
+        wServerBatchSentences = new Text( wServerComp, SWT.SINGLE | SWT.LEFT | SWT.BORDER );
+        props.setLook( wServerBatchSentences );
+        wServerBatchSentences.addModifyListener( lsMod );
+        wServerBatchSentences.setToolTipText( BaseMessages.getString( PKG, "Sentiment.ServerBatchSentences.Tooltip" ) );
+        fdServerBatchSentences = new FormData();
+        fdServerBatchSentences.left = new FormAttachment( middle, 0 );
+        fdServerBatchSentences.top = new FormAttachment( wServerUrl, margin );
+        fdServerBatchSentences.right = new FormAttachment( 100, 0 );
+        wServerBatchSentences.setLayoutData( fdServerBatchSentences );
+
+        wlServerMaxInFlight = new Label( wServerComp, SWT.RIGHT );
+        wlServerMaxInFlight.setText( BaseMessages.getString( PKG, "Sentiment.ServerMaxInFlight.Label" ) );
+        props.setLook( wlServerMaxInFlight );
+        fdlServerMaxInFlight = new FormData();
+        fdlServerMaxInFlight.left = new FormAttachment( 0, 0 );
+        fdlServerMaxInFlight.top = new FormAttachment( wServerBatchSentences, margin );
+        fdlServerMaxInFlight.right = new FormAttachment( middle, -margin );
+        wlServerMaxInFlight.setLayoutData( fdlServerMaxInFlight );
+        wServerMaxInFlight = new Text( wServerComp, SWT.SINGLE | SWT.LEFT | SWT.BORDER );
+        props.setLook( wServerMaxInFlight );
+        wServerMaxInFlight.addModifyListener( lsMod );
+        wServerMaxInFlight.setToolTipText( BaseMessages.getString( PKG, "Sentiment.ServerMaxInFlight.Tooltip" ) );
+        fdServerMaxInFlight = new FormData();
+        fdServerMaxInFlight.left = new FormAttachment( middle, 0 );
+        fdServerMaxInFlight.top = new FormAttachment( wServerBatchSentences, margin );
+        fdServerMaxInFlight.right = new FormAttachment( 100, 0 );
+        wServerMaxInFlight.setLayoutData( fdServerMaxInFlight );
+
+        wServerComp.layout();
+        wTabServer.setControl( wServerComp );
+
+        // Fields tab
+        wTabFields = new CTabItem( wTabFolder, SWT.NONE );
+        wTabFields.setText( BaseMessages.getString( PKG, "Sentiment.Tab.Fields" ) );
+        wFieldsComp = new Composite( wTabFolder, SWT.NONE );
+        props.setLook( wFieldsComp );
+        wFieldsComp.setLayout( tabLayout );
+
+        wlKey = new Label( wFieldsComp, SWT.NONE );
         wlKey.setText( BaseMessages.getString( PKG, "Sentiment.Fields.Label" ) );
         props.setLook( wlKey );
         fdlKey = new FormData();
         fdlKey.left = new FormAttachment( 0, 0 );
-        fdlKey.top = new FormAttachment( wAnalysisType, 2 * margin );
+        fdlKey.top = new FormAttachment( 0, margin );
         wlKey.setLayoutData( fdlKey );
 
-        int nrFieldCols = 2;
+        int nrFieldCols = 4;
         int nrFieldRows = ( input.getFieldInStream() != null ? input.getFieldInStream().length : 1 );
 
         ciKey = new ColumnInfo[nrFieldCols];
@@ -214,24 +834,79 @@ public class NLPStepDialog extends BaseStepDialog implements StepDialogInterface
                 new ColumnInfo(
                         BaseMessages.getString( PKG, "Sentiment.ColumnInfo.OutStreamField" ),
                         ColumnInfo.COLUMN_TYPE_TEXT, false );
+        ciKey[2] =
+                new ColumnInfo(
+                        BaseMessages.getString( PKG, "Sentiment.ColumnInfo.AnalysisType" ),
+                        ColumnInfo.COLUMN_TYPE_CCOMBO, getAnalysisTypes( true ), false );
+        ciKey[3] =
+                new ColumnInfo(
+                        BaseMessages.getString( PKG, "Sentiment.ColumnInfo.OutputType" ),
+                        ColumnInfo.COLUMN_TYPE_CCOMBO, getOutputTypes(), false );
 
 
         ciKey[1]
                 .setToolTip( BaseMessages.getString( PKG, "Sentiment.ColumnInfo.OutStreamField.Tooltip" ) );
+        ciKey[2]
+                .setToolTip( BaseMessages.getString( PKG, "Sentiment.ColumnInfo.AnalysisType.Tooltip" ) );
+        ciKey[3]
+                .setToolTip( BaseMessages.getString( PKG, "Sentiment.ColumnInfo.OutputType.Tooltip" ) );
 
         wFields =
                 new TableView(
-                        transMeta, shell, SWT.BORDER | SWT.FULL_SELECTION | SWT.MULTI | SWT.V_SCROLL | SWT.H_SCROLL, ciKey,
+                        transMeta, wFieldsComp, SWT.BORDER | SWT.FULL_SELECTION | SWT.MULTI | SWT.V_SCROLL | SWT.H_SCROLL, ciKey,
                         nrFieldRows, lsMod, props );
 
         fdKey = new FormData();
         fdKey.left = new FormAttachment( 0, 0 );
         fdKey.top = new FormAttachment( wlKey, margin );
         fdKey.right = new FormAttachment( 100, -margin );
-        fdKey.bottom = new FormAttachment( 100, -30 );
+        fdKey.bottom = new FormAttachment( 60, 0 );
         wFields.setLayoutData( fdKey );
 
+        wlProperties = new Label( wFieldsComp, SWT.NONE );
+        wlProperties.setText( BaseMessages.getString( PKG, "Sentiment.Properties.Label" ) );
+        props.setLook( wlProperties );
+        fdlProperties = new FormData();
+        fdlProperties.left = new FormAttachment( 0, 0 );
+        fdlProperties.top = new FormAttachment( wFields, margin );
+        wlProperties.setLayoutData( fdlProperties );
 
+        int nrPropertyRows = ( input.getPropertyName() != null ? input.getPropertyName().length : 1 );
+        ColumnInfo[] ciProperties = new ColumnInfo[2];
+        ciProperties[0] =
+                new ColumnInfo(
+                        BaseMessages.getString( PKG, "Sentiment.ColumnInfo.PropertyName" ),
+                        ColumnInfo.COLUMN_TYPE_TEXT, false );
+        ciProperties[1] =
+                new ColumnInfo(
+                        BaseMessages.getString( PKG, "Sentiment.ColumnInfo.PropertyValue" ),
+                        ColumnInfo.COLUMN_TYPE_TEXT, false );
+        ciProperties[0]
+                .setToolTip( BaseMessages.getString( PKG, "Sentiment.ColumnInfo.PropertyName.Tooltip" ) );
+        ciProperties[1].setUsingVariables( true );
+
+        wProperties =
+                new TableView(
+                        transMeta, wFieldsComp, SWT.BORDER | SWT.FULL_SELECTION | SWT.MULTI | SWT.V_SCROLL | SWT.H_SCROLL,
+                        ciProperties, nrPropertyRows, lsMod, props );
+
+        fdProperties = new FormData();
+        fdProperties.left = new FormAttachment( 0, 0 );
+        fdProperties.top = new FormAttachment( wlProperties, margin );
+        fdProperties.right = new FormAttachment( 100, -margin );
+        fdProperties.bottom = new FormAttachment( 100, -margin );
+        wProperties.setLayoutData( fdProperties );
+
+        wFieldsComp.layout();
+        wTabFields.setControl( wFieldsComp );
+
+        fdTabFolder = new FormData();
+        fdTabFolder.left = new FormAttachment( 0, 0 );
+        fdTabFolder.top = new FormAttachment( wAnalysisType, margin );
+        fdTabFolder.right = new FormAttachment( 100, 0 );
+        fdTabFolder.bottom = new FormAttachment( 100, -50 );
+        wTabFolder.setLayoutData( fdTabFolder );
+        wTabFolder.setSelection( 0 );
 
         // OK and cancel buttons
 		wOK = new Button(shell, SWT.PUSH);
@@ -328,6 +1003,53 @@ public class NLPStepDialog extends BaseStepDialog implements StepDialogInterface
         ciKey[0].setComboValues( fieldNames );
 
     }
+    /**
+     * @param withDefault true to start the list with an empty entry standing for the step's analysis type
+     */
+    private static String[] getAnalysisTypes( boolean withDefault ) {
+        List<String> types = new ArrayList<String>();
+        if ( withDefault ) {
+            types.add( "" );
+        }
+        for ( SentimentRollup rollup : SentimentRollup.values() ) {
+            types.add( rollup.getDescription() );
+        }
+        return types.toArray( new String[types.size()] );
+    }
+
+    /**
+     * The sentence field names only apply when one row is emitted per sentence.
+     */
+    private void setSentenceOutputFlags() {
+        boolean enabled = wSentenceOutput.getSelection();
+        wlSentenceIndexField.setEnabled( enabled );
+        wSentenceIndexField.setEnabled( enabled );
+        wlSentenceTextField.setEnabled( enabled );
+        wSentenceTextField.setEnabled( enabled );
+        wlSentenceSentimentField.setEnabled( enabled );
+        wSentenceSentimentField.setEnabled( enabled );
+        wlProbabilityPrefix.setEnabled( enabled );
+        wProbabilityPrefix.setEnabled( enabled );
+    }
+
+    private static String[] getOutputTypes() {
+        OutputType[] types = OutputType.values();
+        String[] descriptions = new String[types.length];
+        for ( int i = 0; i < types.length; i++ ) {
+            descriptions[i] = types[i].getDescription();
+        }
+        return descriptions;
+    }
+
+    private static String[] getBudgetPolicies() {
+        BudgetPolicy[] policies = BudgetPolicy.values();
+        String[] descriptions = new String[policies.length];
+        for ( int i = 0; i < policies.length; i++ ) {
+            descriptions[i] = policies[i].getDescription();
+        }
+        return descriptions;
+    }
+
 	/**
 	 * This helper method puts the step configuration stored in the meta object
 	 * and puts it into the dialog controls.
@@ -342,18 +1064,67 @@ public class NLPStepDialog extends BaseStepDialog implements StepDialogInterface
                 if ( input.getFieldOutStream()[i] != null ) {
                     item.setText( 2, input.getFieldOutStream()[i] );
                 }
+                if ( input.getFieldAnalysisType()[i] != null ) {
+                    item.setText( 3, input.getFieldAnalysisType()[i] );
+                }
+                item.setText( 4, input.getOutputType( i ) );
 
             }
         }
 
+        if ( input.getPropertyName() != null ) {
+            for ( int i = 0; i < input.getPropertyName().length; i++ ) {
+                TableItem item = wProperties.table.getItem( i );
+                if ( input.getPropertyName()[i] != null ) {
+                    item.setText( 1, input.getPropertyName()[i] );
+                }
+                if ( input.getPropertyValue()[i] != null ) {
+                    item.setText( 2, input.getPropertyValue()[i] );
+                }
+            }
+        }
+
         if(input.getAnalysisType()!=null) {
             wAnalysisType.setText(input.getAnalysisType());
         }
         else{
             wAnalysisType.setText("Wilson Score");
         }
+        wWorkerThreads.setText( String.valueOf( Math.max( 1, input.getWorkerThreads() ) ) );
+        wUnorderedOutput.setSelection( input.isUnorderedOutput() );
+        wBatchSize.setText( String.valueOf( Math.max( 1, input.getBatchSize() ) ) );
+        wCacheMaxEntries.setText( String.valueOf( input.getCacheMaxEntries() ) );
+        wCacheMaxBytes.setText( String.valueOf( input.getCacheMaxBytes() ) );
+        wSentenceCacheMaxEntries.setText( String.valueOf( input.getSentenceCacheMaxEntries() ) );
+        wSentenceCacheMaxBytes.setText( String.valueOf( input.getSentenceCacheMaxBytes() ) );
+        wMaxDocumentChars.setText( String.valueOf( input.getMaxDocumentChars() ) );
+        wDocumentCharsPolicy.setText( BudgetPolicy.fromDescription( input.getDocumentCharsPolicy() ).getDescription() );
+        wMaxSentences.setText( String.valueOf( input.getMaxSentences() ) );
+        wSentencesPolicy.setText( BudgetPolicy.fromDescription( input.getSentencesPolicy() ).getDescription() );
+        wMaxSentenceLength.setText( String.valueOf( input.getMaxSentenceLength() ) );
+        wSentenceLengthPolicy.setText( BudgetPolicy.fromDescription( input.getSentenceLengthPolicy() ).getDescription() );
+        wTimeout.setText( String.valueOf( input.getTimeoutMillis() ) );
+        wTimeoutPolicy.setText( TimeoutPolicy.fromDescription( input.getTimeoutPolicy() ).getDescription() );
+        wCascadeThreshold.setText( String.valueOf( input.getCascadeThreshold() ) );
+        wLexiconFile.setText( Const.NVL( input.getLexiconFile(), "" ) );
+        wWarmUpFile.setText( Const.NVL( input.getWarmUpFile(), "" ) );
+        wServerUrl.setText( Const.NVL( input.getServerUrl(), "" ) );
+        wServerBatchSentences.setText( String.valueOf( Math.max( 1, input.getServerBatchSentences() ) ) );
+        wServerMaxInFlight.setText( String.valueOf( Math.max( 1, input.getServerMaxInFlight() ) ) );
+        wSkipUrls.setSelection( input.isSkipUrls() );
+        wSkipHashtags.setSelection( input.isSkipHashtags() );
+        wSkipSymbols.setSelection( input.isSkipSymbols() );
+        wSkipResult.setText( SkipResult.fromDescription( input.getSkipResult() ).getDescription() );
+        wSentenceOutput.setSelection( input.isSentenceOutput() );
+        wSentenceIndexField.setText( Const.NVL( input.getSentenceIndexField(), "" ) );
+        wSentenceTextField.setText( Const.NVL( input.getSentenceTextField(), "" ) );
+        wSentenceSentimentField.setText( Const.NVL( input.getSentenceSentimentField(), "" ) );
+        wProbabilityPrefix.setText( Const.NVL( input.getProbabilityPrefix(), "" ) );
+        setSentenceOutputFlags();
         wFields.setRowNums();
         wFields.optWidth(true);
+        wProperties.setRowNums();
+        wProperties.optWidth(true);
 
         wStepname.selectAll();
         wStepname.setFocus();
@@ -384,10 +1155,50 @@ public class NLPStepDialog extends BaseStepDialog implements StepDialogInterface
             TableItem item = wFields.getNonEmpty( i );
             inf.getFieldInStream()[i] = item.getText( 1 );
             inf.getFieldOutStream()[i] = item.getText( 2 );
+            inf.getFieldAnalysisType()[i] = item.getText( 3 );
+            inf.getFieldOutputType()[i] = item.getText( 4 );
+
+        }
 
+        int nrproperties = wProperties.nrNonEmpty();
+        inf.allocateProperties( nrproperties );
+        for ( int i = 0; i < nrproperties; i++ ) {
+            TableItem item = wProperties.getNonEmpty( i );
+            inf.getPropertyName()[i] = item.getText( 1 );
+            inf.getPropertyValue()[i] = item.getText( 2 );
         }
 
         inf.setAnalysisType(wAnalysisType.getText());
+        inf.setWorkerThreads( Const.toInt( wWorkerThreads.getText(), 1 ) );
+        inf.setUnorderedOutput( wUnorderedOutput.getSelection() );
+        inf.setBatchSize( Const.toInt( wBatchSize.getText(), 1 ) );
+        inf.setCacheMaxEntries( Const.toLong( wCacheMaxEntries.getText(), 0L ) );
+        inf.setCacheMaxBytes( Const.toLong( wCacheMaxBytes.getText(), 0L ) );
+        inf.setSentenceCacheMaxEntries( Const.toLong( wSentenceCacheMaxEntries.getText(), 0L ) );
+        inf.setSentenceCacheMaxBytes( Const.toLong( wSentenceCacheMaxBytes.getText(), 0L ) );
+        inf.setMaxDocumentChars( Const.toInt( wMaxDocumentChars.getText(), 0 ) );
+        inf.setDocumentCharsPolicy( wDocumentCharsPolicy.getText() );
+        inf.setMaxSentences( Const.toInt( wMaxSentences.getText(), 0 ) );
+        inf.setSentencesPolicy( wSentencesPolicy.getText() );
+        inf.setMaxSentenceLength( Const.toInt( wMaxSentenceLength.getText(), 0 ) );
+        inf.setSentenceLengthPolicy( wSentenceLengthPolicy.getText() );
+        inf.setTimeoutMillis( Const.toLong( wTimeout.getText(), 0L ) );
+        inf.setTimeoutPolicy( wTimeoutPolicy.getText() );
+        inf.setCascadeThreshold( Const.toDouble( wCascadeThreshold.getText(), 0.0 ) );
+        inf.setLexiconFile( wLexiconFile.getText() );
+        inf.setWarmUpFile( wWarmUpFile.getText() );
+        inf.setServerUrl( wServerUrl.getText() );
+        inf.setServerBatchSentences( Const.toInt( wServerBatchSentences.getText(), 32 ) );
+        inf.setServerMaxInFlight( Const.toInt( wServerMaxInFlight.getText(), 4 ) );
+        inf.setSkipUrls( wSkipUrls.getSelection() );
+        inf.setSkipHashtags( wSkipHashtags.getSelection() );
+        inf.setSkipSymbols( wSkipSymbols.getSelection() );
+        inf.setSkipResult( wSkipResult.getText() );
+        inf.setSentenceOutput( wSentenceOutput.getSelection() );
+        inf.setSentenceIndexField( wSentenceIndexField.getText() );
+        inf.setSentenceTextField( wSentenceTextField.getText() );
+        inf.setSentenceSentimentField( wSentenceSentimentField.getText() );
+        inf.setProbabilityPrefix( wProbabilityPrefix.getText() );
 
 
 
@@ -14,6 +14,13 @@
 * limitations under the License.
 */
 package bi.meteorite.sentiment;
+import bi.meteorite.sentiment.nlp.SentimentClass;
+import bi.meteorite.sentiment.nlp.SharedPipeline;
+import bi.meteorite.sentiment.nlp.budget.BudgetPolicy;
+import bi.meteorite.sentiment.nlp.budget.TimeoutPolicy;
+import bi.meteorite.sentiment.nlp.filter.SkipResult;
+import bi.meteorite.sentiment.nlp.rollup.OutputType;
+import bi.meteorite.sentiment.nlp.server.RemoteScorer;
 import org.pentaho.di.core.CheckResult;
 import org.pentaho.di.core.CheckResultInterface;
 import org.pentaho.di.core.Const;
@@ -37,6 +44,7 @@ import org.pentaho.metastore.api.IMetaStore;
 import org.w3c.dom.Node;
 
 import java.util.List;
+import java.util.Properties;
 
 /**
  * This class is part of the demo step plug-in implementation.
@@ -77,7 +85,41 @@ public class NLPStepMeta extends BaseStepMeta implements StepMetaInterface {
 	 */
     private String[] fieldInStream;
     private String[] fieldOutStream;
+    private String[] fieldAnalysisType;
+    private String[] fieldOutputType;
+    private String[] propertyName;
+    private String[] propertyValue;
     private String analysisType;
+    private int workerThreads;
+    private boolean unorderedOutput;
+    private int batchSize;
+    private long cacheMaxEntries;
+    private long cacheMaxBytes;
+    private long sentenceCacheMaxEntries;
+    private long sentenceCacheMaxBytes;
+    private int maxDocumentChars;
+    private String documentCharsPolicy;
+    private int maxSentences;
+    private String sentencesPolicy;
+    private int maxSentenceLength;
+    private String sentenceLengthPolicy;
+    private long timeoutMillis;
+    private String timeoutPolicy;
+    private double cascadeThreshold;
+    private String lexiconFile;
+    private String warmUpFile;
+    private String serverUrl;
+    private int serverBatchSentences;
+    private int serverMaxInFlight;
+    private boolean skipUrls;
+    private boolean skipHashtags;
+    private boolean skipSymbols;
+    private String skipResult;
+    private boolean sentenceOutput;
+    private String sentenceIndexField;
+    private String sentenceTextField;
+    private String sentenceSentimentField;
+    private String probabilityPrefix;
 
     /**
 	 * Constructor should call super() to make sure the base class has a chance to initialize properly.
@@ -109,6 +151,85 @@ public class NLPStepMeta extends BaseStepMeta implements StepMetaInterface {
         this.fieldOutStream = keyStream;
     }
 
+    /**
+     * @return the rollup of each output field, empty to use the step's analysis type
+     */
+    public String[] getFieldAnalysisType() {
+        return fieldAnalysisType;
+    }
+
+    public void setFieldAnalysisType( String[] fieldAnalysisType ) {
+        this.fieldAnalysisType = fieldAnalysisType;
+    }
+
+    /**
+     * @return what each output field holds, see {@link OutputType}; empty for the class name
+     */
+    public String[] getFieldOutputType() {
+        return fieldOutputType;
+    }
+
+    public void setFieldOutputType( String[] fieldOutputType ) {
+        this.fieldOutputType = fieldOutputType;
+    }
+
+    /**
+     * @return the description of the {@link OutputType} of the given output field
+     */
+    public String getOutputType( int field ) {
+        if ( fieldOutputType == null || Const.isEmpty( fieldOutputType[field] ) ) {
+            return OutputType.CLASS_NAME.getDescription();
+        }
+        return fieldOutputType[field];
+    }
+
+    /**
+     * @return the rollup that computes the given output field
+     */
+    public String getAnalysisType( int field ) {
+        if ( fieldAnalysisType == null || Const.isEmpty( fieldAnalysisType[field] ) ) {
+            return analysisType;
+        }
+        return fieldAnalysisType[field];
+    }
+
+    /**
+     * @return the names of the CoreNLP properties set on top of the defaults
+     */
+    public String[] getPropertyName() {
+        return propertyName;
+    }
+
+    public void setPropertyName( String[] propertyName ) {
+        this.propertyName = propertyName;
+    }
+
+    public String[] getPropertyValue() {
+        return propertyValue;
+    }
+
+    public void setPropertyValue( String[] propertyValue ) {
+        this.propertyValue = propertyValue;
+    }
+
+    public void allocateProperties( int nrproperties ) {
+        propertyName = new String[nrproperties];
+        propertyValue = new String[nrproperties];
+    }
+
+    /**
+     * @return the properties to build the CoreNLP pipeline from, with variables substituted in the values
+     */
+    public Properties getPipelineProperties( VariableSpace space ) {
+        Properties props = new Properties();
+        for ( int i = 0; i < propertyName.length; i++ ) {
+            if ( !Const.isEmpty( propertyName[i] ) ) {
+                props.setProperty( propertyName[i].trim(), space.environmentSubstitute( Const.NVL( propertyValue[i], "" ) ) );
+            }
+        }
+        return SharedPipeline.withDefaults( props );
+    }
+
     public void loadXML( Node stepnode, List<DatabaseMeta> databases, IMetaStore metaStore )
             throws KettleXMLException {
         readData( stepnode );
@@ -117,6 +238,8 @@ public class NLPStepMeta extends BaseStepMeta implements StepMetaInterface {
     public void allocate( int nrkeys ) {
         fieldInStream = new String[nrkeys];
         fieldOutStream = new String[nrkeys];
+        fieldAnalysisType = new String[nrkeys];
+        fieldOutputType = new String[nrkeys];
     }
 
 
@@ -139,6 +262,15 @@ public class NLPStepMeta extends BaseStepMeta implements StepMetaInterface {
         for ( int i = 0; i < nrkeys; i++ ) {
             retval.fieldInStream[i] = fieldInStream[i];
             retval.fieldOutStream[i] = fieldOutStream[i];
+            retval.fieldAnalysisType[i] = fieldAnalysisType[i];
+            retval.fieldOutputType[i] = fieldOutputType[i];
+        }
+
+        int nrproperties = propertyName.length;
+        retval.allocateProperties( nrproperties );
+        for ( int i = 0; i < nrproperties; i++ ) {
+            retval.propertyName[i] = propertyName[i];
+            retval.propertyValue[i] = propertyValue[i];
         }
 
 		return retval;
@@ -158,9 +290,50 @@ public class NLPStepMeta extends BaseStepMeta implements StepMetaInterface {
 
                 fieldInStream[i] = Const.NVL(XMLHandler.getTagValue(fnode, "in_stream_name"), "");
                 fieldOutStream[i] = Const.NVL(XMLHandler.getTagValue(fnode, "out_stream_name"), "");
+                fieldAnalysisType[i] = Const.NVL(XMLHandler.getTagValue(fnode, "analysis_type"), "");
+                fieldOutputType[i] = Const.NVL(XMLHandler.getTagValue(fnode, "output_type"), "");
 
             }
+            Node properties = XMLHandler.getSubNode( stepnode, "properties" );
+            int nrproperties = XMLHandler.countNodes( properties, "property" );
+            allocateProperties( nrproperties );
+            for ( int i = 0; i < nrproperties; i++ ) {
+                Node pnode = XMLHandler.getSubNodeByNr(properties, "property", i);
+
+                propertyName[i] = Const.NVL(XMLHandler.getTagValue(pnode, "name"), "");
+                propertyValue[i] = Const.NVL(XMLHandler.getTagValue(pnode, "value"), "");
+            }
             analysisType = Const.NVL(XMLHandler.getTagValue(stepnode, "analysistype"), "");
+            workerThreads = Const.toInt(XMLHandler.getTagValue(stepnode, "worker_threads"), 1);
+            unorderedOutput = "Y".equalsIgnoreCase(XMLHandler.getTagValue(stepnode, "unordered_output"));
+            batchSize = Const.toInt(XMLHandler.getTagValue(stepnode, "batch_size"), 1);
+            cacheMaxEntries = Const.toLong(XMLHandler.getTagValue(stepnode, "cache_max_entries"), 0L);
+            cacheMaxBytes = Const.toLong(XMLHandler.getTagValue(stepnode, "cache_max_bytes"), 0L);
+            sentenceCacheMaxEntries = Const.toLong(XMLHandler.getTagValue(stepnode, "sentence_cache_max_entries"), 0L);
+            sentenceCacheMaxBytes = Const.toLong(XMLHandler.getTagValue(stepnode, "sentence_cache_max_bytes"), 0L);
+            maxDocumentChars = Const.toInt(XMLHandler.getTagValue(stepnode, "max_document_chars"), 0);
+            documentCharsPolicy = Const.NVL(XMLHandler.getTagValue(stepnode, "document_chars_policy"), "");
+            maxSentences = Const.toInt(XMLHandler.getTagValue(stepnode, "max_sentences"), 0);
+            sentencesPolicy = Const.NVL(XMLHandler.getTagValue(stepnode, "sentences_policy"), "");
+            maxSentenceLength = Const.toInt(XMLHandler.getTagValue(stepnode, "max_sentence_length"), 0);
+            sentenceLengthPolicy = Const.NVL(XMLHandler.getTagValue(stepnode, "sentence_length_policy"), "");
+            timeoutMillis = Const.toLong(XMLHandler.getTagValue(stepnode, "timeout_ms"), 0L);
+            timeoutPolicy = Const.NVL(XMLHandler.getTagValue(stepnode, "timeout_policy"), "");
+            cascadeThreshold = Const.toDouble(XMLHandler.getTagValue(stepnode, "cascade_threshold"), 0.0);
+            lexiconFile = Const.NVL(XMLHandler.getTagValue(stepnode, "lexicon_file"), "");
+            warmUpFile = Const.NVL(XMLHandler.getTagValue(stepnode, "warm_up_file"), "");
+            serverUrl = Const.NVL(XMLHandler.getTagValue(stepnode, "server_url"), "");
+            serverBatchSentences = Const.toInt(XMLHandler.getTagValue(stepnode, "server_batch_sentences"), 32);
+            serverMaxInFlight = Const.toInt(XMLHandler.getTagValue(stepnode, "server_max_in_flight"), 4);
+            skipUrls = "Y".equalsIgnoreCase(XMLHandler.getTagValue(stepnode, "skip_urls"));
+            skipHashtags = "Y".equalsIgnoreCase(XMLHandler.getTagValue(stepnode, "skip_hashtags"));
+            skipSymbols = "Y".equalsIgnoreCase(XMLHandler.getTagValue(stepnode, "skip_symbols"));
+            skipResult = Const.NVL(XMLHandler.getTagValue(stepnode, "skip_result"), "");
+            sentenceOutput = "Y".equalsIgnoreCase(XMLHandler.getTagValue(stepnode, "sentence_output"));
+            sentenceIndexField = Const.NVL(XMLHandler.getTagValue(stepnode, "sentence_index_field"), "");
+            sentenceTextField = Const.NVL(XMLHandler.getTagValue(stepnode, "sentence_text_field"), "");
+            sentenceSentimentField = Const.NVL(XMLHandler.getTagValue(stepnode, "sentence_sentiment_field"), "");
+            probabilityPrefix = Const.NVL(XMLHandler.getTagValue(stepnode, "probability_prefix"), "");
         } catch ( Exception e ) {
             throw new KettleXMLException( BaseMessages.getString(
                     PKG, "StringOperationsMeta.Exception.UnableToReadStepInfoFromXML" ), e );
@@ -173,6 +346,37 @@ public class NLPStepMeta extends BaseStepMeta implements StepMetaInterface {
         int nrkeys = 0;
 
         allocate( nrkeys );
+        allocateProperties( 0 );
+        workerThreads = 1;
+        unorderedOutput = false;
+        batchSize = 1;
+        cacheMaxEntries = 0;
+        cacheMaxBytes = 0;
+        sentenceCacheMaxEntries = 0;
+        sentenceCacheMaxBytes = 0;
+        maxDocumentChars = 0;
+        documentCharsPolicy = BudgetPolicy.TRUNCATE.getDescription();
+        maxSentences = 0;
+        sentencesPolicy = BudgetPolicy.TRUNCATE.getDescription();
+        maxSentenceLength = 0;
+        sentenceLengthPolicy = BudgetPolicy.TRUNCATE.getDescription();
+        timeoutMillis = 0;
+        timeoutPolicy = TimeoutPolicy.FALLBACK.getDescription();
+        cascadeThreshold = 0;
+        lexiconFile = "";
+        warmUpFile = "";
+        serverUrl = "";
+        serverBatchSentences = 32;
+        serverMaxInFlight = 4;
+        skipUrls = false;
+        skipHashtags = false;
+        skipSymbols = false;
+        skipResult = SkipResult.NULL.getDescription();
+        sentenceOutput = false;
+        sentenceIndexField = "sentence_index";
+        sentenceTextField = "";
+        sentenceSentimentField = "sentence_sentiment";
+        probabilityPrefix = "probability_";
     }
 	/**
 	 * This method is called by Spoon when a step needs to serialize its configuration to XML. The expected
@@ -191,11 +395,52 @@ public class NLPStepMeta extends BaseStepMeta implements StepMetaInterface {
             retval.append(" <field>").append(Const.CR);
             retval.append(" ").append(XMLHandler.addTagValue("in_stream_name", fieldInStream[i]));
             retval.append(" ").append(XMLHandler.addTagValue("out_stream_name", fieldOutStream[i]));
+            retval.append(" ").append(XMLHandler.addTagValue("analysis_type", fieldAnalysisType[i]));
+            retval.append(" ").append(XMLHandler.addTagValue("output_type", fieldOutputType[i]));
             retval.append( " </field>" ).append( Const.CR );
         }
 
         retval.append( " </fields>" ).append( Const.CR );
+
+        retval.append(" <properties>").append(Const.CR);
+        for (int i = 0; i < propertyName.length; i++) {
+            retval.append(" <property>").append(Const.CR);
+            retval.append(" ").append(XMLHandler.addTagValue("name", propertyName[i]));
+            retval.append(" ").append(XMLHandler.addTagValue("value", propertyValue[i]));
+            retval.append( " </property>" ).append( Const.CR );
+        }
+        retval.append( " </properties>" ).append( Const.CR );
         retval.append(" ").append(XMLHandler.addTagValue("analysistype", analysisType));
+        retval.append(" ").append(XMLHandler.addTagValue("worker_threads", workerThreads));
+        retval.append(" ").append(XMLHandler.addTagValue("unordered_output", unorderedOutput));
+        retval.append(" ").append(XMLHandler.addTagValue("batch_size", batchSize));
+        retval.append(" ").append(XMLHandler.addTagValue("cache_max_entries", cacheMaxEntries));
+        retval.append(" ").append(XMLHandler.addTagValue("cache_max_bytes", cacheMaxBytes));
+        retval.append(" ").append(XMLHandler.addTagValue("sentence_cache_max_entries", sentenceCacheMaxEntries));
+        retval.append(" ").append(XMLHandler.addTagValue("sentence_cache_max_bytes", sentenceCacheMaxBytes));
+        retval.append(" ").append(XMLHandler.addTagValue("max_document_chars", maxDocumentChars));
+        retval.append(" ").append(XMLHandler.addTagValue("document_chars_policy", documentCharsPolicy));
+        retval.append(" ").append(XMLHandler.addTagValue("max_sentences", maxSentences));
+        retval.append(" ").append(XMLHandler.addTagValue("sentences_policy", sentencesPolicy));
+        retval.append(" ").append(XMLHandler.addTagValue("max_sentence_length", maxSentenceLength));
+        retval.append(" ").append(XMLHandler.addTagValue("sentence_length_policy", sentenceLengthPolicy));
+        retval.append(" ").append(XMLHandler.addTagValue("timeout_ms", timeoutMillis));
+        retval.append(" ").append(XMLHandler.addTagValue("timeout_policy", timeoutPolicy));
+        retval.append(" ").append(XMLHandler.addTagValue("cascade_threshold", cascadeThreshold));
+        retval.append(" ").append(XMLHandler.addTagValue("lexicon_file", lexiconFile));
+        retval.append(" ").append(XMLHandler.addTagValue("warm_up_file", warmUpFile));
+        retval.append(" ").append(XMLHandler.addTagValue("server_url", serverUrl));
+        retval.append(" ").append(XMLHandler.addTagValue("server_batch_sentences", serverBatchSentences));
+        retval.append(" ").append(XMLHandler.addTagValue("server_max_in_flight", serverMaxInFlight));
+        retval.append(" ").append(XMLHandler.addTagValue("skip_urls", skipUrls));
+        retval.append(" ").append(XMLHandler.addTagValue("skip_hashtags", skipHashtags));
+        retval.append(" ").append(XMLHandler.addTagValue("skip_symbols", skipSymbols));
+        retval.append(" ").append(XMLHandler.addTagValue("skip_result", skipResult));
+        retval.append(" ").append(XMLHandler.addTagValue("sentence_output", sentenceOutput));
+        retval.append(" ").append(XMLHandler.addTagValue("sentence_index_field", sentenceIndexField));
+        retval.append(" ").append(XMLHandler.addTagValue("sentence_text_field", sentenceTextField));
+        retval.append(" ").append(XMLHandler.addTagValue("sentence_sentiment_field", sentenceSentimentField));
+        retval.append(" ").append(XMLHandler.addTagValue("probability_prefix", probabilityPrefix));
 
         return retval.toString();
     }
@@ -210,8 +455,46 @@ public class NLPStepMeta extends BaseStepMeta implements StepMetaInterface {
             for ( int i = 0; i < nrkeys; i++ ) {
                 fieldInStream[i] = Const.NVL( rep.getStepAttributeString( id_step, i, "in_stream_name" ), "" );
                 fieldOutStream[i] = Const.NVL( rep.getStepAttributeString( id_step, i, "out_stream_name" ), "" );
+                fieldAnalysisType[i] = Const.NVL( rep.getStepAttributeString( id_step, i, "analysis_type" ), "" );
+                fieldOutputType[i] = Const.NVL( rep.getStepAttributeString( id_step, i, "output_type" ), "" );
+            }
+            int nrproperties = rep.countNrStepAttributes( id_step, "property_name" );
+            allocateProperties( nrproperties );
+            for ( int i = 0; i < nrproperties; i++ ) {
+                propertyName[i] = Const.NVL( rep.getStepAttributeString( id_step, i, "property_name" ), "" );
+                propertyValue[i] = Const.NVL( rep.getStepAttributeString( id_step, i, "property_value" ), "" );
             }
             analysisType = Const.NVL( rep.getStepAttributeString( id_step, "analysistype" ), "" );
+            workerThreads = (int) rep.getStepAttributeInteger( id_step, "worker_threads" );
+            unorderedOutput = rep.getStepAttributeBoolean( id_step, "unordered_output" );
+            batchSize = (int) rep.getStepAttributeInteger( id_step, "batch_size" );
+            cacheMaxEntries = rep.getStepAttributeInteger( id_step, "cache_max_entries" );
+            cacheMaxBytes = rep.getStepAttributeInteger( id_step, "cache_max_bytes" );
+            sentenceCacheMaxEntries = rep.getStepAttributeInteger( id_step, "sentence_cache_max_entries" );
+            sentenceCacheMaxBytes = rep.getStepAttributeInteger( id_step, "sentence_cache_max_bytes" );
+            maxDocumentChars = (int) rep.getStepAttributeInteger( id_step, "max_document_chars" );
+            documentCharsPolicy = Const.NVL( rep.getStepAttributeString( id_step, "document_chars_policy" ), "" );
+            maxSentences = (int) rep.getStepAttributeInteger( id_step, "max_sentences" );
+            sentencesPolicy = Const.NVL( rep.getStepAttributeString( id_step, "sentences_policy" ), "" );
+            maxSentenceLength = (int) rep.getStepAttributeInteger( id_step, "max_sentence_length" );
+            sentenceLengthPolicy = Const.NVL( rep.getStepAttributeString( id_step, "sentence_length_policy" ), "" );
+            timeoutMillis = rep.getStepAttributeInteger( id_step, "timeout_ms" );
+            timeoutPolicy = Const.NVL( rep.getStepAttributeString( id_step, "timeout_policy" ), "" );
+            cascadeThreshold = rep.getStepAttributeNumber( id_step, "cascade_threshold" );
+            lexiconFile = Const.NVL( rep.getStepAttributeString( id_step, "lexicon_file" ), "" );
+            warmUpFile = Const.NVL( rep.getStepAttributeString( id_step, "warm_up_file" ), "" );
+            serverUrl = Const.NVL( rep.getStepAttributeString( id_step, "server_url" ), "" );
+            serverBatchSentences = (int) rep.getStepAttributeInteger( id_step, "server_batch_sentences" );
+            serverMaxInFlight = (int) rep.getStepAttributeInteger( id_step, "server_max_in_flight" );
+            skipUrls = rep.getStepAttributeBoolean( id_step, "skip_urls" );
+            skipHashtags = rep.getStepAttributeBoolean( id_step, "skip_hashtags" );
+            skipSymbols = rep.getStepAttributeBoolean( id_step, "skip_symbols" );
+            skipResult = Const.NVL( rep.getStepAttributeString( id_step, "skip_result" ), "" );
+            sentenceOutput = rep.getStepAttributeBoolean( id_step, "sentence_output" );
+            sentenceIndexField = Const.NVL( rep.getStepAttributeString( id_step, "sentence_index_field" ), "" );
+            sentenceTextField = Const.NVL( rep.getStepAttributeString( id_step, "sentence_text_field" ), "" );
+            sentenceSentimentField = Const.NVL( rep.getStepAttributeString( id_step, "sentence_sentiment_field" ), "" );
+            probabilityPrefix = Const.NVL( rep.getStepAttributeString( id_step, "probability_prefix" ), "" );
 
         } catch ( Exception e ) {
             throw new KettleException( BaseMessages.getString(
@@ -226,8 +509,44 @@ public class NLPStepMeta extends BaseStepMeta implements StepMetaInterface {
             for ( int i = 0; i < fieldInStream.length; i++ ) {
                 rep.saveStepAttribute(id_transformation, id_step, i, "in_stream_name", fieldInStream[i]);
                 rep.saveStepAttribute(id_transformation, id_step, i, "out_stream_name", fieldOutStream[i]);
+                rep.saveStepAttribute(id_transformation, id_step, i, "analysis_type", fieldAnalysisType[i]);
+                rep.saveStepAttribute(id_transformation, id_step, i, "output_type", fieldOutputType[i]);
+            }
+            for ( int i = 0; i < propertyName.length; i++ ) {
+                rep.saveStepAttribute(id_transformation, id_step, i, "property_name", propertyName[i]);
+                rep.saveStepAttribute(id_transformation, id_step, i, "property_value", propertyValue[i]);
             }
             repository.saveStepAttribute(id_transformation, id_step, "analysistype", analysisType);
+            rep.saveStepAttribute(id_transformation, id_step, "worker_threads", workerThreads);
+            rep.saveStepAttribute(id_transformation, id_step, "unordered_output", unorderedOutput);
+            rep.saveStepAttribute(id_transformation, id_step, "batch_size", batchSize);
+            rep.saveStepAttribute(id_transformation, id_step, "cache_max_entries", cacheMaxEntries);
+            rep.saveStepAttribute(id_transformation, id_step, "cache_max_bytes", cacheMaxBytes);
+            rep.saveStepAttribute(id_transformation, id_step, "sentence_cache_max_entries", sentenceCacheMaxEntries);
+            rep.saveStepAttribute(id_transformation, id_step, "sentence_cache_max_bytes", sentenceCacheMaxBytes);
+            rep.saveStepAttribute(id_transformation, id_step, "max_document_chars", maxDocumentChars);
+            rep.saveStepAttribute(id_transformation, id_step, "document_chars_policy", documentCharsPolicy);
+            rep.saveStepAttribute(id_transformation, id_step, "max_sentences", maxSentences);
+            rep.saveStepAttribute(id_transformation, id_step, "sentences_policy", sentencesPolicy);
+            rep.saveStepAttribute(id_transformation, id_step, "max_sentence_length", maxSentenceLength);
+            rep.saveStepAttribute(id_transformation, id_step, "sentence_length_policy", sentenceLengthPolicy);
+            rep.saveStepAttribute(id_transformation, id_step, "timeout_ms", timeoutMillis);
+            rep.saveStepAttribute(id_transformation, id_step, "timeout_policy", timeoutPolicy);
+            rep.saveStepAttribute(id_transformation, id_step, "cascade_threshold", cascadeThreshold);
+            rep.saveStepAttribute(id_transformation, id_step, "lexicon_file", lexiconFile);
+            rep.saveStepAttribute(id_transformation, id_step, "warm_up_file", warmUpFile);
+            rep.saveStepAttribute(id_transformation, id_step, "server_url", serverUrl);
+            rep.saveStepAttribute(id_transformation, id_step, "server_batch_sentences", serverBatchSentences);
+            rep.saveStepAttribute(id_transformation, id_step, "server_max_in_flight", serverMaxInFlight);
+            rep.saveStepAttribute(id_transformation, id_step, "skip_urls", skipUrls);
+            rep.saveStepAttribute(id_transformation, id_step, "skip_hashtags", skipHashtags);
+            rep.saveStepAttribute(id_transformation, id_step, "skip_symbols", skipSymbols);
+            rep.saveStepAttribute(id_transformation, id_step, "skip_result", skipResult);
+            rep.saveStepAttribute(id_transformation, id_step, "sentence_output", sentenceOutput);
+            rep.saveStepAttribute(id_transformation, id_step, "sentence_index_field", sentenceIndexField);
+            rep.saveStepAttribute(id_transformation, id_step, "sentence_text_field", sentenceTextField);
+            rep.saveStepAttribute(id_transformation, id_step, "sentence_sentiment_field", sentenceSentimentField);
+            rep.saveStepAttribute(id_transformation, id_step, "probability_prefix", probabilityPrefix);
         } catch ( Exception e ) {
             throw new KettleException( BaseMessages.getString(
                     PKG, "StringOperationsMeta.Exception.UnableToSaveStepInfo" )
@@ -237,14 +556,21 @@ public class NLPStepMeta extends BaseStepMeta implements StepMetaInterface {
 
     public void getFields( RowMetaInterface inputRowMeta, String name, RowMetaInterface[] info, StepMeta nextStep,
                            VariableSpace space, Repository repository, IMetaStore metaStore ) throws KettleStepException {
+        if ( sentenceOutput ) {
+            getSentenceFields( inputRowMeta, name, space );
+            return;
+        }
         // Add new field?
         for ( int i = 0; i < fieldOutStream.length; i++ ) {
             ValueMetaInterface v;
             String outputField = space.environmentSubstitute( fieldOutStream[i] );
+            OutputType outputType = OutputType.fromDescription( getOutputType( i ) );
             if ( !Const.isEmpty( outputField ) ) {
                 // Add a new field
-                v = new ValueMeta( outputField, ValueMeta.TYPE_STRING );
-                v.setLength( 100, -1 );
+                v = new ValueMeta( outputField, getValueType( outputType ) );
+                if ( outputType == OutputType.CLASS_NAME ) {
+                    v.setLength( 100, -1 );
+                }
                 v.setOrigin( name );
                 inputRowMeta.addValueMeta( v );
             } else {
@@ -253,12 +579,53 @@ public class NLPStepMeta extends BaseStepMeta implements StepMetaInterface {
                     continue;
                 }
                 v.setStorageType( ValueMetaInterface.STORAGE_TYPE_NORMAL );
+                v.setType( getValueType( outputType ) );
 
             }
         }
     }
 
 
+    /**
+     * @return the Kettle type of an output field holding the given output type
+     */
+    private static int getValueType( OutputType outputType ) {
+        switch ( outputType ) {
+            case CLASS_NAME:
+                return ValueMeta.TYPE_STRING;
+            case CLASS_INDEX:
+                return ValueMeta.TYPE_INTEGER;
+            default:
+                return ValueMeta.TYPE_NUMBER;
+        }
+    }
+
+    /**
+     * Adds the fields of a sentence row: its index, optionally its text, its class and the probability of
+     * every class.  The rolled up output fields are not added in this mode.
+     */
+    private void getSentenceFields( RowMetaInterface inputRowMeta, String name, VariableSpace space ) {
+        ValueMetaInterface v = new ValueMeta( space.environmentSubstitute( sentenceIndexField ), ValueMeta.TYPE_INTEGER );
+        v.setOrigin( name );
+        inputRowMeta.addValueMeta( v );
+        String textField = space.environmentSubstitute( sentenceTextField );
+        if ( !Const.isEmpty( textField ) ) {
+            v = new ValueMeta( textField, ValueMeta.TYPE_STRING );
+            v.setOrigin( name );
+            inputRowMeta.addValueMeta( v );
+        }
+        v = new ValueMeta( space.environmentSubstitute( sentenceSentimentField ), ValueMeta.TYPE_STRING );
+        v.setLength( 100, -1 );
+        v.setOrigin( name );
+        inputRowMeta.addValueMeta( v );
+        String prefix = space.environmentSubstitute( probabilityPrefix );
+        for ( SentimentClass sentimentClass : SentimentClass.values() ) {
+            v = new ValueMeta( prefix + sentimentClass.name().toLowerCase(), ValueMeta.TYPE_NUMBER );
+            v.setOrigin( name );
+            inputRowMeta.addValueMeta( v );
+        }
+    }
+
     public void check( List<CheckResultInterface> remarks, TransMeta transMeta, StepMeta stepinfo,
                        RowMetaInterface prev, String[] input, String[] output, RowMetaInterface info, VariableSpace space,
                        Repository repository, IMetaStore metaStore ) {
@@ -341,10 +708,11 @@ public class NLPStepMeta extends BaseStepMeta implements StepMetaInterface {
                 }
             }
 
-            // Check if all input fields are distinct.
+            // An input field may feed several output fields, one per rollup, but it can only be updated in place once.
             for ( int idx = 0; idx < fieldInStream.length; idx++ ) {
                 for ( int jdx = 0; jdx < fieldInStream.length; jdx++ ) {
-                    if ( fieldInStream[idx].equals( fieldInStream[jdx] ) && idx != jdx && idx < jdx ) {
+                    if ( fieldInStream[idx].equals( fieldInStream[jdx] ) && idx != jdx && idx < jdx
+                            && ( Const.isEmpty( fieldOutStream[idx] ) || Const.isEmpty( fieldOutStream[jdx] ) ) ) {
                         error_message =
                                 BaseMessages.getString(
                                         PKG, "StringOperationsMeta.CheckResult.FieldInputError", fieldInStream[idx] );
@@ -355,6 +723,14 @@ public class NLPStepMeta extends BaseStepMeta implements StepMetaInterface {
             }
 
         }
+
+        // the connections of requests beyond the keep-alive limit are closed after every request
+        if ( !Const.isEmpty( serverUrl ) && serverMaxInFlight > RemoteScorer.getKeepAliveConnections() ) {
+            cr = new CheckResult( CheckResult.TYPE_RESULT_WARNING, BaseMessages.getString(
+                    PKG, "Sentiment.CheckResult.ServerMaxInFlight", String.valueOf( serverMaxInFlight ),
+                    String.valueOf( RemoteScorer.getKeepAliveConnections() ) ), stepinfo );
+            remarks.add( cr );
+        }
     }
 
     public StepInterface getStep( StepMeta stepMeta, StepDataInterface stepDataInterface, int cnr,
@@ -378,4 +754,340 @@ public class NLPStepMeta extends BaseStepMeta implements StepMetaInterface {
     public String getAnalysisType() {
         return analysisType;
     }
+
+    /**
+     * @return the number of threads scoring documents inside one step copy, 1 to score on the step thread
+     */
+    public int getWorkerThreads() {
+        return workerThreads;
+    }
+
+    public void setWorkerThreads(int workerThreads) {
+        this.workerThreads = workerThreads;
+    }
+
+    /**
+     * @return true if rows scored by the worker threads may be emitted in completion order instead of input order
+     */
+    public boolean isUnorderedOutput() {
+        return unorderedOutput;
+    }
+
+    public void setUnorderedOutput(boolean unorderedOutput) {
+        this.unorderedOutput = unorderedOutput;
+    }
+
+    /**
+     * @return the number of rows annotated together in one multi-document pipeline call, 1 to annotate row by row
+     */
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    public void setBatchSize(int batchSize) {
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * @return the maximum number of documents in the result cache, 0 for no limit on the count
+     */
+    public long getCacheMaxEntries() {
+        return cacheMaxEntries;
+    }
+
+    public void setCacheMaxEntries(long cacheMaxEntries) {
+        this.cacheMaxEntries = cacheMaxEntries;
+    }
+
+    /**
+     * @return the maximum estimated heap size of the result cache, 0 for no limit on the size.  The cache
+     *         is disabled when neither limit is set.
+     */
+    public long getCacheMaxBytes() {
+        return cacheMaxBytes;
+    }
+
+    public void setCacheMaxBytes(long cacheMaxBytes) {
+        this.cacheMaxBytes = cacheMaxBytes;
+    }
+
+    /**
+     * @return the maximum number of sentence predictions in the sentence cache, 0 for no limit on the count
+     */
+    public long getSentenceCacheMaxEntries() {
+        return sentenceCacheMaxEntries;
+    }
+
+    public void setSentenceCacheMaxEntries(long sentenceCacheMaxEntries) {
+        this.sentenceCacheMaxEntries = sentenceCacheMaxEntries;
+    }
+
+    /**
+     * @return the maximum estimated heap size of the sentence cache, 0 for no limit on the size.  The cache
+     *         is disabled when neither limit is set.
+     */
+    public long getSentenceCacheMaxBytes() {
+        return sentenceCacheMaxBytes;
+    }
+
+    public void setSentenceCacheMaxBytes(long sentenceCacheMaxBytes) {
+        this.sentenceCacheMaxBytes = sentenceCacheMaxBytes;
+    }
+
+    /**
+     * @return the maximum number of characters analyzed per document, 0 for no limit
+     */
+    public int getMaxDocumentChars() {
+        return maxDocumentChars;
+    }
+
+    public void setMaxDocumentChars(int maxDocumentChars) {
+        this.maxDocumentChars = maxDocumentChars;
+    }
+
+    /**
+     * @return the description of the {@link BudgetPolicy} for documents over the character limit
+     */
+    public String getDocumentCharsPolicy() {
+        return documentCharsPolicy;
+    }
+
+    public void setDocumentCharsPolicy(String documentCharsPolicy) {
+        this.documentCharsPolicy = documentCharsPolicy;
+    }
+
+    /**
+     * @return the maximum number of sentences analyzed per document, 0 for no limit
+     */
+    public int getMaxSentences() {
+        return maxSentences;
+    }
+
+    public void setMaxSentences(int maxSentences) {
+        this.maxSentences = maxSentences;
+    }
+
+    /**
+     * @return the description of the {@link BudgetPolicy} for documents over the sentence limit
+     */
+    public String getSentencesPolicy() {
+        return sentencesPolicy;
+    }
+
+    public void setSentencesPolicy(String sentencesPolicy) {
+        this.sentencesPolicy = sentencesPolicy;
+    }
+
+    /**
+     * @return the maximum number of tokens parsed per sentence, 0 for no limit
+     */
+    public int getMaxSentenceLength() {
+        return maxSentenceLength;
+    }
+
+    public void setMaxSentenceLength(int maxSentenceLength) {
+        this.maxSentenceLength = maxSentenceLength;
+    }
+
+    /**
+     * @return the description of the {@link BudgetPolicy} for sentences over the length limit
+     */
+    public String getSentenceLengthPolicy() {
+        return sentenceLengthPolicy;
+    }
+
+    public void setSentenceLengthPolicy(String sentenceLengthPolicy) {
+        this.sentenceLengthPolicy = sentenceLengthPolicy;
+    }
+
+    /**
+     * @return the time a document may spend in the parser and sentiment model, 0 for no limit
+     */
+    public long getTimeoutMillis() {
+        return timeoutMillis;
+    }
+
+    public void setTimeoutMillis(long timeoutMillis) {
+        this.timeoutMillis = timeoutMillis;
+    }
+
+    /**
+     * @return the description of the {@link TimeoutPolicy} for documents over the time budget
+     */
+    public String getTimeoutPolicy() {
+        return timeoutPolicy;
+    }
+
+    public void setTimeoutPolicy(String timeoutPolicy) {
+        this.timeoutPolicy = timeoutPolicy;
+    }
+
+    /**
+     * @return the confidence above which the lexicon pre-classifier answers without the pipeline,
+     *         0 to send every document through the pipeline
+     */
+    public double getCascadeThreshold() {
+        return cascadeThreshold;
+    }
+
+    public void setCascadeThreshold(double cascadeThreshold) {
+        this.cascadeThreshold = cascadeThreshold;
+    }
+
+    /**
+     * @return the lexicon of the pre-classifier, empty for the bundled one
+     */
+    public String getLexiconFile() {
+        return lexiconFile;
+    }
+
+    public void setLexiconFile(String lexiconFile) {
+        this.lexiconFile = lexiconFile;
+    }
+
+    /**
+     * @return a file with one document per line that is run through the pipeline in init(), empty for
+     *         no warm-up
+     */
+    public String getWarmUpFile() {
+        return warmUpFile;
+    }
+
+    public void setWarmUpFile(String warmUpFile) {
+        this.warmUpFile = warmUpFile;
+    }
+
+    /**
+     * @return the address of a CoreNLP server that parses and scores the sentences, empty to do it in
+     *         this JVM
+     */
+    public String getServerUrl() {
+        return serverUrl;
+    }
+
+    public void setServerUrl(String serverUrl) {
+        this.serverUrl = serverUrl;
+    }
+
+    /**
+     * @return the most sentences sent to the server in one request
+     */
+    public int getServerBatchSentences() {
+        return serverBatchSentences;
+    }
+
+    public void setServerBatchSentences(int serverBatchSentences) {
+        this.serverBatchSentences = serverBatchSentences;
+    }
+
+    /**
+     * @return the most requests to the server in flight at the same time, per step copy
+     */
+    public int getServerMaxInFlight() {
+        return serverMaxInFlight;
+    }
+
+    public void setServerMaxInFlight(int serverMaxInFlight) {
+        this.serverMaxInFlight = serverMaxInFlight;
+    }
+
+    /**
+     * @return true if values made only of URLs are kept away from the pipeline
+     */
+    public boolean isSkipUrls() {
+        return skipUrls;
+    }
+
+    public void setSkipUrls(boolean skipUrls) {
+        this.skipUrls = skipUrls;
+    }
+
+    /**
+     * @return true if values made only of hashtags and mentions are kept away from the pipeline
+     */
+    public boolean isSkipHashtags() {
+        return skipHashtags;
+    }
+
+    public void setSkipHashtags(boolean skipHashtags) {
+        this.skipHashtags = skipHashtags;
+    }
+
+    /**
+     * @return true if values without a letter or digit, such as emoji, are kept away from the pipeline
+     */
+    public boolean isSkipSymbols() {
+        return skipSymbols;
+    }
+
+    public void setSkipSymbols(boolean skipSymbols) {
+        this.skipSymbols = skipSymbols;
+    }
+
+    /**
+     * @return the description of the {@link SkipResult} given to skipped values; empty, whitespace-only
+     *         and null values are always skipped
+     */
+    public String getSkipResult() {
+        return skipResult;
+    }
+
+    public void setSkipResult(String skipResult) {
+        this.skipResult = skipResult;
+    }
+
+    /**
+     * @return true to emit one row per sentence of each input field instead of the rolled up output fields
+     */
+    public boolean isSentenceOutput() {
+        return sentenceOutput;
+    }
+
+    public void setSentenceOutput(boolean sentenceOutput) {
+        this.sentenceOutput = sentenceOutput;
+    }
+
+    /**
+     * @return the field holding the index of a sentence within its document, starting at 0
+     */
+    public String getSentenceIndexField() {
+        return sentenceIndexField;
+    }
+
+    public void setSentenceIndexField(String sentenceIndexField) {
+        this.sentenceIndexField = sentenceIndexField;
+    }
+
+    /**
+     * @return the field holding the text of a sentence, empty to leave the text out
+     */
+    public String getSentenceTextField() {
+        return sentenceTextField;
+    }
+
+    public void setSentenceTextField(String sentenceTextField) {
+        this.sentenceTextField = sentenceTextField;
+    }
+
+    /**
+     * @return the field holding the class predicted for a sentence
+     */
+    public String getSentenceSentimentField() {
+        return sentenceSentimentField;
+    }
+
+    public void setSentenceSentimentField(String sentenceSentimentField) {
+        this.sentenceSentimentField = sentenceSentimentField;
+    }
+
+    /**
+     * @return the start of the name of each probability field, followed by the class name in lower case
+     */
+    public String getProbabilityPrefix() {
+        return probabilityPrefix;
+    }
+
+    public void setProbabilityPrefix(String probabilityPrefix) {
+        this.probabilityPrefix = probabilityPrefix;
+    }
 }
@@ -0,0 +1,45 @@
+/*
+* Copyright 2014 OSBI Ltd
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package bi.meteorite.sentiment;
+
+import java.util.List;
+
+/**
+ * An input row travelling through the NLP step together with the documents read from it and,
+ * once scored, the value computed for each output field.  An input field read by several output
+ * fields is one document.
+ *
+ * The documents are read on the step thread, scoring may happen on a worker thread, and the output
+ * row is assembled on the step thread again when the row is emitted.
+ */
+class ScoredRow {
+
+    final Object[] row;
+
+    final String[] documents;
+
+    final Object[] results;
+
+    String error; // set instead of the results when a document went over a budget with the error policy
+
+    List<Object[]> sentences; // in sentence mode, the new fields of each row to emit instead of the results
+
+    ScoredRow( Object[] row, String[] documents, int nrResults ) {
+        this.row = row;
+        this.documents = documents;
+        this.results = new Object[nrResults];
+    }
+}
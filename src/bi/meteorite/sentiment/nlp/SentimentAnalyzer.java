@@ -1,20 +1,26 @@
 package bi.meteorite.sentiment.nlp;
 
 
+import bi.meteorite.sentiment.nlp.cache.ResultCache;
+import bi.meteorite.sentiment.nlp.cache.SentencePrediction;
+import bi.meteorite.sentiment.nlp.rollup.ISentimentAccumulator;
 import bi.meteorite.sentiment.nlp.rollup.Sentence;
+import bi.meteorite.sentiment.nlp.rollup.SentenceBatch;
 import bi.meteorite.sentiment.nlp.rollup.SentimentRollup;
 import com.google.common.base.Function;
 import edu.stanford.nlp.ie.machinereading.structure.AnnotationUtils;
 import edu.stanford.nlp.ling.CoreAnnotations;
-import edu.stanford.nlp.neural.rnn.RNNCoreAnnotations;
+import edu.stanford.nlp.ling.CoreLabel;
 import edu.stanford.nlp.pipeline.Annotation;
-import edu.stanford.nlp.pipeline.StanfordCoreNLP;
+import edu.stanford.nlp.pipeline.AnnotationPipeline;
+import edu.stanford.nlp.semgraph.SemanticGraphCoreAnnotations;
 import edu.stanford.nlp.sentiment.SentimentCoreAnnotations;
 import edu.stanford.nlp.trees.Tree;
+import edu.stanford.nlp.trees.TreeCoreAnnotations;
 import edu.stanford.nlp.util.CoreMap;
-import org.ejml.simple.SimpleMatrix;
 
 import java.util.*;
+import java.util.concurrent.Callable;
 
 /**
  * Created by cstella on 3/21/14.
@@ -22,15 +28,94 @@ import java.util.*;
 public enum SentimentAnalyzer implements Function<String, SentimentClass> {
     INSTANCE;
 
-    public SentimentClass apply(String document)
+    private static final ThreadLocal<ISentimentAccumulator[]> ACCUMULATORS = new ThreadLocal<ISentimentAccumulator[]>()
+    {
+        @Override
+        protected ISentimentAccumulator[] initialValue()
+        {
+            return new ISentimentAccumulator[] { SentimentRollup.WILSON_SCORE.newAccumulator() };
+        }
+    };
+
+    private AnnotationPipeline pipeline;
+
+    private Properties properties = SharedPipeline.defaultProperties();
+
+    private volatile ResultCache<SentimentClass> cache;
+
+    /**
+     * Puts a bounded result cache in front of {@link #apply(String)}.  Passing 0 for both limits
+     * removes the cache again.
+     *
+     * @param maxEntries the maximum number of documents, 0 for no limit on the count
+     * @param maxBytes the maximum estimated heap size, 0 for no limit on the size
+     */
+    public void setCache(long maxEntries, long maxBytes)
+    {
+        if(ResultCache.isEnabled(maxEntries, maxBytes))
+        {
+            cache = new ResultCache<SentimentClass>(maxEntries, maxBytes, ResultCache.ENTRY_OVERHEAD_BYTES);
+        }
+        else
+        {
+            cache = null;
+        }
+    }
+
+    /**
+     * @return the cache in front of {@link #apply(String)}, or null if there is none
+     */
+    public ResultCache<SentimentClass> getCache()
+    {
+        return cache;
+    }
+
+    /**
+     * Sets the CoreNLP properties used by {@link #apply(String)} on top of the defaults, for example to
+     * pick a lighter parser model.  The pipeline is rebuilt on next use and the cache is emptied.
+     */
+    public synchronized void setProperties(Properties overrides)
+    {
+        if(pipeline != null)
+        {
+            SharedPipeline.INSTANCE.release(properties);
+            pipeline = null;
+        }
+        properties = SharedPipeline.withDefaults(overrides);
+        ResultCache<SentimentClass> current = cache;
+        if(current != null)
+        {
+            current.clear();
+        }
+    }
+
+    /**
+     * The pipeline used by {@link #apply(String)}, acquired from the {@link SharedPipeline} on first use.
+     */
+    private synchronized AnnotationPipeline getPipeline()
+    {
+        if(pipeline == null)
+        {
+            pipeline = SharedPipeline.INSTANCE.acquire(properties);
+        }
+        return pipeline;
+    }
+
+    /**
+     * Annotates the document with the given pipeline and returns the sentiment of each of its sentences.
+     */
+    public List<Sentence> getSentences(AnnotationPipeline pipeline, String document)
+    {
+        Annotation annotation = new Annotation(document);
+        pipeline.annotate(annotation);
+        return getSentences(annotation);
+    }
+
+    /**
+     * Returns the sentiment of each sentence of a document that has already been through the pipeline.
+     */
+    public List<Sentence> getSentences(Annotation annotation)
     {
-        // shut off the annoying intialization messages
-        Properties props = new Properties();
-        //specify the annotators that we want to use to annotate the text.  We need a tokenized sentence with POS tags to extract sentiment.
-        //this forms our pipeline
-        props.setProperty("annotators", "tokenize, ssplit, parse, sentiment");
-        StanfordCoreNLP pipeline = new StanfordCoreNLP(props);
-        Annotation annotation = pipeline.process(document);
         List<Sentence> sentences = new ArrayList<Sentence>();
         /*
          * We're going to iterate over all of the sentences and extract the sentiment.  We'll adopt a majority rule policy
@@ -38,28 +123,147 @@ public enum SentimentAnalyzer implements Function<String, SentimentClass> {
         for( CoreMap sentence : annotation.get(CoreAnnotations.SentencesAnnotation.class))
         {
             //for each sentence, we get the sentiment that CoreNLP thinks this sentence indicates.
-            Tree sentimentTree = sentence.get(SentimentCoreAnnotations.AnnotatedTree.class);
-            int sentimentClassIdx = RNNCoreAnnotations.getPredictedClass(sentimentTree);
-            SentimentClass sentimentClass = SentimentClass.getSpecific(sentimentClassIdx);
-
+            SentencePrediction prediction = getPrediction(sentence);
+            SentimentClass sentimentClass = SentimentClass.getSpecific(prediction.getSentimentClass());
+            double[] probs = prediction.getProbabilities();
             /*
-             * Each possible sentiment has an associated probability, so let's pull the entire
-             * set of probabilities across all sentiment classes.
+             * Add the sentence and the associated probabilities to our list.
              */
-            double[] probs = new double[SentimentClass.values().length];
+            sentences.add(new Sentence(probs, getText(sentence), sentimentClass));
+        }
+        return sentences;
+    }
+
+    /**
+     * Fills the batch with the sentiment of each sentence of a document that has already been through
+     * the pipeline.  Unlike {@link #getSentences(Annotation)} this creates no object per sentence.
+     */
+    public void getSentences(Annotation annotation, SentenceBatch sentences)
+    {
+        sentences.clear();
+        for( CoreMap sentence : annotation.get(CoreAnnotations.SentencesAnnotation.class))
+        {
+            SentencePrediction prediction = getPrediction(sentence);
+            sentences.add(prediction.getSentimentClass(), prediction.getProbabilities(), getLength(sentence));
+        }
+    }
+
+    /**
+     * Folds the sentences of an annotated document into every accumulator one at a time and returns the
+     * rolled up sentiment of each, so several rollups cost a single pass over one annotation.  The trees
+     * and dependency graphs of each sentence are removed as soon as it has been read, so they can be
+     * collected while the rest of the document is rolled up.
+     */
+    public SentimentClass[] rollup(Annotation annotation, ISentimentAccumulator[] accumulators)
+    {
+        for(ISentimentAccumulator accumulator : accumulators)
+        {
+            accumulator.begin();
+        }
+        for( CoreMap sentence : annotation.get(CoreAnnotations.SentencesAnnotation.class))
+        {
+            SentencePrediction prediction = getPrediction(sentence);
+            int length = getLength(sentence);
+            for(ISentimentAccumulator accumulator : accumulators)
             {
-                SimpleMatrix mat = RNNCoreAnnotations.getPredictions(sentimentTree);
-                for(int i = 0;i < SentimentClass.values().length;++i)
-                {
-                    probs[i] = mat.get(i);
-                }
+                accumulator.add(prediction.getSentimentClass(), prediction.getProbabilities(), length);
             }
-            /*
-             * Add the sentence and the associated probabilities to our list.
-             */
-            String sentenceStr = AnnotationUtils.sentenceToString(sentence).replace("\n", "");
-            sentences.add(new Sentence(probs, sentenceStr, sentimentClass));
+            release(sentence);
+        }
+        SentimentClass[] ret = new SentimentClass[accumulators.length];
+        for(int i = 0;i < accumulators.length;++i)
+        {
+            ret[i] = accumulators[i].finish();
+        }
+        return ret;
+    }
+
+    /**
+     * Removes the trees and dependency graphs of a sentence whose prediction has been read, so they can be
+     * collected while the rest of its document is still in use.
+     */
+    public static void release(CoreMap sentence)
+    {
+        sentence.remove(SentimentCoreAnnotations.AnnotatedTree.class);
+        sentence.remove(TreeCoreAnnotations.TreeAnnotation.class);
+        sentence.remove(TreeCoreAnnotations.BinarizedTreeAnnotation.class);
+        sentence.remove(SemanticGraphCoreAnnotations.BasicDependenciesAnnotation.class);
+        sentence.remove(SemanticGraphCoreAnnotations.CollapsedDependenciesAnnotation.class);
+        sentence.remove(SemanticGraphCoreAnnotations.CollapsedCCProcessedDependenciesAnnotation.class);
+    }
+
+    /**
+     * @return the text of an annotated sentence on a single line, as the tokenizer saw it, for the
+     *         training data; see {@link #getOriginalText(Annotation, CoreMap)} for the text itself
+     */
+    public static String getText(CoreMap sentence)
+    {
+        return AnnotationUtils.sentenceToString(sentence).replace("\n", "");
+    }
+
+    /**
+     * @return the text of a split sentence exactly as it appears in the document
+     */
+    public static String getOriginalText(Annotation document, CoreMap sentence)
+    {
+        String text = sentence.get(CoreAnnotations.TextAnnotation.class);
+        if(text != null)
+        {
+            return text;
         }
+        Integer begin = sentence.get(CoreAnnotations.CharacterOffsetBeginAnnotation.class);
+        Integer end = sentence.get(CoreAnnotations.CharacterOffsetEndAnnotation.class);
+        return document.get(CoreAnnotations.TextAnnotation.class).substring(begin, end);
+    }
+
+    /**
+     * Returns the prediction the sentence cache attached to the sentence, or reads it from the sentiment tree.
+     */
+    public static SentencePrediction getPrediction(CoreMap sentence)
+    {
+        SentencePrediction prediction = sentence.get(SentencePrediction.Annotation.class);
+        if(prediction == null)
+        {
+            Tree sentimentTree = sentence.get(SentimentCoreAnnotations.AnnotatedTree.class);
+            prediction = SentencePrediction.fromTree(sentimentTree);
+        }
+        return prediction;
+    }
+
+    /**
+     * The length of the sentence's tokens joined by single spaces, computed without building the string.
+     */
+    private static int getLength(CoreMap sentence)
+    {
+        int length = -1;
+        for(CoreLabel token : sentence.get(CoreAnnotations.TokensAnnotation.class))
+        {
+            length += token.word().length() + 1;
+        }
+        return Math.max(0, length);
+    }
+
+    public SentimentClass apply(final String document)
+    {
+        ResultCache<SentimentClass> cache = this.cache;
+        if(cache == null)
+        {
+            return score(document);
+        }
+        return cache.get(cache.key(document), new Callable<SentimentClass>()
+        {
+            @Override
+            public SentimentClass call()
+            {
+                return score(document);
+            }
+        });
+    }
+
+    private SentimentClass score(String document)
+    {
+        Annotation annotation = new Annotation(document);
+        getPipeline().annotate(annotation);
 
         /*
          * Finally, rollup the score of the entire document given the list of sentiments
@@ -78,7 +282,7 @@ public enum SentimentAnalyzer implements Function<String, SentimentClass> {
          *
          */
 
-                return SentimentRollup.WILSON_SCORE.apply(sentences);
+                return rollup(annotation, ACCUMULATORS.get())[0];
 
     }
 }
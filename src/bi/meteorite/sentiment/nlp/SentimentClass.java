@@ -10,15 +10,26 @@ public enum SentimentClass {
     , POSITIVE(3)
     , VERY_POSITIVE(4)
     ;
+    /**
+     * values() clones the array on every call, so hot loops go through this copy instead.
+     */
+    private static final SentimentClass[] VALUES = values();
+
     private int index = -1;
     SentimentClass(int idx)
     {
         index = idx;
     }
     public int getIndex() { return index;}
+
+    /**
+     * @return the number of sentiment classes, without allocating like values().length does
+     */
+    public static int count() { return VALUES.length;}
+
     public static SentimentClass getSpecific(int sentimentClass)
     {
-        return SentimentClass.values()[sentimentClass];
+        return VALUES[sentimentClass];
     }
 
     public static SentimentClass getGeneral(int sentimentClass)
@@ -26,6 +37,6 @@ public enum SentimentClass {
         //remove the extreme cases
         if(sentimentClass == 0) sentimentClass = 1;
         if(sentimentClass == 4) sentimentClass = 3;
-        return SentimentClass.values()[sentimentClass];
+        return VALUES[sentimentClass];
     }
 }
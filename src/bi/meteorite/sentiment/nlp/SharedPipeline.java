@@ -0,0 +1,226 @@
+package bi.meteorite.sentiment.nlp;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import edu.stanford.nlp.pipeline.AnnotationPipeline;
+import edu.stanford.nlp.pipeline.Annotator;
+import edu.stanford.nlp.pipeline.ParserAnnotator;
+import edu.stanford.nlp.pipeline.SentimentAnnotator;
+import edu.stanford.nlp.pipeline.StanfordCoreNLP;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Holds one pipeline per distinct set of properties for the whole JVM.
+ *
+ * Building a pipeline loads the tokenizer, parser and sentiment models, which is far more expensive
+ * than annotating a document, so every step copy acquires the pipeline here in init() and releases
+ * it in dispose().  The pipeline is only read after construction and is safe to share between threads.
+ *
+ * The CoreNLP annotator pool builds one annotator at a time, so the parser and the sentiment model,
+ * which take by far the longest to load, are built here on threads of their own while the other
+ * annotators come from the pool.  The annotators are kept by name for {@link StagedPipeline}.
+ */
+public enum SharedPipeline {
+    INSTANCE;
+
+    public static final String DEFAULT_ANNOTATORS = "tokenize, ssplit, parse, sentiment";
+
+    private static class Entry
+    {
+        AnnotationPipeline pipeline;
+        Map<String, Annotator> annotators;
+        int references;
+        boolean warmedUp;
+    }
+
+    private final Map<Properties, Entry> pipelines = new HashMap<Properties, Entry>();
+
+    /**
+     * The properties used when a caller does not supply its own.
+     */
+    public static Properties defaultProperties()
+    {
+        Properties props = new Properties();
+        //specify the annotators that we want to use to annotate the text.  We need a tokenized sentence with POS tags to extract sentiment.
+        //this forms our pipeline
+        props.setProperty("annotators", DEFAULT_ANNOTATORS);
+        return props;
+    }
+
+    /**
+     * The default properties with the given ones on top, for example a parser or sentiment model path,
+     * parse.maxlen or tokenize.options.
+     */
+    public static Properties withDefaults(Properties overrides)
+    {
+        Properties props = defaultProperties();
+        props.putAll(overrides);
+        return props;
+    }
+
+    /**
+     * Returns the pipeline for the given properties, building it on first use.  Every call must be
+     * matched by a call to {@link #release(Properties)} with equal properties.
+     */
+    public synchronized AnnotationPipeline acquire(Properties props)
+    {
+        Entry entry = pipelines.get(props);
+        if(entry == null)
+        {
+            Properties key = new Properties();
+            key.putAll(props);
+            entry = new Entry();
+            entry.annotators = load(key);
+            entry.pipeline = new AnnotationPipeline();
+            for(Annotator annotator : entry.annotators.values())
+            {
+                entry.pipeline.addAnnotator(annotator);
+            }
+            pipelines.put(key, entry);
+        }
+        entry.references++;
+        return entry.pipeline;
+    }
+
+    /**
+     * Claims the warm-up of the acquired pipeline for the properties.  Class loading and the JIT apply to
+     * the whole JVM, so one warm-up per pipeline is enough however many step copies share it.
+     *
+     * @return true for the first caller, which is then expected to warm the pipeline up, false after
+     *         that or if the pipeline has not been acquired
+     */
+    public synchronized boolean claimWarmUp(Properties props)
+    {
+        Entry entry = pipelines.get(props);
+        if(entry == null || entry.warmedUp)
+        {
+            return false;
+        }
+        entry.warmedUp = true;
+        return true;
+    }
+
+    /**
+     * @return the annotator of the given name in the acquired pipeline for the properties, or null if
+     *         the pipeline has not been acquired or does not run that annotator
+     */
+    public synchronized Annotator getAnnotator(Properties props, String name)
+    {
+        Entry entry = pipelines.get(props);
+        return entry == null ? null : entry.annotators.get(name);
+    }
+
+    /**
+     * Builds every annotator named in the properties, in pipeline order.
+     */
+    private static Map<String, Annotator> load(final Properties props)
+    {
+        String[] names = props.getProperty("annotators", DEFAULT_ANNOTATORS).trim().split("[, \t]+");
+        Map<String, Future<Annotator>> loading = new HashMap<String, Future<Annotator>>();
+        ExecutorService loader = Executors.newCachedThreadPool(
+                new ThreadFactoryBuilder().setDaemon(true).setNameFormat("SharedPipeline-loader-%d").build());
+        try
+        {
+            for(String name : names)
+            {
+                // the pool also knows other parser types, those are left to it
+                if(name.equals("parse") && props.getProperty("parse.type", "stanford").equalsIgnoreCase("stanford"))
+                {
+                    loading.put(name, loader.submit(new Callable<Annotator>()
+                    {
+                        @Override
+                        public Annotator call()
+                        {
+                            return new ParserAnnotator("parse", props);
+                        }
+                    }));
+                }
+                else if(name.equals("sentiment"))
+                {
+                    loading.put(name, loader.submit(new Callable<Annotator>()
+                    {
+                        @Override
+                        public Annotator call()
+                        {
+                            return new SentimentAnnotator("sentiment", props);
+                        }
+                    }));
+                }
+            }
+
+            // the cheap annotators are built while the models load
+            Map<String, Annotator> built = new HashMap<String, Annotator>();
+            for(String name : names)
+            {
+                if(!loading.containsKey(name))
+                {
+                    built.put(name, new StanfordCoreNLP(withAnnotators(props, name), false));
+                }
+            }
+            Map<String, Annotator> ret = new LinkedHashMap<String, Annotator>();
+            for(String name : names)
+            {
+                Future<Annotator> annotator = loading.get(name);
+                ret.put(name, annotator == null ? built.get(name) : annotator.get());
+            }
+            return ret;
+        }
+        catch(InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while loading the pipeline", e);
+        }
+        catch(ExecutionException e)
+        {
+            if(e.getCause() instanceof RuntimeException)
+            {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new RuntimeException(e.getCause());
+        }
+        finally
+        {
+            loader.shutdownNow();
+        }
+    }
+
+    /**
+     * A copy of the properties that runs the given annotators.
+     */
+    public static Properties withAnnotators(Properties props, String annotators)
+    {
+        Properties ret = new Properties();
+        ret.putAll(props);
+        ret.setProperty("annotators", annotators);
+        return ret;
+    }
+
+    /**
+     * Drops one reference to the pipeline for the given properties.  Once nothing references any
+     * pipeline the CoreNLP annotator pool is cleared as well so the models can be garbage collected.
+     */
+    public synchronized void release(Properties props)
+    {
+        Entry entry = pipelines.get(props);
+        if(entry == null)
+        {
+            return;
+        }
+        if(--entry.references <= 0)
+        {
+            pipelines.remove(props);
+        }
+        if(pipelines.isEmpty())
+        {
+            StanfordCoreNLP.clearAnnotatorPool();
+        }
+    }
+}
@@ -0,0 +1,193 @@
+package bi.meteorite.sentiment.nlp;
+
+import bi.meteorite.sentiment.nlp.budget.DeadlineAnnotator;
+import bi.meteorite.sentiment.nlp.budget.DocumentBudget;
+import bi.meteorite.sentiment.nlp.metrics.PipelineMetrics;
+import bi.meteorite.sentiment.nlp.metrics.Stage;
+import bi.meteorite.sentiment.nlp.metrics.TimedAnnotator;
+import bi.meteorite.sentiment.nlp.server.RemoteScorer;
+import edu.stanford.nlp.pipeline.Annotation;
+import edu.stanford.nlp.pipeline.AnnotationPipeline;
+import edu.stanford.nlp.pipeline.Annotator;
+import edu.stanford.nlp.pipeline.StanfordCoreNLP;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+
+/**
+ * Runs the pipeline in two halves, so that the split sentences can be inspected or trimmed before
+ * the expensive parse and sentiment annotators see them.
+ *
+ * The first half tokenizes the documents and splits them into sentences, then applies the document
+ * budget if there is one.  The second half parses the sentences and predicts their sentiment, and
+ * only looks at the sentences of each document.  With a time budget it scores one sentence at a time
+ * through a {@link DeadlineAnnotator}, and with {@link PipelineMetrics} every annotator is timed.
+ *
+ * Both halves are built from the same properties as the full pipeline, so once that pipeline has
+ * been acquired from the {@link SharedPipeline} they reuse its annotators instead of loading the
+ * models again.
+ *
+ * With a {@link RemoteScorer} the second half runs on a CoreNLP server instead, which gets the
+ * sentences of all the documents scored together in batches.  Its time is not part of the metrics.
+ * A time budget then becomes the read timeout of the requests of each document, whose batches are
+ * kept apart from those of the other documents.
+ */
+public class StagedPipeline
+{
+    private final AnnotationPipeline splitter;
+    private final AnnotationPipeline scorer;
+    private final RemoteScorer remote;
+    private final DocumentBudget budget;
+    private final long timeoutMillis;
+
+    /**
+     * @param budget the limits applied between the two halves, null for none
+     * @param timeoutMillis the time each document may spend in the second half, 0 for no limit
+     * @param metrics where to record the latency of each annotator, null to not time them
+     */
+    public StagedPipeline(Properties props, DocumentBudget budget, long timeoutMillis, PipelineMetrics metrics)
+    {
+        this(props, budget, timeoutMillis, metrics, null);
+    }
+
+    /**
+     * @param remote the server that scores the split sentences, null to parse them in this JVM
+     */
+    public StagedPipeline(Properties props, DocumentBudget budget, long timeoutMillis, PipelineMetrics metrics,
+                          RemoteScorer remote)
+    {
+        this.splitter = stages(props, metrics, Stage.TOKENIZE, Stage.SSPLIT);
+        AnnotationPipeline scorer;
+        if(remote != null)
+        {
+            scorer = new AnnotationPipeline(Collections.<Annotator>singletonList(remote));
+        }
+        else
+        {
+            scorer = stages(props, metrics, Stage.PARSE, Stage.SENTIMENT);
+        }
+        if(timeoutMillis > 0 && remote == null)
+        {
+            this.scorer = new AnnotationPipeline(Collections.<Annotator>singletonList(
+                    new DeadlineAnnotator(scorer, timeoutMillis)));
+        }
+        else
+        {
+            this.scorer = scorer;
+        }
+        this.remote = remote;
+        this.budget = budget;
+        this.timeoutMillis = timeoutMillis;
+    }
+
+    /**
+     * @return true if the second half gives up on a document once it has used up its time budget
+     */
+    public boolean hasTimeout()
+    {
+        return timeoutMillis > 0;
+    }
+
+    /**
+     * Builds the stages into one pipeline.  With metrics every stage is timed separately.
+     */
+    private static AnnotationPipeline stages(Properties props, PipelineMetrics metrics, Stage... stages)
+    {
+        AnnotationPipeline ret = new AnnotationPipeline();
+        for(Stage stage : stages)
+        {
+            Annotator annotator = annotator(props, stage);
+            ret.addAnnotator(metrics == null ? annotator : new TimedAnnotator(annotator, metrics.getLatency(stage)));
+        }
+        return ret;
+    }
+
+    /**
+     * @return the annotator of the shared pipeline for the stage, or one from the annotator pool if the
+     *         shared pipeline does not run it
+     */
+    private static Annotator annotator(Properties props, Stage stage)
+    {
+        Annotator ret = SharedPipeline.INSTANCE.getAnnotator(props, stage.getAnnotator());
+        if(ret == null)
+        {
+            ret = new StanfordCoreNLP(SharedPipeline.withAnnotators(props, stage.getAnnotator()), false);
+        }
+        return ret;
+    }
+
+    /**
+     * Annotates a single document.
+     */
+    public Annotation process(String document)
+    {
+        Annotation annotation = new Annotation(document);
+        annotate(Collections.singletonList(annotation), 1);
+        return annotation;
+    }
+
+    /**
+     * Runs both halves over the documents.
+     */
+    public void annotate(List<Annotation> documents, int threads)
+    {
+        split(documents, threads);
+        score(documents, threads);
+    }
+
+    /**
+     * Tokenizes and splits the documents, then applies the budget.
+     */
+    public void split(List<Annotation> documents, int threads)
+    {
+        if(budget == null)
+        {
+            annotate(splitter, documents, threads);
+            return;
+        }
+        List<Annotation> within = new ArrayList<Annotation>(documents.size());
+        for(Annotation document : documents)
+        {
+            if(budget.limitText(document))
+            {
+                within.add(document);
+            }
+        }
+        annotate(splitter, within, threads);
+        for(Annotation document : within)
+        {
+            budget.limitSentences(document);
+        }
+    }
+
+    /**
+     * Parses the sentences of documents that have been split and predicts their sentiment.
+     */
+    public void score(List<Annotation> documents, int threads)
+    {
+        if(remote != null)
+        {
+            // the server gets the time budget as the read timeout of the requests of each document
+            remote.score(documents, timeoutMillis);
+            return;
+        }
+        annotate(scorer, documents, threads);
+    }
+
+    private static void annotate(AnnotationPipeline pipeline, List<Annotation> annotations, int threads)
+    {
+        if(threads > 1 && annotations.size() > 1)
+        {
+            pipeline.annotate(annotations, threads);
+        }
+        else
+        {
+            for(Annotation annotation : annotations)
+            {
+                pipeline.annotate(annotation);
+            }
+        }
+    }
+}
@@ -0,0 +1,77 @@
+package bi.meteorite.sentiment.nlp.budget;
+
+/**
+ * Thrown when a document goes over a limit whose policy is {@link BudgetPolicy#ERROR}.
+ *
+ * A document limit carries which limit it was and the numbers involved, so the step can describe it
+ * in the language of the user; the message is only an English fallback.
+ */
+public class BudgetExceededException extends RuntimeException
+{
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * The limits of a {@link DocumentBudget}.
+     */
+    public enum Limit
+    {
+        /** characters in a document */
+        CHARACTERS("Document has %d characters, the limit is %d"),
+        /** sentences in a document */
+        SENTENCES("Document has %d sentences, the limit is %d"),
+        /** tokens in a sentence */
+        SENTENCE_LENGTH("Sentence has %d tokens, the limit is %d");
+
+        private final String format;
+
+        Limit(String format)
+        {
+            this.format = format;
+        }
+    }
+
+    private final Limit limit;
+    private final long actual;
+    private final long maximum;
+
+    /**
+     * @param message the description of the limit, already in the language of the user
+     */
+    public BudgetExceededException(String message)
+    {
+        super(message);
+        this.limit = null;
+        this.actual = 0;
+        this.maximum = 0;
+    }
+
+    /**
+     * @param actual the size of the document or sentence
+     * @param maximum the limit it went over
+     */
+    public BudgetExceededException(Limit limit, long actual, long maximum)
+    {
+        super(String.format(limit.format, actual, maximum));
+        this.limit = limit;
+        this.actual = actual;
+        this.maximum = maximum;
+    }
+
+    /**
+     * @return the limit that was exceeded, or null when the message already describes it
+     */
+    public Limit getLimit()
+    {
+        return limit;
+    }
+
+    public long getActual()
+    {
+        return actual;
+    }
+
+    public long getMaximum()
+    {
+        return maximum;
+    }
+}
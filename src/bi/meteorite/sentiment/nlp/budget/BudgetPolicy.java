@@ -0,0 +1,46 @@
+package bi.meteorite.sentiment.nlp.budget;
+
+/**
+ * What happens to a document that goes over one of the limits of a {@link DocumentBudget}.
+ */
+public enum BudgetPolicy {
+    /**
+     * Keep the part of the document that fits within the limit.
+     */
+    TRUNCATE("Truncate"),
+    /**
+     * Drop the over-long sentence, or the whole document when the limit is on the document.
+     */
+    SKIP("Skip"),
+    /**
+     * Do not analyze the document and send its row to the error stream.
+     */
+    ERROR("Error row");
+
+    private final String description;
+
+    BudgetPolicy(String description)
+    {
+        this.description = description;
+    }
+
+    public String getDescription()
+    {
+        return description;
+    }
+
+    /**
+     * @return the policy with the given description, TRUNCATE if there is none
+     */
+    public static BudgetPolicy fromDescription(String description)
+    {
+        for(BudgetPolicy policy : values())
+        {
+            if(policy.description.equals(description))
+            {
+                return policy;
+            }
+        }
+        return TRUNCATE;
+    }
+}
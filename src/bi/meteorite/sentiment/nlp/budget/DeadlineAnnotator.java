@@ -0,0 +1,107 @@
+package bi.meteorite.sentiment.nlp.budget;
+
+import edu.stanford.nlp.ling.CoreAnnotation;
+import edu.stanford.nlp.ling.CoreAnnotations;
+import edu.stanford.nlp.pipeline.Annotation;
+import edu.stanford.nlp.pipeline.AnnotationPipeline;
+import edu.stanford.nlp.pipeline.Annotator;
+import edu.stanford.nlp.util.CoreMap;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs the parse and sentiment annotators one sentence at a time and stops once a document has used
+ * up its time budget.
+ *
+ * CoreNLP cannot interrupt the parser, so the deadline is checked between sentences: a document can go
+ * over its budget by at most the time of one sentence, which the sentence length budget keeps small.
+ * The sentences that were not reached carry an {@link UnfinishedAnnotation} and no prediction.
+ */
+public class DeadlineAnnotator implements Annotator
+{
+    /**
+     * Set to true on sentences that were not scored because the deadline had passed.
+     */
+    public static class UnfinishedAnnotation implements CoreAnnotation<Boolean>
+    {
+        public Class<Boolean> getType()
+        {
+            return Boolean.class;
+        }
+    }
+
+    private final AnnotationPipeline scorer;
+    private final long timeoutNanos;
+
+    public DeadlineAnnotator(AnnotationPipeline scorer, long timeoutMillis)
+    {
+        this.scorer = scorer;
+        this.timeoutNanos = TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+    }
+
+    @Override
+    public void annotate(Annotation document)
+    {
+        long deadline = System.nanoTime() + timeoutNanos;
+        List<CoreMap> sentences = document.get(CoreAnnotations.SentencesAnnotation.class);
+        for(int i = 0;i < sentences.size();++i)
+        {
+            if(System.nanoTime() - deadline > 0)
+            {
+                for(CoreMap sentence : sentences.subList(i, sentences.size()))
+                {
+                    sentence.set(UnfinishedAnnotation.class, Boolean.TRUE);
+                }
+                return;
+            }
+            Annotation partial = new Annotation("");
+            partial.set(CoreAnnotations.SentencesAnnotation.class, Collections.singletonList(sentences.get(i)));
+            scorer.annotate(partial);
+        }
+    }
+
+    public static boolean isUnfinished(CoreMap sentence)
+    {
+        return Boolean.TRUE.equals(sentence.get(UnfinishedAnnotation.class));
+    }
+
+    /**
+     * Removes the unfinished sentences from the document.
+     *
+     * @return the number of sentences removed
+     */
+    public static int removeUnfinished(Annotation document)
+    {
+        List<CoreMap> sentences = document.get(CoreAnnotations.SentencesAnnotation.class);
+        List<CoreMap> finished = new ArrayList<CoreMap>(sentences.size());
+        for(CoreMap sentence : sentences)
+        {
+            if(!isUnfinished(sentence))
+            {
+                finished.add(sentence);
+            }
+        }
+        int removed = sentences.size() - finished.size();
+        if(removed > 0)
+        {
+            document.set(CoreAnnotations.SentencesAnnotation.class, finished);
+        }
+        return removed;
+    }
+
+    @Override
+    public Set<Requirement> requirementsSatisfied()
+    {
+        return scorer.requirementsSatisfied();
+    }
+
+    @Override
+    public Set<Requirement> requires()
+    {
+        return scorer.requires();
+    }
+}
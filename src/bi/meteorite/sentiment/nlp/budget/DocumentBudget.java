@@ -0,0 +1,202 @@
+package bi.meteorite.sentiment.nlp.budget;
+
+import edu.stanford.nlp.ling.CoreAnnotation;
+import edu.stanford.nlp.ling.CoreAnnotations;
+import edu.stanford.nlp.ling.CoreLabel;
+import edu.stanford.nlp.pipeline.Annotation;
+import edu.stanford.nlp.util.CoreMap;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Limits on the size of a document, applied between sentence splitting and parsing.
+ *
+ * The cost of the parser grows much faster than linearly with the length of a sentence, so a single
+ * pasted log dump or run-on sentence can hold up a step for seconds.  The character limit is applied
+ * to the raw text before it is tokenized, the sentence count and sentence length limits to the split
+ * sentences before they are parsed.  A limit of 0 or less is no limit.
+ *
+ * A document that is skipped as a whole keeps no sentences and carries a {@link SkippedAnnotation}; one
+ * that goes over a limit with the ERROR policy keeps no sentences and carries an
+ * {@link ExceededAnnotation} describing the limit.
+ */
+public class DocumentBudget
+{
+    /**
+     * Set to true on documents that were skipped because of a limit with the SKIP policy.
+     */
+    public static class SkippedAnnotation implements CoreAnnotation<Boolean>
+    {
+        public Class<Boolean> getType()
+        {
+            return Boolean.class;
+        }
+    }
+
+    /**
+     * Set on documents that went over a limit with the ERROR policy, describes the limit.
+     */
+    public static class ExceededAnnotation implements CoreAnnotation<BudgetExceededException>
+    {
+        public Class<BudgetExceededException> getType()
+        {
+            return BudgetExceededException.class;
+        }
+    }
+
+    private final int maxChars;
+    private final BudgetPolicy charsPolicy;
+    private final int maxSentences;
+    private final BudgetPolicy sentencesPolicy;
+    private final int maxSentenceLength;
+    private final BudgetPolicy sentenceLengthPolicy;
+
+    /**
+     * @param maxChars the maximum number of characters in a document
+     * @param maxSentences the maximum number of sentences in a document
+     * @param maxSentenceLength the maximum number of tokens in a sentence
+     */
+    public DocumentBudget(int maxChars, BudgetPolicy charsPolicy, int maxSentences, BudgetPolicy sentencesPolicy,
+                          int maxSentenceLength, BudgetPolicy sentenceLengthPolicy)
+    {
+        this.maxChars = maxChars;
+        this.charsPolicy = charsPolicy;
+        this.maxSentences = maxSentences;
+        this.sentencesPolicy = sentencesPolicy;
+        this.maxSentenceLength = maxSentenceLength;
+        this.sentenceLengthPolicy = sentenceLengthPolicy;
+    }
+
+    public static boolean isEnabled(int maxChars, int maxSentences, int maxSentenceLength)
+    {
+        return maxChars > 0 || maxSentences > 0 || maxSentenceLength > 0;
+    }
+
+    /**
+     * Applies the character limit to the text of a document that has not been tokenized yet.
+     *
+     * @return true if the document should be tokenized and split, false if it has been skipped
+     */
+    public boolean limitText(Annotation document)
+    {
+        String text = document.get(CoreAnnotations.TextAnnotation.class);
+        if(maxChars <= 0 || text == null || text.length() <= maxChars)
+        {
+            return true;
+        }
+        switch(charsPolicy)
+        {
+            case SKIP:
+                skip(document);
+                return false;
+            case ERROR:
+                exceed(document, new BudgetExceededException(BudgetExceededException.Limit.CHARACTERS, text.length(), maxChars));
+                return false;
+            default:
+                int end = maxChars;
+                if(Character.isHighSurrogate(text.charAt(end - 1)))
+                {
+                    // do not leave half a surrogate pair behind
+                    end--;
+                }
+                document.set(CoreAnnotations.TextAnnotation.class, text.substring(0, end));
+                return true;
+        }
+    }
+
+    /**
+     * Applies the sentence count and sentence length limits to a document that has been split but not
+     * parsed yet.
+     */
+    public void limitSentences(Annotation document)
+    {
+        List<CoreMap> sentences = document.get(CoreAnnotations.SentencesAnnotation.class);
+        if(sentences == null)
+        {
+            return;
+        }
+        if(maxSentences > 0 && sentences.size() > maxSentences)
+        {
+            switch(sentencesPolicy)
+            {
+                case SKIP:
+                    skip(document);
+                    return;
+                case ERROR:
+                    exceed(document, new BudgetExceededException(BudgetExceededException.Limit.SENTENCES, sentences.size(), maxSentences));
+                    return;
+                default:
+                    sentences = new ArrayList<CoreMap>(sentences.subList(0, maxSentences));
+                    document.set(CoreAnnotations.SentencesAnnotation.class, sentences);
+            }
+        }
+        if(maxSentenceLength <= 0)
+        {
+            return;
+        }
+        for(Iterator<CoreMap> it = sentences.iterator(); it.hasNext(); )
+        {
+            CoreMap sentence = it.next();
+            List<CoreLabel> tokens = sentence.get(CoreAnnotations.TokensAnnotation.class);
+            if(tokens.size() <= maxSentenceLength)
+            {
+                continue;
+            }
+            switch(sentenceLengthPolicy)
+            {
+                case SKIP:
+                    it.remove();
+                    break;
+                case ERROR:
+                    exceed(document, new BudgetExceededException(BudgetExceededException.Limit.SENTENCE_LENGTH, tokens.size(),
+                            maxSentenceLength));
+                    return;
+                default:
+                    sentence.set(CoreAnnotations.TokensAnnotation.class,
+                            new ArrayList<CoreLabel>(tokens.subList(0, maxSentenceLength)));
+            }
+        }
+        if(sentences.isEmpty())
+        {
+            skip(document);
+        }
+    }
+
+    public static boolean isSkipped(Annotation document)
+    {
+        return Boolean.TRUE.equals(document.get(SkippedAnnotation.class));
+    }
+
+    /**
+     * @throws BudgetExceededException if the document went over a limit with the ERROR policy
+     */
+    public static void checkExceeded(Annotation document)
+    {
+        BudgetExceededException exceeded = document.get(ExceededAnnotation.class);
+        if(exceeded != null)
+        {
+            throw exceeded;
+        }
+    }
+
+    private static void skip(Annotation document)
+    {
+        clear(document);
+        document.set(SkippedAnnotation.class, Boolean.TRUE);
+    }
+
+    private static void exceed(Annotation document, BudgetExceededException exceeded)
+    {
+        clear(document);
+        document.set(ExceededAnnotation.class, exceeded);
+    }
+
+    private static void clear(Annotation document)
+    {
+        document.set(CoreAnnotations.TokensAnnotation.class, Collections.<CoreLabel>emptyList());
+        document.set(CoreAnnotations.SentencesAnnotation.class, Collections.<CoreMap>emptyList());
+    }
+}
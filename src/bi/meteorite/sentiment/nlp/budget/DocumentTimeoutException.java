@@ -0,0 +1,26 @@
+package bi.meteorite.sentiment.nlp.budget;
+
+import bi.meteorite.sentiment.nlp.rollup.DocumentSentiment;
+
+/**
+ * Thrown when a document was not analyzed within its time budget.  Carries the fallback result
+ * computed from the sentences that were finished in time.
+ */
+public class DocumentTimeoutException extends RuntimeException
+{
+    private static final long serialVersionUID = 1L;
+
+    /** Not serializable, and only of use in the JVM that ran out of time. */
+    private final transient DocumentSentiment fallback;
+
+    public DocumentTimeoutException(String message, DocumentSentiment fallback)
+    {
+        super(message);
+        this.fallback = fallback;
+    }
+
+    public DocumentSentiment getFallback()
+    {
+        return fallback;
+    }
+}
@@ -0,0 +1,42 @@
+package bi.meteorite.sentiment.nlp.budget;
+
+/**
+ * What happens to a document whose analysis goes over the time budget.
+ */
+public enum TimeoutPolicy {
+    /**
+     * Roll up the sentences that were finished in time, or give NEUTRAL if there are none.
+     */
+    FALLBACK("Fallback"),
+    /**
+     * Send the row to the error stream.
+     */
+    ERROR("Error row");
+
+    private final String description;
+
+    TimeoutPolicy(String description)
+    {
+        this.description = description;
+    }
+
+    public String getDescription()
+    {
+        return description;
+    }
+
+    /**
+     * @return the policy with the given description, FALLBACK if there is none
+     */
+    public static TimeoutPolicy fromDescription(String description)
+    {
+        for(TimeoutPolicy policy : values())
+        {
+            if(policy.description.equals(description))
+            {
+                return policy;
+            }
+        }
+        return FALLBACK;
+    }
+}
@@ -0,0 +1,141 @@
+package bi.meteorite.sentiment.nlp.cache;
+
+import com.google.common.base.Charsets;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.CacheStats;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+import com.google.common.util.concurrent.ExecutionError;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * A bounded cache of analysis results keyed by a 128 bit hash of the analyzed text.
+ *
+ * Only the hash is kept, so an entry costs the same whatever the length of the text.  Concurrent
+ * requests for a key that is still being computed wait for that computation instead of starting
+ * their own.  Null results are never cached.
+ */
+public class ResultCache<V>
+{
+    private static final HashFunction HASH = Hashing.murmur3_128();
+
+    /**
+     * Rough heap cost of one entry on top of its value: the hash code, the entry and its references.
+     */
+    public static final int ENTRY_OVERHEAD_BYTES = 96;
+
+    private final Cache<HashCode, V> cache;
+
+    /**
+     * @param maxEntries the maximum number of entries, 0 for no limit on the count
+     * @param maxBytes the maximum estimated heap size, 0 for no limit on the size
+     * @param entryBytes the estimated heap cost of one entry including its value
+     */
+    public ResultCache(long maxEntries, long maxBytes, int entryBytes)
+    {
+        long maximumSize = Long.MAX_VALUE;
+        if(maxEntries > 0)
+        {
+            maximumSize = maxEntries;
+        }
+        if(maxBytes > 0)
+        {
+            maximumSize = Math.min(maximumSize, Math.max(1, maxBytes / entryBytes));
+        }
+        cache = CacheBuilder.newBuilder().maximumSize(maximumSize).recordStats().build();
+    }
+
+    public static boolean isEnabled(long maxEntries, long maxBytes)
+    {
+        return maxEntries > 0 || maxBytes > 0;
+    }
+
+    public HashCode key(String text)
+    {
+        return HASH.hashString(text, Charsets.UTF_8);
+    }
+
+    /**
+     * Hashes the text within a namespace, for caches that hold results computed in more than one way.
+     */
+    public HashCode key(String namespace, String text)
+    {
+        return HASH.newHasher()
+                .putString(namespace, Charsets.UTF_8)
+                .putInt(namespace.length())
+                .putString(text, Charsets.UTF_8)
+                .hash();
+    }
+
+    /**
+     * Returns the cached value for the key, computing it with the loader on a miss.  If another thread
+     * is already computing the same key this waits for its result.
+     */
+    public V get(HashCode key, Callable<? extends V> loader)
+    {
+        try
+        {
+            return cache.get(key, loader);
+        }
+        catch(CacheLoader.InvalidCacheLoadException e)
+        {
+            // the loader returned null, which is a valid result that we just do not keep
+            return null;
+        }
+        catch(ExecutionException e)
+        {
+            throw new UncheckedExecutionException(e.getCause());
+        }
+        catch(UncheckedExecutionException e)
+        {
+            if(e.getCause() instanceof RuntimeException)
+            {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+        catch(ExecutionError e)
+        {
+            throw (Error) e.getCause();
+        }
+    }
+
+    public V getIfPresent(HashCode key)
+    {
+        return cache.getIfPresent(key);
+    }
+
+    public void put(HashCode key, V value)
+    {
+        if(value != null)
+        {
+            cache.put(key, value);
+        }
+    }
+
+    public void clear()
+    {
+        cache.invalidateAll();
+    }
+
+    public CacheStats stats()
+    {
+        return cache.stats();
+    }
+
+    /**
+     * @return the hit, miss and eviction counts in a form suitable for the step log
+     */
+    public String describe()
+    {
+        CacheStats stats = cache.stats();
+        return "hits=" + stats.hitCount() + ", misses=" + stats.missCount() + ", evictions=" + stats.evictionCount()
+                + ", entries=" + cache.size();
+    }
+}
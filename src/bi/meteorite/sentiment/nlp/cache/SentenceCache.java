@@ -0,0 +1,172 @@
+package bi.meteorite.sentiment.nlp.cache;
+
+import bi.meteorite.sentiment.nlp.SentimentAnalyzer;
+import bi.meteorite.sentiment.nlp.StagedPipeline;
+import bi.meteorite.sentiment.nlp.budget.DeadlineAnnotator;
+import com.google.common.hash.HashCode;
+import edu.stanford.nlp.ling.CoreAnnotations;
+import edu.stanford.nlp.ling.CoreLabel;
+import edu.stanford.nlp.pipeline.Annotation;
+import edu.stanford.nlp.util.CoreMap;
+
+import java.util.*;
+
+/**
+ * Runs a {@link StagedPipeline} so that its expensive half can be skipped for sentences that have
+ * been seen before.
+ *
+ * Documents are first tokenized and split into sentences.  Each sentence is looked up by its
+ * normalized text, which is its tokens joined by single spaces, and only the sentences that are not
+ * cached go through the parser and the sentiment model.  Every sentence of an annotated document
+ * ends up carrying a {@link SentencePrediction.Annotation}, whether it came from the cache or not.
+ */
+public class SentenceCache
+{
+    private final ResultCache<SentencePrediction> cache;
+    private final StagedPipeline pipeline;
+
+    public SentenceCache(StagedPipeline pipeline, long maxEntries, long maxBytes)
+    {
+        this.cache = new ResultCache<SentencePrediction>(maxEntries, maxBytes, SentencePrediction.ENTRY_BYTES);
+        this.pipeline = pipeline;
+    }
+
+    /**
+     * Annotates a single document.
+     */
+    public Annotation process(String document)
+    {
+        Annotation annotation = new Annotation(document);
+        annotate(Collections.singletonList(annotation), 1);
+        return annotation;
+    }
+
+    /**
+     * Annotates the documents, parsing only the sentences that are neither cached nor repeated within
+     * the documents.  With a time budget a sentence is only taken as a repeat within its own document,
+     * so whether it is finished in time depends on that document alone.
+     */
+    public void annotate(List<Annotation> documents, int threads)
+    {
+        pipeline.split(documents, threads);
+
+        List<CoreMap> misses = new ArrayList<CoreMap>();
+        List<Integer> documentEnds = new ArrayList<Integer>(); // end of the misses of each document
+        Map<CoreMap, HashCode> missKeys = new IdentityHashMap<CoreMap, HashCode>();
+        Map<HashCode, CoreMap> missesByKey = new HashMap<HashCode, CoreMap>();
+        Map<CoreMap, CoreMap> repeats = new IdentityHashMap<CoreMap, CoreMap>(); // repeat to the miss scored for it
+        for(Annotation document : documents)
+        {
+            if(pipeline.hasTimeout())
+            {
+                missesByKey.clear();
+            }
+            for(CoreMap sentence : document.get(CoreAnnotations.SentencesAnnotation.class))
+            {
+                HashCode key = cache.key(normalize(sentence));
+                SentencePrediction cached = cache.getIfPresent(key);
+                if(cached != null)
+                {
+                    sentence.set(SentencePrediction.Annotation.class, cached);
+                }
+                else if(missesByKey.containsKey(key))
+                {
+                    repeats.put(sentence, missesByKey.get(key));
+                }
+                else
+                {
+                    missesByKey.put(key, sentence);
+                    missKeys.put(sentence, key);
+                    misses.add(sentence);
+                }
+            }
+            documentEnds.add(misses.size());
+        }
+        if(misses.isEmpty())
+        {
+            return;
+        }
+
+        // the parse and sentiment annotators only look at the sentences, so the misses can be
+        // spread over as many partial documents as there are threads.  A time budget applies to each
+        // partial document, so with a budget every document gets a partial of its own.  Either way a
+        // partial is one sample of the parse and sentiment latencies, see PipelineMetrics.
+        List<Annotation> partials = new ArrayList<Annotation>();
+        if(pipeline.hasTimeout())
+        {
+            int from = 0;
+            for(int end : documentEnds)
+            {
+                if(end > from)
+                {
+                    partials.add(partial(misses.subList(from, end)));
+                }
+                from = end;
+            }
+        }
+        else
+        {
+            int chunks = Math.min(Math.max(1, threads), misses.size());
+            int chunkSize = (misses.size() + chunks - 1) / chunks;
+            for(int from = 0; from < misses.size(); from += chunkSize)
+            {
+                partials.add(partial(misses.subList(from, Math.min(misses.size(), from + chunkSize))));
+            }
+        }
+        pipeline.score(partials, threads);
+
+        for(Map.Entry<CoreMap, HashCode> miss : missKeys.entrySet())
+        {
+            CoreMap sentence = miss.getKey();
+            if(DeadlineAnnotator.isUnfinished(sentence))
+            {
+                // ran out of time before this sentence was scored, so there is nothing to keep
+                continue;
+            }
+            SentencePrediction prediction = SentimentAnalyzer.getPrediction(sentence);
+            sentence.set(SentencePrediction.Annotation.class, prediction);
+            cache.put(miss.getValue(), prediction);
+        }
+        for(Map.Entry<CoreMap, CoreMap> repeat : repeats.entrySet())
+        {
+            CoreMap scored = repeat.getValue();
+            if(DeadlineAnnotator.isUnfinished(scored))
+            {
+                repeat.getKey().set(DeadlineAnnotator.UnfinishedAnnotation.class, Boolean.TRUE);
+            }
+            else
+            {
+                repeat.getKey().set(SentencePrediction.Annotation.class, scored.get(SentencePrediction.Annotation.class));
+            }
+        }
+    }
+
+    private static Annotation partial(List<CoreMap> sentences)
+    {
+        Annotation partial = new Annotation("");
+        partial.set(CoreAnnotations.SentencesAnnotation.class, new ArrayList<CoreMap>(sentences));
+        return partial;
+    }
+
+    static String normalize(CoreMap sentence)
+    {
+        StringBuilder ret = new StringBuilder();
+        for(CoreLabel token : sentence.get(CoreAnnotations.TokensAnnotation.class))
+        {
+            if(ret.length() > 0)
+            {
+                ret.append(' ');
+            }
+            ret.append(token.word());
+        }
+        return ret.toString();
+    }
+
+    /**
+     * @return the hit, miss and eviction counts in a form suitable for the step log
+     */
+    public String describe()
+    {
+        return cache.describe();
+    }
+}
@@ -0,0 +1,67 @@
+package bi.meteorite.sentiment.nlp.cache;
+
+import bi.meteorite.sentiment.nlp.SentimentClass;
+import edu.stanford.nlp.ling.CoreAnnotation;
+import edu.stanford.nlp.neural.rnn.RNNCoreAnnotations;
+import edu.stanford.nlp.trees.Tree;
+import org.ejml.simple.SimpleMatrix;
+
+/**
+ * The output of the sentiment model for one sentence: the predicted class and the probability of
+ * every class.  This is all the rollups need, so it is what the sentence cache keeps.
+ */
+public class SentencePrediction
+{
+    /**
+     * Estimated heap cost of one cached prediction, including the cache entry itself.
+     */
+    public static final int ENTRY_BYTES = ResultCache.ENTRY_OVERHEAD_BYTES + 16 + 16 + 8 * 5;
+
+    /**
+     * Attaches a prediction to a sentence CoreMap, so that sentences answered from the cache do not
+     * need a sentiment tree.
+     */
+    public static class Annotation implements CoreAnnotation<SentencePrediction>
+    {
+        @Override
+        public Class<SentencePrediction> getType()
+        {
+            return SentencePrediction.class;
+        }
+    }
+
+    private final int sentimentClass;
+    private final double[] probabilities;
+
+    public SentencePrediction(int sentimentClass, double[] probabilities)
+    {
+        this.sentimentClass = sentimentClass;
+        this.probabilities = probabilities;
+    }
+
+    /**
+     * Reads the prediction from a tree produced by the sentiment annotator.
+     */
+    public static SentencePrediction fromTree(Tree sentimentTree)
+    {
+        int sentimentClassIdx = RNNCoreAnnotations.getPredictedClass(sentimentTree);
+        /*
+         * Each possible sentiment has an associated probability, so let's pull the entire
+         * set of probabilities across all sentiment classes.
+         */
+        double[] probs = new double[SentimentClass.count()];
+        SimpleMatrix mat = RNNCoreAnnotations.getPredictions(sentimentTree);
+        for(int i = 0;i < probs.length;++i)
+        {
+            probs[i] = mat.get(i);
+        }
+        return new SentencePrediction(sentimentClassIdx, probs);
+    }
+
+    public int getSentimentClass() { return sentimentClass;}
+
+    /**
+     * @return the probabilities indexed by {@link SentimentClass#getIndex()}.  Callers must not modify the array.
+     */
+    public double[] getProbabilities() { return probabilities;}
+}
@@ -0,0 +1,54 @@
+package bi.meteorite.sentiment.nlp.filter;
+
+import bi.meteorite.sentiment.nlp.SentimentClass;
+
+/**
+ * The result given to a value the {@link TextFilter} keeps away from the pipeline.
+ */
+public enum SkipResult {
+    /**
+     * Leave the output fields empty.
+     */
+    NULL("Null", null),
+    /**
+     * Give NEUTRAL, as if the pipeline had found no sentiment.
+     */
+    NEUTRAL("Neutral", SentimentClass.NEUTRAL);
+
+    private final String description;
+    private final SentimentClass sentiment;
+
+    SkipResult(String description, SentimentClass sentiment)
+    {
+        this.description = description;
+        this.sentiment = sentiment;
+    }
+
+    public String getDescription()
+    {
+        return description;
+    }
+
+    /**
+     * @return the result of every rollup of a skipped value, null for none
+     */
+    public SentimentClass getSentiment()
+    {
+        return sentiment;
+    }
+
+    /**
+     * @return the result with the given description, NULL if there is none
+     */
+    public static SkipResult fromDescription(String description)
+    {
+        for(SkipResult result : values())
+        {
+            if(result.description.equals(description))
+            {
+                return result;
+            }
+        }
+        return NULL;
+    }
+}
@@ -0,0 +1,106 @@
+package bi.meteorite.sentiment.nlp.filter;
+
+/**
+ * Picks out the values that have nothing for the pipeline to analyze, so they can be given a result
+ * without building an annotation.
+ *
+ * Null, empty and whitespace-only values are always skipped.  Each rule makes a kind of token count as
+ * nothing, and a value is skipped when all of its whitespace separated tokens are nothing: URLs,
+ * hashtags and mentions, or tokens without a single letter or digit such as emoji and punctuation.
+ * A value is read once from start to end without regular expressions or copies of the text.
+ *
+ * Instances hold no state besides the rules, so one can be shared between threads.
+ */
+public class TextFilter
+{
+    private static final String[] URL_PREFIXES = {"http://", "https://", "www."};
+
+    private final boolean urls;
+    private final boolean hashtags;
+    private final boolean symbols;
+
+    /**
+     * @param urls true to skip values made only of URLs
+     * @param hashtags true to skip values made only of hashtags and mentions
+     * @param symbols true to skip values without a letter or digit, such as emoji
+     */
+    public TextFilter(boolean urls, boolean hashtags, boolean symbols)
+    {
+        this.urls = urls;
+        this.hashtags = hashtags;
+        this.symbols = symbols;
+    }
+
+    /**
+     * @return true if the value has nothing left to analyze once the rules are applied
+     */
+    public boolean isSkipped(String value)
+    {
+        if(value == null)
+        {
+            return true;
+        }
+        int length = value.length();
+        int i = 0;
+        while(i < length)
+        {
+            while(i < length && Character.isWhitespace(value.charAt(i)))
+            {
+                i++;
+            }
+            if(i == length)
+            {
+                break;
+            }
+            int start = i;
+            while(i < length && !Character.isWhitespace(value.charAt(i)))
+            {
+                i++;
+            }
+            if(isContent(value, start, i))
+            {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean isContent(String value, int start, int end)
+    {
+        if(urls && isUrl(value, start, end))
+        {
+            return false;
+        }
+        char first = value.charAt(start);
+        if(hashtags && (first == '#' || first == '@') && end - start > 1)
+        {
+            return false;
+        }
+        if(!symbols)
+        {
+            return true;
+        }
+        for(int i = start;i < end;)
+        {
+            int codePoint = value.codePointAt(i);
+            if(Character.isLetterOrDigit(codePoint))
+            {
+                return true;
+            }
+            i += Character.charCount(codePoint);
+        }
+        return false;
+    }
+
+    private static boolean isUrl(String value, int start, int end)
+    {
+        for(String prefix : URL_PREFIXES)
+        {
+            if(end - start > prefix.length() && value.regionMatches(true, start, prefix, 0, prefix.length()))
+            {
+                return true;
+            }
+        }
+        return false;
+    }
+}
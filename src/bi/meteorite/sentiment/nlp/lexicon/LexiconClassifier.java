@@ -0,0 +1,164 @@
+package bi.meteorite.sentiment.nlp.lexicon;
+
+import bi.meteorite.sentiment.nlp.SentimentClass;
+import com.google.common.base.Charsets;
+
+import java.io.*;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A cheap first stage in front of the pipeline: sums the weights of the positive and negative words of
+ * a document and only answers when the balance is clear enough.
+ *
+ * Words are found by splitting on anything that is not a letter or an apostrophe, so no tokenizer
+ * runs.  A negation (not, no, never, or a word ending in n't) flips the next lexicon word within
+ * three words, and what came before a but or however counts half.  The confidence is
+ * |positive - negative| / (positive + negative + 1), so a single weak word is never enough on its own.
+ *
+ * The lexicon is read once and only read afterwards, so one instance can be shared between threads.
+ */
+public class LexiconClassifier
+{
+    private static final String DEFAULT_LEXICON = "lexicon.txt";
+
+    private static final int NEGATION_WINDOW = 3;
+
+    private final Map<String, Double> weights;
+
+    public LexiconClassifier(Map<String, Double> weights)
+    {
+        this.weights = new HashMap<String, Double>(weights);
+    }
+
+    /**
+     * @return a classifier over the lexicon bundled with the step
+     */
+    public static LexiconClassifier defaultLexicon() throws IOException
+    {
+        InputStream in = LexiconClassifier.class.getResourceAsStream(DEFAULT_LEXICON);
+        if(in == null)
+        {
+            throw new FileNotFoundException(DEFAULT_LEXICON);
+        }
+        return load(in);
+    }
+
+    /**
+     * @return a classifier over a lexicon file of one word and its weight per line, # starting a comment
+     */
+    public static LexiconClassifier load(File file) throws IOException
+    {
+        return load(new FileInputStream(file));
+    }
+
+    private static LexiconClassifier load(InputStream in) throws IOException
+    {
+        Map<String, Double> weights = new HashMap<String, Double>();
+        BufferedReader reader = new BufferedReader(new InputStreamReader(in, Charsets.UTF_8));
+        try
+        {
+            int lineNr = 0;
+            for(String line = null; (line = reader.readLine()) != null;)
+            {
+                lineNr++;
+                line = line.trim();
+                if(line.isEmpty() || line.startsWith("#"))
+                {
+                    continue;
+                }
+                String[] entry = line.split("\\s+");
+                if(entry.length != 2)
+                {
+                    throw new IOException("Expected a word and a weight on line " + lineNr + ": " + line);
+                }
+                try
+                {
+                    weights.put(entry[0].toLowerCase(), Double.parseDouble(entry[1]));
+                }
+                catch(NumberFormatException e)
+                {
+                    throw new IOException("Invalid weight on line " + lineNr + ": " + line);
+                }
+            }
+        }
+        finally
+        {
+            reader.close();
+        }
+        return new LexiconClassifier(weights);
+    }
+
+    /**
+     * @param minConfidence the confidence the classifier must reach to answer, between 0 and 1
+     * @return POSITIVE or NEGATIVE, or null when the document has to go through the pipeline
+     */
+    public SentimentClass classify(String document, double minConfidence)
+    {
+        double positive = 0;
+        double negative = 0;
+        int negatedUntil = -1;
+        int word = 0;
+        int length = document.length();
+        for(int i = 0;i < length;)
+        {
+            while(i < length && !isWordChar(document.charAt(i)))
+            {
+                i++;
+            }
+            int start = i;
+            while(i < length && isWordChar(document.charAt(i)))
+            {
+                i++;
+            }
+            if(start == i)
+            {
+                break;
+            }
+            String token = document.substring(start, i).toLowerCase();
+            if(isNegation(token))
+            {
+                negatedUntil = word + NEGATION_WINDOW;
+            }
+            else if("but".equals(token) || "however".equals(token))
+            {
+                positive /= 2;
+                negative /= 2;
+            }
+            else
+            {
+                Double weight = weights.get(token);
+                if(weight != null)
+                {
+                    double value = word <= negatedUntil ? -weight : weight;
+                    negatedUntil = -1;
+                    if(value > 0)
+                    {
+                        positive += value;
+                    }
+                    else
+                    {
+                        negative -= value;
+                    }
+                }
+            }
+            word++;
+        }
+        double confidence = Math.abs(positive - negative) / (positive + negative + 1);
+        if(confidence < minConfidence || positive == negative)
+        {
+            return null;
+        }
+        return positive > negative ? SentimentClass.POSITIVE : SentimentClass.NEGATIVE;
+    }
+
+    private static boolean isWordChar(char c)
+    {
+        return Character.isLetter(c) || c == '\'';
+    }
+
+    private static boolean isNegation(String token)
+    {
+        return "not".equals(token) || "no".equals(token) || "never".equals(token) || token.endsWith("n't");
+    }
+}
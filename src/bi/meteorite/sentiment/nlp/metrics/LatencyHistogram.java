@@ -0,0 +1,125 @@
+package bi.meteorite.sentiment.nlp.metrics;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A lock free histogram of durations that can be recorded from any number of threads.
+ *
+ * Durations are kept in microseconds in buckets that split every power of two into four, so a
+ * percentile is accurate to within 25% whatever its magnitude, and the histogram has a fixed size
+ * however many samples it holds.
+ */
+public class LatencyHistogram
+{
+    private static final int SUB_BUCKET_BITS = 2;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+    private final AtomicLongArray buckets = new AtomicLongArray(64 * SUB_BUCKETS);
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong totalNanos = new AtomicLong();
+    private final AtomicLong maxNanos = new AtomicLong();
+
+    public void record(long nanos)
+    {
+        buckets.incrementAndGet(bucket(TimeUnit.NANOSECONDS.toMicros(nanos)));
+        count.incrementAndGet();
+        totalNanos.addAndGet(nanos);
+        long max;
+        while(nanos > (max = maxNanos.get()) && !maxNanos.compareAndSet(max, nanos))
+        {
+            // lost a race with another thread, try again
+        }
+    }
+
+    private static int bucket(long micros)
+    {
+        if(micros < SUB_BUCKETS)
+        {
+            return (int) Math.max(0, micros);
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(micros);
+        int sub = (int) (micros >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + sub;
+    }
+
+    /**
+     * @return the largest duration in microseconds that falls into the bucket
+     */
+    private static long upperBound(int bucket)
+    {
+        if(bucket < SUB_BUCKETS)
+        {
+            return bucket;
+        }
+        int exponent = bucket / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+        long sub = bucket % SUB_BUCKETS;
+        return ((SUB_BUCKETS + sub + 1) << (exponent - SUB_BUCKET_BITS)) - 1;
+    }
+
+    public long getCount()
+    {
+        return count.get();
+    }
+
+    public double getMeanMillis()
+    {
+        long n = count.get();
+        return n == 0 ? 0 : totalNanos.get() / 1e6 / n;
+    }
+
+    public double getMaxMillis()
+    {
+        return maxNanos.get() / 1e6;
+    }
+
+    public double getTotalMillis()
+    {
+        return totalNanos.get() / 1e6;
+    }
+
+    /**
+     * @param percentile between 0 and 100
+     * @return an upper bound of the duration below which the given percentage of the samples fall
+     */
+    public double getPercentileMillis(double percentile)
+    {
+        long n = count.get();
+        if(n == 0)
+        {
+            return 0;
+        }
+        long rank = (long) Math.ceil(n * percentile / 100.0);
+        long seen = 0;
+        for(int i = 0;i < buckets.length();++i)
+        {
+            seen += buckets.get(i);
+            if(seen >= rank)
+            {
+                return Math.min(upperBound(i) / 1e3, getMaxMillis());
+            }
+        }
+        return getMaxMillis();
+    }
+
+    public void reset()
+    {
+        for(int i = 0;i < buckets.length();++i)
+        {
+            buckets.set(i, 0);
+        }
+        count.set(0);
+        totalNanos.set(0);
+        maxNanos.set(0);
+    }
+
+    /**
+     * @return the count and the main percentiles in a form suitable for a log line
+     */
+    public String describe()
+    {
+        return String.format("n=%d, mean=%.2fms, p50=%.2fms, p95=%.2fms, p99=%.2fms, max=%.2fms", getCount(),
+                getMeanMillis(), getPercentileMillis(50), getPercentileMillis(95), getPercentileMillis(99), getMaxMillis());
+    }
+}
@@ -0,0 +1,158 @@
+package bi.meteorite.sentiment.nlp.metrics;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Latency per stage and size per document for one analyzer, safe to record from any number of threads.
+ *
+ * With these a slowdown can be put down to longer inputs (characters and sentences per document), to
+ * one of the annotators, or to garbage collection, which is the JVM wide collection time over the same
+ * period.
+ *
+ * A stage latency sample is one call to the annotator of that stage, so what it covers depends on how
+ * the pipeline is run:
+ * <ul>
+ * <li>tokenize and ssplit: always one document;</li>
+ * <li>parse and sentiment without the sentence cache: one document;</li>
+ * <li>parse and sentiment with the sentence cache and a time budget: the sentences of one document
+ *     that were not cached, and nothing for a document that was cached entirely;</li>
+ * <li>parse and sentiment with the sentence cache and no time budget: the sentences that were not
+ *     cached, pooled from all the documents of a batch and split evenly over the worker threads;</li>
+ * <li>parse and sentiment on a CoreNLP server: nothing, the server is not timed;</li>
+ * <li>rollup: one document.</li>
+ * </ul>
+ * The parse and sentiment percentiles therefore only compare between runs with the same cache, time
+ * budget, batch size and worker thread settings.
+ */
+public class PipelineMetrics implements PipelineMetricsMXBean
+{
+    private final Map<Stage, LatencyHistogram> latencies = new EnumMap<Stage, LatencyHistogram>(Stage.class);
+    private final AtomicLong documents = new AtomicLong();
+    private final AtomicLong sentences = new AtomicLong();
+    private final AtomicLong characters = new AtomicLong();
+    private volatile long startNanos;
+    private volatile long startGcMillis;
+
+    public PipelineMetrics()
+    {
+        for(Stage stage : Stage.values())
+        {
+            latencies.put(stage, new LatencyHistogram());
+        }
+        startNanos = System.nanoTime();
+        startGcMillis = totalGcMillis();
+    }
+
+    public LatencyHistogram getLatency(Stage stage)
+    {
+        return latencies.get(stage);
+    }
+
+    public void record(Stage stage, long nanos)
+    {
+        latencies.get(stage).record(nanos);
+    }
+
+    /**
+     * Counts a document that went through the pipeline.
+     */
+    public void recordDocument(int characterCount, int sentenceCount)
+    {
+        documents.incrementAndGet();
+        characters.addAndGet(characterCount);
+        sentences.addAndGet(sentenceCount);
+    }
+
+    @Override
+    public long getDocuments()
+    {
+        return documents.get();
+    }
+
+    @Override
+    public double getDocumentsPerSecond()
+    {
+        double seconds = (System.nanoTime() - startNanos) / 1e9;
+        return seconds <= 0 ? 0 : documents.get() / seconds;
+    }
+
+    @Override
+    public double getSentencesPerDocument()
+    {
+        long n = documents.get();
+        return n == 0 ? 0 : (double) sentences.get() / n;
+    }
+
+    @Override
+    public double getCharactersPerDocument()
+    {
+        long n = documents.get();
+        return n == 0 ? 0 : (double) characters.get() / n;
+    }
+
+    @Override
+    public long getGcMillis()
+    {
+        return totalGcMillis() - startGcMillis;
+    }
+
+    private static long totalGcMillis()
+    {
+        long ret = 0;
+        for(GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans())
+        {
+            ret += Math.max(0, gc.getCollectionTime());
+        }
+        return ret;
+    }
+
+    @Override
+    public List<StageLatency> getStages()
+    {
+        List<StageLatency> ret = new ArrayList<StageLatency>();
+        for(Map.Entry<Stage, LatencyHistogram> latency : latencies.entrySet())
+        {
+            ret.add(StageLatency.of(latency.getKey(), latency.getValue()));
+        }
+        return ret;
+    }
+
+    @Override
+    public void reset()
+    {
+        for(LatencyHistogram latency : latencies.values())
+        {
+            latency.reset();
+        }
+        documents.set(0);
+        sentences.set(0);
+        characters.set(0);
+        startNanos = System.nanoTime();
+        startGcMillis = totalGcMillis();
+    }
+
+    /**
+     * @return one line for the document counts followed by one line per stage that has been timed
+     */
+    public List<String> describe()
+    {
+        List<String> ret = new ArrayList<String>();
+        ret.add(String.format("documents=%d, docs/sec=%.2f, sentences/doc=%.2f, chars/doc=%.1f, gc=%dms",
+                getDocuments(), getDocumentsPerSecond(), getSentencesPerDocument(), getCharactersPerDocument(),
+                getGcMillis()));
+        for(Map.Entry<Stage, LatencyHistogram> latency : latencies.entrySet())
+        {
+            if(latency.getValue().getCount() > 0)
+            {
+                ret.add(latency.getKey().name().toLowerCase() + ": " + latency.getValue().describe());
+            }
+        }
+        return ret;
+    }
+}
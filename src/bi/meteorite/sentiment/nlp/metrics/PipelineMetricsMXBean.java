@@ -0,0 +1,33 @@
+package bi.meteorite.sentiment.nlp.metrics;
+
+import java.util.List;
+
+/**
+ * The JMX view of the {@link PipelineMetrics} of one step copy.
+ */
+public interface PipelineMetricsMXBean
+{
+    /**
+     * @return the number of documents that went through the pipeline
+     */
+    long getDocuments();
+
+    double getDocumentsPerSecond();
+
+    double getSentencesPerDocument();
+
+    double getCharactersPerDocument();
+
+    /**
+     * @return the garbage collection time of the whole JVM since the metrics were started or reset
+     */
+    long getGcMillis();
+
+    /**
+     * @return the latency of every stage, one sample per call to its annotator; see
+     *         {@link PipelineMetrics} for what a call covers with and without the sentence cache
+     */
+    List<StageLatency> getStages();
+
+    void reset();
+}
@@ -0,0 +1,28 @@
+package bi.meteorite.sentiment.nlp.metrics;
+
+/**
+ * The timed stages of analyzing a document: the CoreNLP annotators in pipeline order, then the rollup
+ * of the sentences into one sentiment.
+ */
+public enum Stage {
+    TOKENIZE("tokenize"),
+    SSPLIT("ssplit"),
+    PARSE("parse"),
+    SENTIMENT("sentiment"),
+    ROLLUP(null);
+
+    private final String annotator;
+
+    Stage(String annotator)
+    {
+        this.annotator = annotator;
+    }
+
+    /**
+     * @return the name of the CoreNLP annotator, null for the rollup
+     */
+    public String getAnnotator()
+    {
+        return annotator;
+    }
+}
@@ -0,0 +1,72 @@
+package bi.meteorite.sentiment.nlp.metrics;
+
+import java.beans.ConstructorProperties;
+
+/**
+ * A snapshot of the latency of one stage, as exposed over JMX.
+ */
+public class StageLatency
+{
+    private final String stage;
+    private final long count;
+    private final double meanMillis;
+    private final double p50Millis;
+    private final double p95Millis;
+    private final double p99Millis;
+    private final double maxMillis;
+
+    @ConstructorProperties({"stage", "count", "meanMillis", "p50Millis", "p95Millis", "p99Millis", "maxMillis"})
+    public StageLatency(String stage, long count, double meanMillis, double p50Millis, double p95Millis,
+                        double p99Millis, double maxMillis)
+    {
+        this.stage = stage;
+        this.count = count;
+        this.meanMillis = meanMillis;
+        this.p50Millis = p50Millis;
+        this.p95Millis = p95Millis;
+        this.p99Millis = p99Millis;
+        this.maxMillis = maxMillis;
+    }
+
+    public static StageLatency of(Stage stage, LatencyHistogram histogram)
+    {
+        return new StageLatency(stage.name().toLowerCase(), histogram.getCount(), histogram.getMeanMillis(),
+                histogram.getPercentileMillis(50), histogram.getPercentileMillis(95),
+                histogram.getPercentileMillis(99), histogram.getMaxMillis());
+    }
+
+    public String getStage()
+    {
+        return stage;
+    }
+
+    public long getCount()
+    {
+        return count;
+    }
+
+    public double getMeanMillis()
+    {
+        return meanMillis;
+    }
+
+    public double getP50Millis()
+    {
+        return p50Millis;
+    }
+
+    public double getP95Millis()
+    {
+        return p95Millis;
+    }
+
+    public double getP99Millis()
+    {
+        return p99Millis;
+    }
+
+    public double getMaxMillis()
+    {
+        return maxMillis;
+    }
+}
@@ -0,0 +1,48 @@
+package bi.meteorite.sentiment.nlp.metrics;
+
+import edu.stanford.nlp.pipeline.Annotation;
+import edu.stanford.nlp.pipeline.Annotator;
+
+import java.util.Set;
+
+/**
+ * Records how long each call to an annotator takes, whether the annotation is a whole document or a
+ * partial one holding only some of its sentences, see {@link PipelineMetrics}.
+ */
+public class TimedAnnotator implements Annotator
+{
+    private final Annotator annotator;
+    private final LatencyHistogram latency;
+
+    public TimedAnnotator(Annotator annotator, LatencyHistogram latency)
+    {
+        this.annotator = annotator;
+        this.latency = latency;
+    }
+
+    @Override
+    public void annotate(Annotation annotation)
+    {
+        long start = System.nanoTime();
+        try
+        {
+            annotator.annotate(annotation);
+        }
+        finally
+        {
+            latency.record(System.nanoTime() - start);
+        }
+    }
+
+    @Override
+    public Set<Requirement> requirementsSatisfied()
+    {
+        return annotator.requirementsSatisfied();
+    }
+
+    @Override
+    public Set<Requirement> requires()
+    {
+        return annotator.requires();
+    }
+}
@@ -0,0 +1,82 @@
+package bi.meteorite.sentiment.nlp.rollup;
+
+import bi.meteorite.sentiment.nlp.SentimentClass;
+
+import java.util.List;
+
+/**
+ * Base class for rollups that are implemented over a {@link SentenceBatch}.  The list form copies the
+ * sentences into a batch first, and unless a strategy provides a streaming accumulator of its own the
+ * accumulator buffers the sentences into a batch as well.
+ */
+public abstract class AbstractSentimentRollup implements ISentimentRollup
+{
+    @Override
+    public SentimentClass apply(List<Sentence> input)
+    {
+        return apply(SentenceBatch.of(input));
+    }
+
+    /**
+     * Copies each document into a batch and rolls it up on its own.  Strategies override this with a
+     * loop over the block itself.
+     */
+    @Override
+    public void apply(SentenceBlock input, SentimentClass[] results)
+    {
+        SentenceBatch batch = new SentenceBatch();
+        double[] probabilities = new double[SentimentClass.count()];
+        for(int document = 0;document < input.getDocumentCount();++document)
+        {
+            batch.clear();
+            for(int sentence = input.getStart(document);sentence < input.getEnd(document);++sentence)
+            {
+                for(int i = 0;i < probabilities.length;++i)
+                {
+                    probabilities[i] = input.getProbability(sentence, i);
+                }
+                batch.add(input.getSentimentClass(sentence), probabilities, input.getLength(sentence));
+            }
+            results[document] = apply(batch);
+        }
+    }
+
+    @Override
+    public ISentimentAccumulator newAccumulator()
+    {
+        return new BufferingAccumulator(this);
+    }
+
+    /**
+     * Keeps the primitive form of every sentence until the document is finished.  That is a few
+     * numbers per sentence, so the annotation itself can still be dropped as it is read.
+     */
+    protected static class BufferingAccumulator implements ISentimentAccumulator
+    {
+        private final ISentimentRollup rollup;
+        private final SentenceBatch sentences = new SentenceBatch();
+
+        public BufferingAccumulator(ISentimentRollup rollup)
+        {
+            this.rollup = rollup;
+        }
+
+        @Override
+        public void begin()
+        {
+            sentences.clear();
+        }
+
+        @Override
+        public void add(int sentimentClass, double[] probabilities, int length)
+        {
+            sentences.add(sentimentClass, probabilities, length);
+        }
+
+        @Override
+        public SentimentClass finish()
+        {
+            return rollup.apply(sentences);
+        }
+    }
+}
@@ -0,0 +1,46 @@
+package bi.meteorite.sentiment.nlp.rollup;
+
+import bi.meteorite.sentiment.nlp.SentimentClass;
+
+import java.util.Arrays;
+
+/**
+ * The result of one document: the class given by each of its rollups and, when asked for, the
+ * statistics of its sentences laid out as in {@link SentimentStatistics}.
+ *
+ * Instances are never changed once built, so one can be cached and shared between threads.
+ */
+public class DocumentSentiment
+{
+    private final SentimentClass[] sentiments;
+    private final double[] statistics;
+
+    /**
+     * @param sentiments the class given by each rollup, null entries for none
+     * @param statistics see {@link SentimentStatistics#getStatistics()}, null when not computed
+     */
+    public DocumentSentiment(SentimentClass[] sentiments, double[] statistics)
+    {
+        this.sentiments = sentiments;
+        this.statistics = statistics;
+    }
+
+    /**
+     * @return a result giving the same class for every rollup and no statistics
+     */
+    public static DocumentSentiment of(SentimentClass sentiment, int rollups)
+    {
+        SentimentClass[] sentiments = new SentimentClass[rollups];
+        Arrays.fill(sentiments, sentiment);
+        return new DocumentSentiment(sentiments, null);
+    }
+
+    public SentimentClass getSentiment(int rollup) { return sentiments[rollup];}
+
+    public boolean hasStatistics() { return statistics != null;}
+
+    /**
+     * @param statistic {@link SentimentStatistics#SCORE} or the index of a class for its mean probability
+     */
+    public double getStatistic(int statistic) { return statistics[statistic];}
+}
@@ -0,0 +1,32 @@
+package bi.meteorite.sentiment.nlp.rollup;
+
+import bi.meteorite.sentiment.nlp.SentimentClass;
+
+/**
+ * The streaming form of a rollup: sentences are folded in one at a time as they come out of the
+ * pipeline, so nothing about a sentence has to be kept once it has been added.
+ *
+ * An accumulator holds the state of one document at a time and is not thread-safe.  It can be reused
+ * for the next document after {@link #begin()}.
+ */
+public interface ISentimentAccumulator
+{
+    /**
+     * Starts a new document, discarding the state of the previous one.
+     */
+    void begin();
+
+    /**
+     * Adds the next sentence of the document.
+     *
+     * @param sentimentClass the index of the predicted class, see {@link SentimentClass#getIndex()}
+     * @param probabilities the probability of every class, not kept after the call returns
+     * @param length the length of the sentence
+     */
+    void add(int sentimentClass, double[] probabilities, int length);
+
+    /**
+     * @return the sentiment of the document made of the sentences added since {@link #begin()}
+     */
+    SentimentClass finish();
+}
@@ -10,4 +10,21 @@ import java.util.List;
  */
 public interface ISentimentRollup extends Function<List<Sentence>, SentimentClass>
 {
-}
\ No newline at end of file
+    /**
+     * Rolls up a document held in primitive form.  Implementations must not box or allocate.
+     */
+    SentimentClass apply(SentenceBatch input);
+
+    /**
+     * Rolls up every document of a block, writing the sentiment of document d to results[d].
+     * Implementations must not box or allocate per document.
+     *
+     * @param results at least {@link SentenceBlock#getDocumentCount()} long
+     */
+    void apply(SentenceBlock input, SentimentClass[] results);
+
+    /**
+     * @return a new accumulator computing this rollup one sentence at a time
+     */
+    ISentimentAccumulator newAccumulator();
+}
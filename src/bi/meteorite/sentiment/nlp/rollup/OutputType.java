@@ -0,0 +1,66 @@
+package bi.meteorite.sentiment.nlp.rollup;
+
+import bi.meteorite.sentiment.nlp.SentimentClass;
+
+/**
+ * What an output field holds: the class given by its rollup, by name or by index, or one of the
+ * statistics of its document, see {@link SentimentStatistics}.
+ */
+public enum OutputType {
+    CLASS_NAME("Class name", -1),
+    CLASS_INDEX("Class index", -1),
+    /**
+     * The Wilson lower bound on the share of positive sentences.
+     */
+    SCORE("Score", SentimentStatistics.SCORE),
+    VERY_NEGATIVE_PROBABILITY("Very negative probability", SentimentClass.VERY_NEGATIVE.getIndex()),
+    NEGATIVE_PROBABILITY("Negative probability", SentimentClass.NEGATIVE.getIndex()),
+    NEUTRAL_PROBABILITY("Neutral probability", SentimentClass.NEUTRAL.getIndex()),
+    POSITIVE_PROBABILITY("Positive probability", SentimentClass.POSITIVE.getIndex()),
+    VERY_POSITIVE_PROBABILITY("Very positive probability", SentimentClass.VERY_POSITIVE.getIndex());
+
+    private final String description;
+    private final int statistic;
+
+    OutputType(String description, int statistic)
+    {
+        this.description = description;
+        this.statistic = statistic;
+    }
+
+    public String getDescription()
+    {
+        return description;
+    }
+
+    /**
+     * @return true if the field holds a statistic of the document rather than the class of a rollup
+     */
+    public boolean isStatistic()
+    {
+        return statistic >= 0;
+    }
+
+    /**
+     * @return the index of the statistic in {@link SentimentStatistics#getStatistics()}, -1 for a class
+     */
+    public int getStatistic()
+    {
+        return statistic;
+    }
+
+    /**
+     * @return the output type with the given description, CLASS_NAME if there is none
+     */
+    public static OutputType fromDescription(String description)
+    {
+        for(OutputType type : values())
+        {
+            if(type.description.equals(description))
+            {
+                return type;
+            }
+        }
+        return CLASS_NAME;
+    }
+}
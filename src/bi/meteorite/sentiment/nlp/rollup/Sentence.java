@@ -9,7 +9,7 @@ import java.util.EnumMap;
  * Created by cstella on 3/25/14.
  */
 public class Sentence {
-    private EnumMap<SentimentClass, Double> sentimentProbabilities;
+    private double[] sentimentProbabilities;
     private String sentence;
     private SentimentClass sentimentClass;
 
@@ -20,14 +20,29 @@ public class Sentence {
     {
         this.sentence = sentence;
         this.sentimentClass = sentimentClass;
-        this.sentimentProbabilities = new EnumMap<SentimentClass, Double>(SentimentClass.class);
+        this.sentimentProbabilities = sentimentProbabilities.clone();
+    }
+
+    public String getSentence() { return sentence;}
+
+    /**
+     * @return the probabilities indexed by {@link SentimentClass#getIndex()}.  Callers must not modify the array.
+     */
+    public double[] getProbabilities() { return sentimentProbabilities;}
+
+    public double getProbability(SentimentClass sentimentClass) { return sentimentProbabilities[sentimentClass.getIndex()];}
+
+    /**
+     * Boxes every probability, prefer {@link #getProbabilities()} in loops.
+     */
+    public EnumMap<SentimentClass, Double> getSentimentProbabilities()
+    {
+        EnumMap<SentimentClass, Double> ret = new EnumMap<SentimentClass, Double>(SentimentClass.class);
         for(int i = 0;i < sentimentProbabilities.length;++i)
         {
-            this.sentimentProbabilities.put(SentimentClass.values()[i], sentimentProbabilities[i]);
+            ret.put(SentimentClass.getSpecific(i), sentimentProbabilities[i]);
         }
+        return ret;
     }
-
-    public String getSentence() { return sentence;}
-    public EnumMap<SentimentClass, Double> getSentimentProbabilities() { return sentimentProbabilities;}
     public SentimentClass getSentiment() { return sentimentClass;}
-}
\ No newline at end of file
+}
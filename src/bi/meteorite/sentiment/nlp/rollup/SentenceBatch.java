@@ -0,0 +1,99 @@
+package bi.meteorite.sentiment.nlp.rollup;
+
+import bi.meteorite.sentiment.nlp.SentimentClass;
+
+import java.util.List;
+
+/**
+ * The sentences of one document in primitive form: the predicted class index, the probability of
+ * every class and the length of each sentence.
+ *
+ * Probabilities are stored in one flat array with {@link SentimentClass#count()} entries per sentence,
+ * so reading them never boxes.  A batch can be cleared and refilled, which lets a scoring thread reuse
+ * one instance for every document it rolls up.
+ */
+public class SentenceBatch
+{
+    private static final int CLASSES = SentimentClass.count();
+
+    private int size;
+    private int[] sentimentClasses;
+    private int[] lengths;
+    private double[] probabilities;
+
+    public SentenceBatch()
+    {
+        this(16);
+    }
+
+    public SentenceBatch(int capacity)
+    {
+        capacity = Math.max(1, capacity);
+        sentimentClasses = new int[capacity];
+        lengths = new int[capacity];
+        probabilities = new double[capacity * CLASSES];
+    }
+
+    /**
+     * Copies a list of sentences into a new batch.
+     */
+    public static SentenceBatch of(List<Sentence> sentences)
+    {
+        SentenceBatch batch = new SentenceBatch(sentences.size());
+        for(Sentence sentence : sentences)
+        {
+            batch.add(sentence.getSentiment().getIndex(), sentence.getProbabilities(), sentence.getSentence().length());
+        }
+        return batch;
+    }
+
+    public void clear()
+    {
+        size = 0;
+    }
+
+    /**
+     * Appends a sentence.  The probabilities are copied.
+     */
+    public void add(int sentimentClass, double[] sentenceProbabilities, int length)
+    {
+        if(size == sentimentClasses.length)
+        {
+            grow();
+        }
+        sentimentClasses[size] = sentimentClass;
+        lengths[size] = length;
+        System.arraycopy(sentenceProbabilities, 0, probabilities, size * CLASSES, CLASSES);
+        size++;
+    }
+
+    private void grow()
+    {
+        int capacity = sentimentClasses.length * 2;
+        int[] newClasses = new int[capacity];
+        System.arraycopy(sentimentClasses, 0, newClasses, 0, size);
+        sentimentClasses = newClasses;
+        int[] newLengths = new int[capacity];
+        System.arraycopy(lengths, 0, newLengths, 0, size);
+        lengths = newLengths;
+        double[] newProbabilities = new double[capacity * CLASSES];
+        System.arraycopy(probabilities, 0, newProbabilities, 0, size * CLASSES);
+        probabilities = newProbabilities;
+    }
+
+    public int size() { return size;}
+
+    public boolean isEmpty() { return size == 0;}
+
+    /**
+     * @return the index of the class predicted for the sentence, see {@link SentimentClass#getIndex()}
+     */
+    public int getSentimentClass(int sentence) { return sentimentClasses[sentence];}
+
+    public int getLength(int sentence) { return lengths[sentence];}
+
+    public double getProbability(int sentence, int sentimentClass)
+    {
+        return probabilities[sentence * CLASSES + sentimentClass];
+    }
+}
@@ -0,0 +1,119 @@
+package bi.meteorite.sentiment.nlp.rollup;
+
+import bi.meteorite.sentiment.nlp.SentimentClass;
+
+/**
+ * The sentences of many documents in primitive, columnar form, for rolling up a whole block of
+ * documents in one call to {@link ISentimentRollup#apply(SentenceBlock, SentimentClass[])}.
+ *
+ * The sentences of every document are stored one after the other, with the class index, length and
+ * probabilities of each sentence in flat arrays, and document d owns the sentences from
+ * {@link #getStart(int)} to {@link #getEnd(int)}.  Like {@link SentenceBatch} a block can be cleared
+ * and refilled without allocating.
+ */
+public class SentenceBlock
+{
+    private static final int CLASSES = SentimentClass.count();
+
+    private int documents;
+    private int sentences;
+    private int[] documentOffsets;
+    private int[] sentimentClasses;
+    private int[] lengths;
+    private double[] probabilities;
+
+    public SentenceBlock()
+    {
+        this(64, 1024);
+    }
+
+    public SentenceBlock(int documentCapacity, int sentenceCapacity)
+    {
+        documentOffsets = new int[Math.max(1, documentCapacity) + 1];
+        sentenceCapacity = Math.max(1, sentenceCapacity);
+        sentimentClasses = new int[sentenceCapacity];
+        lengths = new int[sentenceCapacity];
+        probabilities = new double[sentenceCapacity * CLASSES];
+    }
+
+    public void clear()
+    {
+        documents = 0;
+        sentences = 0;
+    }
+
+    /**
+     * Starts the next document.  Its sentences are the ones added until the next call.
+     */
+    public void beginDocument()
+    {
+        if(documents + 1 == documentOffsets.length)
+        {
+            int[] newOffsets = new int[documentOffsets.length * 2];
+            System.arraycopy(documentOffsets, 0, newOffsets, 0, documents + 1);
+            documentOffsets = newOffsets;
+        }
+        documents++;
+        documentOffsets[documents] = sentences;
+    }
+
+    /**
+     * Appends a sentence to the current document.  The probabilities are copied.
+     */
+    public void add(int sentimentClass, double[] sentenceProbabilities, int length)
+    {
+        if(documents == 0)
+        {
+            throw new IllegalStateException("add() called before beginDocument()");
+        }
+        if(sentences == sentimentClasses.length)
+        {
+            grow();
+        }
+        sentimentClasses[sentences] = sentimentClass;
+        lengths[sentences] = length;
+        System.arraycopy(sentenceProbabilities, 0, probabilities, sentences * CLASSES, CLASSES);
+        sentences++;
+        documentOffsets[documents] = sentences;
+    }
+
+    private void grow()
+    {
+        int capacity = sentimentClasses.length * 2;
+        int[] newClasses = new int[capacity];
+        System.arraycopy(sentimentClasses, 0, newClasses, 0, sentences);
+        sentimentClasses = newClasses;
+        int[] newLengths = new int[capacity];
+        System.arraycopy(lengths, 0, newLengths, 0, sentences);
+        lengths = newLengths;
+        double[] newProbabilities = new double[capacity * CLASSES];
+        System.arraycopy(probabilities, 0, newProbabilities, 0, sentences * CLASSES);
+        probabilities = newProbabilities;
+    }
+
+    public int getDocumentCount() { return documents;}
+
+    public int getSentenceCount() { return sentences;}
+
+    /**
+     * @return the first sentence of the document
+     */
+    public int getStart(int document) { return documentOffsets[document];}
+
+    /**
+     * @return the sentence after the last one of the document
+     */
+    public int getEnd(int document) { return documentOffsets[document + 1];}
+
+    /**
+     * @return the index of the class predicted for the sentence, see {@link SentimentClass#getIndex()}
+     */
+    public int getSentimentClass(int sentence) { return sentimentClasses[sentence];}
+
+    public int getLength(int sentence) { return lengths[sentence];}
+
+    public double getProbability(int sentence, int sentimentClass)
+    {
+        return probabilities[sentence * CLASSES + sentimentClass];
+    }
+}
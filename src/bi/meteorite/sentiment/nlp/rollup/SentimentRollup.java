@@ -13,18 +13,54 @@ import java.util.List;
  * Created by cstella on 3/25/14.
  */
 public enum SentimentRollup implements ISentimentRollup {
-    SIMPLE_VOTE(new SimpleVoteRollup())
-    ,AVERAGE_PROBABILITIES(new AverageProbabilitiesRollup())
-    , LAST_SENTENCE_WINS(new LastSentenceWins())
-    , LONGEST_SENTENCE_WINS(new LongestSentenceWins())
-    , WILSON_SCORE(new WilsonScore())
+    SIMPLE_VOTE(new SimpleVoteRollup(), "Simple Vote Rollup")
+    ,AVERAGE_PROBABILITIES(new AverageProbabilitiesRollup(), "Average Probabilities Rollup")
+    , LAST_SENTENCE_WINS(new LastSentenceWins(), "Last Sentence Wins")
+    , LONGEST_SENTENCE_WINS(new LongestSentenceWins(), "Longest Sentence Wins")
+    , WILSON_SCORE(new WilsonScore(), "Wilson Score")
     ;
 
     private ISentimentRollup proxy;
-    SentimentRollup(ISentimentRollup proxy) { this.proxy = proxy;}
+    private String description;
+    SentimentRollup(ISentimentRollup proxy, String description) { this.proxy = proxy; this.description = description;}
+
+    /**
+     * @return the name the step settings use for this rollup
+     */
+    public String getDescription() { return description;}
+
+    /**
+     * @return the rollup with the given description, or null if there is none
+     */
+    public static SentimentRollup fromDescription(String description)
+    {
+        for(SentimentRollup rollup : values())
+        {
+            if(rollup.description.equals(description))
+            {
+                return rollup;
+            }
+        }
+        return null;
+    }
 
     @Override
     public SentimentClass apply(List<Sentence> input) {
         return proxy.apply(input);
     }
-}
\ No newline at end of file
+
+    @Override
+    public SentimentClass apply(SentenceBatch input) {
+        return proxy.apply(input);
+    }
+
+    @Override
+    public void apply(SentenceBlock input, SentimentClass[] results) {
+        proxy.apply(input, results);
+    }
+
+    @Override
+    public ISentimentAccumulator newAccumulator() {
+        return proxy.newAccumulator();
+    }
+}
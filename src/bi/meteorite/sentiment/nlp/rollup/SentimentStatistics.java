@@ -0,0 +1,88 @@
+package bi.meteorite.sentiment.nlp.rollup;
+
+import bi.meteorite.sentiment.nlp.SentimentClass;
+import bi.meteorite.sentiment.nlp.rollup.strategy.WilsonScore;
+
+/**
+ * Folds the sentences of a document into numbers rather than a class: the mean probability of every
+ * class and a score, the Wilson lower bound on the share of positive sentences at the default power.
+ * Counted as positive are the sentences {@link WilsonScore} counts as positive.
+ *
+ * Like every accumulator this is not thread-safe; {@link #getStatistics()} hands out a copy.
+ */
+public class SentimentStatistics implements ISentimentAccumulator
+{
+    private static final int CLASSES = SentimentClass.count();
+
+    /**
+     * The index of the score in {@link #getStatistics()}, after the mean probability of every class.
+     */
+    public static final int SCORE = CLASSES;
+
+    public static final int COUNT = CLASSES + 1;
+
+    private final double[] probabilities = new double[CLASSES];
+    private int sentences;
+    private int positive;
+
+    @Override
+    public void begin()
+    {
+        for(int i = 0;i < CLASSES;++i)
+        {
+            probabilities[i] = 0;
+        }
+        sentences = 0;
+        positive = 0;
+    }
+
+    @Override
+    public void add(int sentimentClass, double[] sentenceProbabilities, int length)
+    {
+        for(int i = 0;i < CLASSES;++i)
+        {
+            probabilities[i] += sentenceProbabilities[i];
+        }
+        sentences++;
+        if(sentimentClass >= 2)
+        {
+            positive++;
+        }
+    }
+
+    /**
+     * @return the class with the highest mean probability, null for a document without sentences
+     */
+    @Override
+    public SentimentClass finish()
+    {
+        if(sentences == 0)
+        {
+            return null;
+        }
+        int best = 0;
+        for(int i = 1;i < CLASSES;++i)
+        {
+            if(probabilities[i] > probabilities[best])
+            {
+                best = i;
+            }
+        }
+        return SentimentClass.getSpecific(best);
+    }
+
+    /**
+     * @return the mean probability of every class, indexed by {@link SentimentClass#getIndex()}, followed by
+     *         the score at {@link #SCORE}; all 0 for a document without sentences
+     */
+    public double[] getStatistics()
+    {
+        double[] ret = new double[COUNT];
+        for(int i = 0;i < CLASSES && sentences > 0;++i)
+        {
+            ret[i] = probabilities[i] / sentences;
+        }
+        ret[SCORE] = WilsonScore.ci_lower_bound(positive, sentences, WilsonScore.DEFAULT_POWER);
+        return ret;
+    }
+}
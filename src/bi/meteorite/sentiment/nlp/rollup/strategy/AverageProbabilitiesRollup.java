@@ -2,40 +2,97 @@ package bi.meteorite.sentiment.nlp.rollup.strategy;
 
 
 import bi.meteorite.sentiment.nlp.SentimentClass;
-import bi.meteorite.sentiment.nlp.rollup.ISentimentRollup;
-import bi.meteorite.sentiment.nlp.rollup.Sentence;
-
-import java.util.List;
+import bi.meteorite.sentiment.nlp.rollup.AbstractSentimentRollup;
+import bi.meteorite.sentiment.nlp.rollup.SentenceBatch;
+import bi.meteorite.sentiment.nlp.rollup.SentenceBlock;
 
 /**
  * Created by cstella on 3/25/14.
+ *
+ * Picks the class with the highest weighted sum of probabilities over the end of the document.  By
+ * default every class weighs the same and the first half of the document is skipped.
  */
-public class AverageProbabilitiesRollup  implements ISentimentRollup {
+public class AverageProbabilitiesRollup extends AbstractSentimentRollup {
+
+    public static final double DEFAULT_SKIP = 0.5;
+
+    private final double[] weights;
+    private final double skip;
+
+    public AverageProbabilitiesRollup()
+    {
+        this(new double[] {1, 1, 1, 1, 1}, DEFAULT_SKIP);
+    }
+
+    /**
+     * @param weights the weight of each class, indexed by {@link SentimentClass#getIndex()}
+     * @param skip the share of the sentences at the start of the document to ignore, from 0 to 1
+     */
+    public AverageProbabilitiesRollup(double[] weights, double skip)
+    {
+        if(weights.length != SentimentClass.count())
+        {
+            throw new IllegalArgumentException("Expected " + SentimentClass.count() + " weights, got " + weights.length);
+        }
+        if(skip < 0 || skip >= 1)
+        {
+            throw new IllegalArgumentException("The share of sentences to skip must be in [0, 1), got " + skip);
+        }
+        this.weights = weights.clone();
+        this.skip = skip;
+    }
+
+    public double[] getWeights() { return weights.clone();}
+
+    public double getSkip() { return skip;}
 
     @Override
-    public SentimentClass apply(List<Sentence> input)
+    public void apply(SentenceBlock input, SentimentClass[] results)
     {
-        double[] weights = new double[] {1, 1, 1, 1, 1};
-        double[] probs = new double[SentimentClass.values().length];
-        SentimentClass dominantClass = null;
-        int idx = 0;
-        for(Sentence inputSentence : input)
+        for(int document = 0;document < input.getDocumentCount();++document)
         {
-            if(idx++ < input.size() / 2) continue;
-            for(int i = 0;i < probs.length;++i)
+            int start = input.getStart(document);
+            int end = input.getEnd(document);
+            int first = start + (int) ((end - start) * skip);
+            int dominantClass = -1;
+            double max = -1;
+            for(int i = 0;i < weights.length;++i)
             {
-                probs[i] += weights[i] * inputSentence.getSentimentProbabilities().get(SentimentClass.values()[i]);
+                double prob = 0;
+                for(int sentence = first;sentence < end;++sentence)
+                {
+                    prob += weights[i] * input.getProbability(sentence, i);
+                }
+                if(prob > max)
+                {
+                    max = prob;
+                    dominantClass = i;
+                }
             }
+            results[document] = SentimentClass.getSpecific(dominantClass);
         }
+    }
+
+    @Override
+    public SentimentClass apply(SentenceBatch input)
+    {
+        // only the end of the document counts
+        int first = (int) (input.size() * skip);
+        SentimentClass dominantClass = null;
         double max = -1;
-        for(int i = 0;i < probs.length;++i)
+        for(int i = 0;i < SentimentClass.count();++i)
         {
-            if(probs[i] > max)
+            double prob = 0;
+            for(int sentence = first;sentence < input.size();++sentence)
+            {
+                prob += weights[i] * input.getProbability(sentence, i);
+            }
+            if(prob > max)
             {
-                max = probs[i];
-                dominantClass = SentimentClass.values()[i];
+                max = prob;
+                dominantClass = SentimentClass.getSpecific(i);
             }
         }
         return dominantClass;
     }
-}
\ No newline at end of file
+}
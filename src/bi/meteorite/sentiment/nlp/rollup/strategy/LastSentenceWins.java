@@ -1,18 +1,49 @@
 package bi.meteorite.sentiment.nlp.rollup.strategy;
 
 import bi.meteorite.sentiment.nlp.SentimentClass;
-import bi.meteorite.sentiment.nlp.rollup.ISentimentRollup;
-import bi.meteorite.sentiment.nlp.rollup.Sentence;
-
-import java.util.List;
+import bi.meteorite.sentiment.nlp.rollup.AbstractSentimentRollup;
+import bi.meteorite.sentiment.nlp.rollup.ISentimentAccumulator;
+import bi.meteorite.sentiment.nlp.rollup.SentenceBatch;
+import bi.meteorite.sentiment.nlp.rollup.SentenceBlock;
 
 /**
  * Created by cstella on 3/26/14.
  */
-public class LastSentenceWins implements ISentimentRollup {
+public class LastSentenceWins extends AbstractSentimentRollup {
+
+    @Override
+    public SentimentClass apply(SentenceBatch input) {
+        return input.size() == 0 ? null : SentimentClass.getSpecific(input.getSentimentClass(input.size() - 1));
+    }
+
+    @Override
+    public void apply(SentenceBlock input, SentimentClass[] results) {
+        for(int document = 0;document < input.getDocumentCount();++document) {
+            int end = input.getEnd(document);
+            results[document] = end == input.getStart(document) ? null
+                    : SentimentClass.getSpecific(input.getSentimentClass(end - 1));
+        }
+    }
 
     @Override
-    public SentimentClass apply(List<Sentence> input) {
-        return input.get(input.size() - 1).getSentiment();
+    public ISentimentAccumulator newAccumulator() {
+        return new ISentimentAccumulator() {
+            private int last;
+
+            @Override
+            public void begin() {
+                last = -1;
+            }
+
+            @Override
+            public void add(int sentimentClass, double[] probabilities, int length) {
+                last = sentimentClass;
+            }
+
+            @Override
+            public SentimentClass finish() {
+                return last < 0 ? null : SentimentClass.getSpecific(last);
+            }
+        };
     }
-}
\ No newline at end of file
+}
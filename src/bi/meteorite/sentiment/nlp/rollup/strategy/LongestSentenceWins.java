@@ -2,27 +2,74 @@ package bi.meteorite.sentiment.nlp.rollup.strategy;
 
 
 import bi.meteorite.sentiment.nlp.SentimentClass;
-import bi.meteorite.sentiment.nlp.rollup.ISentimentRollup;
-import bi.meteorite.sentiment.nlp.rollup.Sentence;
-
-import java.util.List;
+import bi.meteorite.sentiment.nlp.rollup.AbstractSentimentRollup;
+import bi.meteorite.sentiment.nlp.rollup.ISentimentAccumulator;
+import bi.meteorite.sentiment.nlp.rollup.SentenceBatch;
+import bi.meteorite.sentiment.nlp.rollup.SentenceBlock;
 
 /**
  * Created by cstella on 3/26/14.
  */
-public class LongestSentenceWins implements ISentimentRollup {
+public class LongestSentenceWins extends AbstractSentimentRollup {
 
     @Override
-    public SentimentClass apply(List<Sentence> input) {
+    public SentimentClass apply(SentenceBatch input) {
         int length = 0;
-        Sentence actualSentence = null;
-        for(Sentence in : input)
+        int actualSentence = -1;
+        for(int i = 0;i < input.size();++i)
         {
-            if(in.getSentence().length() > length)
+            if(input.getLength(i) > length)
+            {
+                length = input.getLength(i);
+                actualSentence = i;
+            }
+        }
+        return actualSentence < 0 ? null : SentimentClass.getSpecific(input.getSentimentClass(actualSentence));
+    }
+
+    @Override
+    public void apply(SentenceBlock input, SentimentClass[] results) {
+        for(int document = 0;document < input.getDocumentCount();++document) {
+            int length = 0;
+            int actualSentence = -1;
+            int end = input.getEnd(document);
+            for(int i = input.getStart(document);i < end;++i)
             {
-                actualSentence = in;
+                if(input.getLength(i) > length)
+                {
+                    length = input.getLength(i);
+                    actualSentence = i;
+                }
             }
+            results[document] = actualSentence < 0 ? null : SentimentClass.getSpecific(input.getSentimentClass(actualSentence));
         }
-        return actualSentence.getSentiment();
     }
-}
\ No newline at end of file
+
+    @Override
+    public ISentimentAccumulator newAccumulator() {
+        return new ISentimentAccumulator() {
+            private int length;
+            private int actualSentiment;
+
+            @Override
+            public void begin() {
+                length = 0;
+                actualSentiment = -1;
+            }
+
+            @Override
+            public void add(int sentimentClass, double[] probabilities, int sentenceLength) {
+                if(sentenceLength > length)
+                {
+                    length = sentenceLength;
+                    actualSentiment = sentimentClass;
+                }
+            }
+
+            @Override
+            public SentimentClass finish() {
+                return actualSentiment < 0 ? null : SentimentClass.getSpecific(actualSentiment);
+            }
+        };
+    }
+}
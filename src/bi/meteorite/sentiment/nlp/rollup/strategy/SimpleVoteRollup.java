@@ -1,46 +1,102 @@
 package bi.meteorite.sentiment.nlp.rollup.strategy;
 
 import bi.meteorite.sentiment.nlp.SentimentClass;
-import bi.meteorite.sentiment.nlp.rollup.ISentimentRollup;
-import bi.meteorite.sentiment.nlp.rollup.Sentence;
+import bi.meteorite.sentiment.nlp.rollup.AbstractSentimentRollup;
+import bi.meteorite.sentiment.nlp.rollup.ISentimentAccumulator;
+import bi.meteorite.sentiment.nlp.rollup.SentenceBatch;
+import bi.meteorite.sentiment.nlp.rollup.SentenceBlock;
 
-import java.util.EnumMap;
-import java.util.List;
+import java.util.Arrays;
 
 /**
  * Created by cstella on 3/25/14.
  */
-public class SimpleVoteRollup implements ISentimentRollup
+public class SimpleVoteRollup extends AbstractSentimentRollup
 {
 
     @Override
-    public SentimentClass apply(List<Sentence> input)
+    public SentimentClass apply(SentenceBatch input)
     {
-        EnumMap<SentimentClass, Integer> sentimentMap = new EnumMap<SentimentClass, Integer>(SentimentClass.class);
-        for(SentimentClass sentimentClass : SentimentClass.values())
+        // count the votes one class at a time so no counter array is needed; ties go to the lower class
+        SentimentClass dominantClass = null;
+        int maxCnt = -1;
+        for(int sentimentClass = 0;sentimentClass < SentimentClass.count();++sentimentClass)
         {
-            sentimentMap.put(sentimentClass, 0);
+            int cnt = 0;
+            for(int i = 0;i < input.size();++i)
+            {
+                if(input.getSentimentClass(i) == sentimentClass)
+                {
+                    cnt++;
+                }
+            }
+            if(cnt > maxCnt)
+            {
+                maxCnt = cnt;
+                dominantClass = SentimentClass.getSpecific(sentimentClass);
+            }
         }
-        for(Sentence in : input)
-        {
+        return dominantClass;
+    }
 
-            Integer cnt = sentimentMap.get(in.getSentiment());
-            if(cnt == null)
+    @Override
+    public void apply(SentenceBlock input, SentimentClass[] results)
+    {
+        int[] votes = new int[SentimentClass.count()];
+        for(int document = 0;document < input.getDocumentCount();++document)
+        {
+            Arrays.fill(votes, 0);
+            int end = input.getEnd(document);
+            for(int i = input.getStart(document);i < end;++i)
             {
-                cnt = 0;
+                votes[input.getSentimentClass(i)]++;
             }
-            sentimentMap.put(in.getSentiment(), cnt + 1);
+            int dominantClass = 0;
+            for(int sentimentClass = 1;sentimentClass < votes.length;++sentimentClass)
+            {
+                if(votes[sentimentClass] > votes[dominantClass])
+                {
+                    dominantClass = sentimentClass;
+                }
+            }
+            results[document] = SentimentClass.getSpecific(dominantClass);
         }
-        SentimentClass dominantClass = null;
-        int maxCnt = -1;
-        for(SentimentClass sentimentClass : SentimentClass.values())
+    }
+
+    @Override
+    public ISentimentAccumulator newAccumulator()
+    {
+        return new ISentimentAccumulator()
         {
-            if(dominantClass == null || sentimentMap.get(sentimentClass) > maxCnt)
+            private final int[] votes = new int[SentimentClass.count()];
+
+            @Override
+            public void begin()
             {
-                maxCnt = sentimentMap.get(sentimentClass);
-                dominantClass = sentimentClass;
+                Arrays.fill(votes, 0);
             }
-        }
-        return dominantClass;
+
+            @Override
+            public void add(int sentimentClass, double[] probabilities, int length)
+            {
+                votes[sentimentClass]++;
+            }
+
+            @Override
+            public SentimentClass finish()
+            {
+                SentimentClass dominantClass = null;
+                int maxCnt = -1;
+                for(int sentimentClass = 0;sentimentClass < votes.length;++sentimentClass)
+                {
+                    if(votes[sentimentClass] > maxCnt)
+                    {
+                        maxCnt = votes[sentimentClass];
+                        dominantClass = SentimentClass.getSpecific(sentimentClass);
+                    }
+                }
+                return dominantClass;
+            }
+        };
     }
-}
\ No newline at end of file
+}
@@ -2,24 +2,31 @@ package bi.meteorite.sentiment.nlp.rollup.strategy;
 
 
 import bi.meteorite.sentiment.nlp.SentimentClass;
-import bi.meteorite.sentiment.nlp.rollup.ISentimentRollup;
-import bi.meteorite.sentiment.nlp.rollup.Sentence;
-
-import java.util.List;
+import bi.meteorite.sentiment.nlp.rollup.AbstractSentimentRollup;
+import bi.meteorite.sentiment.nlp.rollup.ISentimentAccumulator;
+import bi.meteorite.sentiment.nlp.rollup.SentenceBatch;
+import bi.meteorite.sentiment.nlp.rollup.SentenceBlock;
 
 /**
  * Implementation of the Wilson Score pulled from http://stackoverflow.com/questions/4260836/c-sharp-from-ruby-wilson-score
  * and ported to Java.
  *
+ * A document is positive when the lower bound of the confidence interval on its share of positive
+ * sentences is above the threshold.  Both the power of the interval and the threshold can be chosen,
+ * see EvaluateRollupApproaches for a sweep over them.
  */
-public class WilsonScore implements ISentimentRollup {
+public class WilsonScore extends AbstractSentimentRollup {
+
+    public static final double DEFAULT_POWER = 0.975;
+    public static final double DEFAULT_THRESHOLD = .42;
+
+    private static final double[] b = { 1.570796288, 0.03706987906, -0.8364353589e-3, -0.2250947176e-3,
+            0.6841218299e-5, 0.5824238515e-5, -0.104527497e-5,
+            0.8360937017e-7, -0.3231081277e-8, 0.3657763036e-10,
+            0.6936233982e-12 };
 
     private static double pnormaldist(double qn)
     {
-        double[] b = { 1.570796288, 0.03706987906, -0.8364353589e-3, -0.2250947176e-3,
-                0.6841218299e-5, 0.5824238515e-5, -0.104527497e-5,
-                0.8360937017e-7, -0.3231081277e-8, 0.3657763036e-10,
-                0.6936233982e-12 };
 
         if (qn < 0.0 || 1.0 < qn)
             return 0.0;
@@ -41,27 +48,126 @@ public class WilsonScore implements ISentimentRollup {
         return -Math.sqrt(w1 * w3);
     }
 
+    private final double power;
+    private final double threshold;
+    private final double z; // depends on the power only, so it is worked out once
+
+    /**
+     * Documents of up to this many sentences are classified by looking up the precomputed decision for
+     * their positive count instead of working out the bound.
+     */
+    static final int TABLE_SENTENCES = 64;
+
+    /**
+     * The decision for every n up to TABLE_SENTENCES and pos up to n, at n * (n + 1) / 2 + pos.
+     */
+    private final boolean[] positive;
+
+    public WilsonScore() {
+        this(DEFAULT_POWER, DEFAULT_THRESHOLD);
+    }
+
+    /**
+     * @param power the power of the confidence interval
+     * @param threshold the lower bound above which a document is positive
+     */
+    public WilsonScore(double power, double threshold) {
+        this.power = power;
+        this.threshold = threshold;
+        this.z = pnormaldist(1 - power / 2);
+        positive = new boolean[(TABLE_SENTENCES + 1) * (TABLE_SENTENCES + 2) / 2];
+        for(int n = 0;n <= TABLE_SENTENCES;++n)
+        {
+            for(int pos = 0;pos <= n;++pos)
+            {
+                positive[n * (n + 1) / 2 + pos] = lowerBound(pos, n, z) > threshold;
+            }
+        }
+    }
+
+    public double getPower() { return power;}
+
+    public double getThreshold() { return threshold;}
+
     public static double ci_lower_bound(int pos, int n, double power)
+    {
+        return lowerBound(pos, n, pnormaldist(1 - power / 2));
+    }
+
+    private static double lowerBound(int pos, int n, double z)
     {
         if (n == 0)
             return 0.0;
-        double z = pnormaldist(1 - power / 2);
         double phat = 1.0 * pos / n;
         return (phat + z * z / (2 * n) - z * Math.sqrt((phat * (1 - phat) + z * z / (4 * n)) / n)) / (1 + z * z / n);
     }
     @Override
-    public SentimentClass apply(List<Sentence> input) {
+    public SentimentClass apply(SentenceBatch input) {
         int n = input.size();
         int pos = 0;
-        for(Sentence s : input)
+        for(int i = 0;i < n;++i)
         {
-            if(s.getSentiment().getIndex() >= 2)
+            if(input.getSentimentClass(i) >= 2)
             {
                 pos++;
             }
         }
-        double score = ci_lower_bound(pos, n, 0.975);
-        if(score > .42) return SentimentClass.POSITIVE;
+        return classify(pos, n);
+    }
+
+    @Override
+    public void apply(SentenceBlock input, SentimentClass[] results) {
+        for(int document = 0;document < input.getDocumentCount();++document)
+        {
+            int start = input.getStart(document);
+            int end = input.getEnd(document);
+            int pos = 0;
+            for(int i = start;i < end;++i)
+            {
+                if(input.getSentimentClass(i) >= 2)
+                {
+                    pos++;
+                }
+            }
+            results[document] = classify(pos, end - start);
+        }
+    }
+
+    private SentimentClass classify(int pos, int n) {
+        if(n <= TABLE_SENTENCES)
+        {
+            return positive[n * (n + 1) / 2 + pos] ? SentimentClass.POSITIVE : SentimentClass.NEGATIVE;
+        }
+        double score = lowerBound(pos, n, z);
+        if(score > threshold) return SentimentClass.POSITIVE;
         else return SentimentClass.NEGATIVE;
     }
-}
\ No newline at end of file
+
+    @Override
+    public ISentimentAccumulator newAccumulator() {
+        return new ISentimentAccumulator() {
+            private int n;
+            private int pos;
+
+            @Override
+            public void begin() {
+                n = 0;
+                pos = 0;
+            }
+
+            @Override
+            public void add(int sentimentClass, double[] probabilities, int length) {
+                n++;
+                if(sentimentClass >= 2)
+                {
+                    pos++;
+                }
+            }
+
+            @Override
+            public SentimentClass finish() {
+                return classify(pos, n);
+            }
+        };
+    }
+}
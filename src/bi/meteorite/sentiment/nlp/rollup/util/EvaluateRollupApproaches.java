@@ -1,97 +1,339 @@
 package bi.meteorite.sentiment.nlp.rollup.util;
 
 import bi.meteorite.sentiment.nlp.SentimentClass;
-import bi.meteorite.sentiment.nlp.rollup.Sentence;
+import bi.meteorite.sentiment.nlp.rollup.ISentimentRollup;
+import bi.meteorite.sentiment.nlp.rollup.SentenceBlock;
 import bi.meteorite.sentiment.nlp.rollup.SentimentRollup;
+import bi.meteorite.sentiment.nlp.rollup.strategy.AverageProbabilitiesRollup;
+import bi.meteorite.sentiment.nlp.rollup.strategy.WilsonScore;
+import com.google.common.base.Charsets;
 import com.google.common.base.Splitter;
+import com.google.common.base.Throwables;
 import com.google.common.collect.Iterables;
 
 import java.io.*;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.*;
 
 /**
  * This is a utility that is intended to evaluate rollup approaches from some pre-processed data.
  */
 public class EvaluateRollupApproaches
 {
-    private static class Document
-    {
-        List<Sentence> sentences;
-        SentimentClass actualSentiment;
-    }
-    private static void addFile(File inputFile, List<Document> documents, SentimentClass actualSentiment) throws IOException {
+    /**
+     * The corpus written next to pos.out and neg.out the first time they are evaluated.
+     */
+    public static final String CORPUS_FILE = "rollup.corpus";
+
+    private static void addFile(File inputFile, SentenceCorpusWriter writer, SentimentClass actualSentiment) throws IOException {
         BufferedReader reader = new BufferedReader(new FileReader(inputFile));
-        for(String line = null; (line = reader.readLine()) != null;)
+        try
         {
-            Iterable<String> sentences = Splitter.on('\u0001').split(line);
-            Document document = new Document();
-            document.actualSentiment = actualSentiment;
-            document.sentences = new ArrayList<Sentence>();
-            for(String sentenceStr : sentences)
+            double[] probs = new double[SentimentClass.count()];
+            for(String line = null; (line = reader.readLine()) != null;)
             {
-                Iterable<String> split = Splitter.on('\u0002').split(sentenceStr);
-                String content = Iterables.getFirst(split, "");
-                Iterable<String> tmpStr= Splitter.on(',').split(Iterables.getLast(split, ""));
-                SentimentClass sentenceClass = SentimentClass.valueOf(Iterables.getFirst(tmpStr, ""));
-                Iterable<String> probsStr = Splitter.on(';').split(Iterables.getLast(tmpStr, ""));
-                double[] probs = new double[SentimentClass.values().length];
-                int i = 0;
-                for(String probStr : probsStr)
+                Iterable<String> sentences = Splitter.on('\u0001').split(line);
+                writer.beginDocument(actualSentiment);
+                for(String sentenceStr : sentences)
                 {
-                    probs[i++] = Double.parseDouble(probStr);
-                }
+                    if(sentenceStr.isEmpty())
+                    {
+                        // a document without sentences
+                        continue;
+                    }
+                    Iterable<String> split = Splitter.on('\u0002').split(sentenceStr);
+                    String content = Iterables.getFirst(split, "");
+                    Iterable<String> tmpStr= Splitter.on(',').split(Iterables.getLast(split, ""));
+                    SentimentClass sentenceClass = SentimentClass.valueOf(Iterables.getFirst(tmpStr, ""));
+                    Iterable<String> probsStr = Splitter.on(';').split(Iterables.getLast(tmpStr, ""));
+                    int i = 0;
+                    for(String probStr : probsStr)
+                    {
+                        probs[i++] = Double.parseDouble(probStr);
+                    }
 
-                Sentence sentence = new Sentence(probs, content, sentenceClass);
-                document.sentences.add(sentence);
+                    writer.add(sentenceClass.getIndex(), probs, content);
+                }
             }
-            documents.add(document);
+        }
+        finally
+        {
+            reader.close();
         }
     }
 
-    public static void evaluate(SentimentRollup rollup, List<Document> documents )
+    /**
+     * Converts the pos.out and neg.out text files written by {@link GenerateTrainingData} into a binary
+     * {@link SentenceCorpus}.  On failure no corpus is left behind, so the next run converts again.
+     *
+     * @param doubles true to keep the probabilities as doubles, false to store floats
+     * @param text true to keep the text of the sentences
+     */
+    public static void convert(File baseDir, File corpus, boolean doubles, boolean text) throws IOException
     {
-        int numSentiments = SentimentClass.values().length;
-        int [][] errorClasses = new int[numSentiments][numSentiments];
-        for(Document document : documents)
+        SentenceCorpusWriter writer = new SentenceCorpusWriter(corpus, doubles, text);
+        boolean converted = false;
+        try
         {
-            SentimentClass actual = document.actualSentiment;
-            SentimentClass predicted = SentimentClass.getGeneral(rollup.apply(document.sentences).getIndex());
+            addFile(new File(baseDir, "pos.out"), writer, SentimentClass.POSITIVE);
+            addFile(new File(baseDir, "neg.out"), writer, SentimentClass.NEGATIVE);
+            writer.close();
+            converted = true;
+        }
+        finally
+        {
+            if(!converted)
+            {
+                writer.abort();
+            }
+        }
+    }
+
+    /**
+     * Documents are read and rolled up in blocks of this size, so that each rollup runs over a whole
+     * {@link SentenceBlock} at once and is timed per block, which keeps the cost of reading the clock out
+     * of the measurement.
+     */
+    private static final int BLOCK = 64;
+
+    /**
+     * The number of chunks given to each thread, so that a slow chunk does not leave the others idle.
+     */
+    private static final int CHUNKS_PER_THREAD = 8;
 
-            errorClasses[actual.getIndex()][predicted.getIndex()]++;
+    /**
+     * Evaluates every rollup in a single pass over the corpus: each document is read once and handed to
+     * all of the rollups.  The corpus is split into chunks that are evaluated on the given number of
+     * threads, each into its own confusion matrices, which are merged at the end.
+     *
+     * @param names the name of each rollup in the result
+     */
+    public static RollupEvaluation evaluate(final SentenceCorpus corpus, final String[] names
+            , final ISentimentRollup[] rollups, int threads) throws IOException
+    {
+        int documents = corpus.getDocumentCount();
+        int chunks = Math.max(1, Math.min(documents / BLOCK, threads * CHUNKS_PER_THREAD));
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try
+        {
+            List<Future<RollupEvaluation>> results = new ArrayList<Future<RollupEvaluation>>();
+            for(int chunk = 0;chunk < chunks;++chunk)
+            {
+                final int from = (int) ((long) documents * chunk / chunks);
+                final int to = (int) ((long) documents * (chunk + 1) / chunks);
+                results.add(executor.submit(new Callable<RollupEvaluation>()
+                {
+                    @Override
+                    public RollupEvaluation call()
+                    {
+                        return evaluate(corpus, names, rollups, from, to);
+                    }
+                }));
+            }
+            RollupEvaluation evaluation = new RollupEvaluation(names);
+            for(Future<RollupEvaluation> result : results)
+            {
+                evaluation.merge(result.get());
+            }
+            return evaluation;
+        }
+        catch(InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException();
+        }
+        catch(ExecutionException e)
+        {
+            Throwables.propagateIfPossible(e.getCause(), IOException.class);
+            throw new IOException(e.getCause());
+        }
+        finally
+        {
+            executor.shutdownNow();
         }
+    }
 
-        int n = 0;
-        int correct = 0;
-        for(int i = 0;i < SentimentClass.values().length;++i)
+    private static RollupEvaluation evaluate(SentenceCorpus corpus, String[] names, ISentimentRollup[] rollups
+            , int from, int to)
+    {
+        RollupEvaluation evaluation = new RollupEvaluation(names);
+        SentenceBlock block = new SentenceBlock(BLOCK, BLOCK * 16);
+        int[] actual = new int[BLOCK];
+        SentimentClass[] predicted = new SentimentClass[BLOCK];
+        double[] probs = new double[SentimentClass.count()];
+        for(int document = from;document < to;)
         {
-            for(int j = 0;j < SentimentClass.values().length;++j)
+            block.clear();
+            for(;document < to && block.getDocumentCount() < BLOCK;++document)
             {
-                if(i == j)
+                if(corpus.getSentenceCount(document) == 0)
                 {
-                    correct += errorClasses[i][j];
+                    // nothing to roll up
+                    continue;
                 }
-                n += errorClasses[i][j];
-                if(errorClasses[i][j] == 0)
+                actual[block.getDocumentCount()] = corpus.getLabel(document);
+                corpus.append(document, block, probs);
+            }
+            int size = block.getDocumentCount();
+            evaluation.addDocuments(size);
+            for(int rollup = 0;rollup < rollups.length;++rollup)
+            {
+                long start = System.nanoTime();
+                rollups[rollup].apply(block, predicted);
+                evaluation.addNanos(rollup, System.nanoTime() - start);
+                for(int i = 0;i < size;++i)
                 {
-                    continue;
+                    evaluation.add(rollup, actual[i], SentimentClass.getGeneral(predicted[i].getIndex()).getIndex());
                 }
-                System.out.println(SentimentClass.values()[i] + "," + SentimentClass.values()[j] + " => " + errorClasses[i][j]);
             }
         }
-        System.out.println("Accuracy: " + (1.0*correct) / n);
+        return evaluation;
     }
 
+    /**
+     * The grid swept by {@link #sweep(SentenceCorpus, int)}.
+     */
+    private static final double[] WILSON_POWERS = {0.9, 0.925, 0.95, 0.975, 0.99};
+    private static final double WILSON_MIN_THRESHOLD = 0.3;
+    private static final double WILSON_MAX_THRESHOLD = 0.6;
+    private static final double WILSON_THRESHOLD_STEP = 0.02;
+    private static final double[] AVERAGE_SKIPS = {0, 0.25, 0.5, 0.75};
+    private static final double[] AVERAGE_NEUTRAL_WEIGHTS = {0, 0.5, 1};
+    private static final double[] AVERAGE_EXTREME_WEIGHTS = {1, 1.5, 2};
+
+    /**
+     * Evaluates a grid of {@link WilsonScore} powers and thresholds and of {@link AverageProbabilitiesRollup}
+     * skips and class weights, all in the same single pass over the stored sentence predictions.
+     *
+     * @return the evaluation of every setting, the Wilson Score ones first
+     */
+    public static RollupEvaluation sweep(SentenceCorpus corpus, int threads) throws IOException
+    {
+        List<String> names = new ArrayList<String>();
+        List<ISentimentRollup> rollups = new ArrayList<ISentimentRollup>();
+        for(double power : WILSON_POWERS)
+        {
+            // stepping an int avoids accumulating rounding errors in the threshold
+            int steps = (int) Math.round((WILSON_MAX_THRESHOLD - WILSON_MIN_THRESHOLD) / WILSON_THRESHOLD_STEP);
+            for(int step = 0;step <= steps;++step)
+            {
+                double threshold = WILSON_MIN_THRESHOLD + step * WILSON_THRESHOLD_STEP;
+                names.add(String.format(Locale.ROOT, "WILSON_SCORE(power=%s,threshold=%.2f)", power, threshold));
+                rollups.add(new WilsonScore(power, threshold));
+            }
+        }
+        for(double skip : AVERAGE_SKIPS)
+        {
+            for(double neutral : AVERAGE_NEUTRAL_WEIGHTS)
+            {
+                for(double extreme : AVERAGE_EXTREME_WEIGHTS)
+                {
+                    names.add(String.format(Locale.ROOT, "AVERAGE_PROBABILITIES(skip=%s,weights=%s;1;%s;1;%s)"
+                            , skip, extreme, neutral, extreme));
+                    rollups.add(new AverageProbabilitiesRollup(new double[] {extreme, 1, neutral, 1, extreme}, skip));
+                }
+            }
+        }
+        return evaluate(corpus, names.toArray(new String[names.size()])
+                , rollups.toArray(new ISentimentRollup[rollups.size()]), threads);
+    }
+
+    /**
+     * Evaluates every {@link SentimentRollup} and prints a JSON report with the accuracy, confusion
+     * matrix and cost of each, see {@link RollupEvaluation#writeJson(Appendable)}.  The number of threads
+     * is taken from the threads system property and defaults to the number of processors.
+     *
+     * With -sweep as the first argument a grid of rollup settings is evaluated instead, see
+     * {@link #sweep(SentenceCorpus, int)}, and the best setting of each strategy is printed to standard
+     * error.
+     *
+     * @param argv a corpus file, or the directory holding pos.out and neg.out, which are converted into
+     *             a corpus there on first use, optionally followed by the file to write the report to
+     */
     public static void main(String... argv) throws IOException {
-        File baseDir = new File(argv[0]);
-        List<Document> documents = new ArrayList<Document>();
-        addFile(new File(baseDir, "pos.out"), documents, SentimentClass.POSITIVE);
-        addFile(new File(baseDir, "neg.out"), documents, SentimentClass.NEGATIVE);
-        for(SentimentRollup rollup : SentimentRollup.values())
-        {
-            System.out.println("EVALUATING " + rollup);
-            evaluate(rollup, documents);
-            System.out.println("");
+        boolean sweep = argv.length > 0 && "-sweep".equals(argv[0]);
+        if(sweep)
+        {
+            argv = Arrays.copyOfRange(argv, 1, argv.length);
+        }
+        File corpusFile = new File(argv[0]);
+        if(corpusFile.isDirectory())
+        {
+            File baseDir = corpusFile;
+            corpusFile = new File(baseDir, CORPUS_FILE);
+            if(corpusFile.lastModified() < Math.max(new File(baseDir, "pos.out").lastModified()
+                    , new File(baseDir, "neg.out").lastModified()))
+            {
+                System.err.println("CONVERTING " + baseDir + " to " + corpusFile);
+                convert(baseDir, corpusFile, true, false);
+            }
+        }
+        int threads = Integer.getInteger("threads", Runtime.getRuntime().availableProcessors());
+        RollupEvaluation evaluation;
+        SentenceCorpus corpus = SentenceCorpus.open(corpusFile);
+        try
+        {
+            if(sweep)
+            {
+                evaluation = sweep(corpus, threads);
+            }
+            else
+            {
+                SentimentRollup[] rollups = SentimentRollup.values();
+                String[] names = new String[rollups.length];
+                for(int i = 0;i < rollups.length;++i)
+                {
+                    names[i] = rollups[i].name();
+                }
+                evaluation = evaluate(corpus, names, rollups, threads);
+            }
+        }
+        finally
+        {
+            corpus.close();
+        }
+        report(evaluation, argv.length > 1 ? new File(argv[1]) : null);
+        if(sweep)
+        {
+            int wilson = 0;
+            while(evaluation.getNames()[wilson].startsWith(SentimentRollup.WILSON_SCORE.name()))
+            {
+                wilson++;
+            }
+            printBest(evaluation, 0, wilson);
+            printBest(evaluation, wilson, evaluation.getNames().length);
+        }
+    }
+
+    private static void printBest(RollupEvaluation evaluation, int first, int last)
+    {
+        int best = evaluation.getBest(first, last);
+        System.err.println("BEST " + evaluation.getNames()[best] + " accuracy=" + evaluation.getAccuracy(best)
+                + " ns/document=" + evaluation.getNanosPerDocument(best));
+    }
+
+    /**
+     * Writes the JSON report to the file, or to standard out if there is none.
+     */
+    static void report(RollupEvaluation evaluation, File file) throws IOException
+    {
+        if(file == null)
+        {
+            evaluation.writeJson(System.out);
+            System.out.flush();
+            return;
+        }
+        Writer writer = new OutputStreamWriter(new FileOutputStream(file), Charsets.UTF_8);
+        try
+        {
+            evaluation.writeJson(writer);
+        }
+        finally
+        {
+            writer.close();
         }
     }
 }
@@ -2,6 +2,7 @@ package bi.meteorite.sentiment.nlp.rollup.util;
 
 
 import bi.meteorite.sentiment.nlp.SentimentClass;
+import bi.meteorite.sentiment.nlp.SharedPipeline;
 import com.google.common.base.Function;
 import com.google.common.base.Joiner;
 import com.google.common.collect.Iterables;
@@ -17,6 +18,7 @@ import org.ejml.simple.SimpleMatrix;
 
 import java.io.*;
 import java.util.*;
+import java.util.concurrent.*;
 
 /**
  * This generates training data for the rollup approach analysis
@@ -46,7 +48,7 @@ public class GenerateTrainingData
             List<Double> probs = new ArrayList<Double>();
             {
                 SimpleMatrix mat = RNNCoreAnnotations.getPredictions(sentimentTree);
-                for(int i = 0;i < SentimentClass.values().length;++i)
+                for(int i = 0;i < SentimentClass.count();++i)
                 {
                     probs.add(mat.get(i));
                 }
@@ -57,49 +59,244 @@ public class GenerateTrainingData
         return ret;
     }
 
-    public static void write(StanfordCoreNLP pipeline, String inputFile, String outputFile) throws IOException
+    /**
+     * The number of lines written between two checkpoints.
+     */
+    private static final int CHECKPOINT_LINES = 1000;
+
+    /**
+     * How many documents each worker may have queued or finished but not yet written, which bounds the
+     * memory used while keeping the workers busy.
+     */
+    private static final int QUEUED_PER_THREAD = 4;
+
+    private static String toLine(StanfordCoreNLP pipeline, String document)
+    {
+        Iterable<String> lines = Iterables.transform(getSentiment(pipeline, document)
+                , new Function<Map.Entry<String, String>, String>()
+        {
+            @Override
+            public String apply(Map.Entry<String, String> input) {
+                return input.getKey() + "\u0002" + input.getValue();
+            }
+        });
+        return Joiner.on('\u0001').join(lines);
+    }
+
+    /**
+     * Scores every line of the input file on the given number of threads, each with its own pipeline,
+     * and writes the results in input order.
+     *
+     * Every {@value #CHECKPOINT_LINES} lines the output is flushed and the number of lines and bytes
+     * written so far are saved next to it in a .checkpoint file.  If that file is there when this
+     * starts, the output is cut back to the checkpoint and the run resumes from the following line.  The
+     * checkpoint is removed once the whole input has been written.
+     */
+    public static void write(final Properties props, String inputFile, String outputFile, int threads) throws IOException
     {
+        File checkpoint = new File(outputFile + ".checkpoint");
+        long done = 0;
+        long bytes = 0;
+        Properties state = loadCheckpoint(checkpoint);
+        if(state != null)
+        {
+            done = Long.parseLong(state.getProperty("lines"));
+            bytes = Long.parseLong(state.getProperty("bytes"));
+            System.out.println("Resuming after line " + done);
+        }
+
+        FileOutputStream out = new FileOutputStream(new File(outputFile), true);
+        // drops whatever was written after the checkpoint, or everything on a fresh run
+        out.getChannel().truncate(bytes);
+        PrintWriter writer = new PrintWriter(new BufferedWriter(new OutputStreamWriter(out)));
         BufferedReader reader = new BufferedReader(new FileReader(new File(inputFile)));
-        PrintWriter writer = new PrintWriter(new File(outputFile));
-        String line =null;
-        int cnt = 0;
-        while( (line = reader.readLine()) != null)
+
+        final ThreadLocal<StanfordCoreNLP> pipelines = new ThreadLocal<StanfordCoreNLP>()
         {
-            cnt++;
-            if(cnt % 10 == 0)
+            @Override
+            protected StanfordCoreNLP initialValue()
             {
-                System.out.print(".");
+                // the models themselves are loaded once and shared through the CoreNLP annotator pool
+                return new StanfordCoreNLP(props);
             }
-            if(cnt % 100 == 0)
+        };
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        Deque<Future<String>> pending = new ArrayDeque<Future<String>>();
+        try
+        {
+            long cnt = 0;
+            long written = done;
+            for(String line = null; (line = reader.readLine()) != null;)
             {
-                System.out.println("");
+                if(cnt++ < done)
+                {
+                    continue;
+                }
+                final String document = line;
+                pending.add(executor.submit(new Callable<String>()
+                {
+                    @Override
+                    public String call()
+                    {
+                        return toLine(pipelines.get(), document);
+                    }
+                }));
+                if(pending.size() >= threads * QUEUED_PER_THREAD)
+                {
+                    writer.println(take(pending.poll()));
+                    checkpoint(writer, out, checkpoint, ++written);
+                }
             }
-            Iterable<String> lines = Iterables.transform(getSentiment(pipeline, line)
-                    , new Function<Map.Entry<String, String>, String>()
+            while(!pending.isEmpty())
             {
-                @Override
-                public String apply(Map.Entry<String, String> input) {
-                    return input.getKey() + "\u0002" + input.getValue();
-                }
-            });
-            String outLine = Joiner.on('\u0001').join(lines);
-            writer.println(outLine);
+                writer.println(take(pending.poll()));
+                checkpoint(writer, out, checkpoint, ++written);
+            }
+            writer.flush();
+            if(writer.checkError())
+            {
+                throw new IOException("Unable to write " + outputFile);
+            }
+        }
+        finally
+        {
+            executor.shutdownNow();
+            reader.close();
+            writer.close();
+        }
+        checkpoint.delete();
+        new File(checkpoint.getPath() + ".tmp").delete();
+        System.out.println("");
+    }
+
+    /**
+     * @return the state saved by the last checkpoint, or null if there is none.  A run stopped between
+     *         removing the old checkpoint and renaming the new one into place left the new one in the
+     *         .tmp file, complete, so that one is used when the checkpoint itself is missing.
+     */
+    private static Properties loadCheckpoint(File checkpoint) throws IOException
+    {
+        if(checkpoint.exists())
+        {
+            return load(checkpoint);
+        }
+        File tmp = new File(checkpoint.getPath() + ".tmp");
+        if(!tmp.exists())
+        {
+            return null;
+        }
+        Properties state = load(tmp);
+        // a run stopped while writing its very first checkpoint leaves an incomplete one
+        if(state.getProperty("lines") == null || state.getProperty("bytes") == null)
+        {
+            return null;
+        }
+        return state;
+    }
+
+    private static String take(Future<String> result) throws IOException
+    {
+        try
+        {
+            return result.get();
+        }
+        catch(InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException();
+        }
+        catch(ExecutionException e)
+        {
+            if(e.getCause() instanceof RuntimeException)
+            {
+                throw (RuntimeException) e.getCause();
+            }
+            if(e.getCause() instanceof Error)
+            {
+                throw (Error) e.getCause();
+            }
+            throw new IOException(e.getCause());
+        }
+    }
+
+    /**
+     * Prints progress and, every {@value #CHECKPOINT_LINES} lines, flushes the output and records how
+     * far it got.
+     */
+    private static void checkpoint(PrintWriter writer, FileOutputStream out, File checkpoint, long written) throws IOException
+    {
+        if(written % 10 == 0)
+        {
+            System.out.print(".");
+        }
+        if(written % 100 == 0)
+        {
+            System.out.println("");
+        }
+        if(written % CHECKPOINT_LINES != 0)
+        {
+            return;
         }
         writer.flush();
-        writer.close();
+        if(writer.checkError())
+        {
+            throw new IOException("Unable to write the output");
+        }
+        Properties state = new Properties();
+        state.setProperty("lines", Long.toString(written));
+        state.setProperty("bytes", Long.toString(out.getChannel().size()));
+        // written aside and renamed so an interruption never leaves a partial checkpoint
+        File tmp = new File(checkpoint.getPath() + ".tmp");
+        Writer stateWriter = new FileWriter(tmp);
+        try
+        {
+            state.store(stateWriter, null);
+        }
+        finally
+        {
+            stateWriter.close();
+        }
+        checkpoint.delete();
+        if(!tmp.renameTo(checkpoint))
+        {
+            throw new IOException("Unable to write " + checkpoint);
+        }
     }
 
-    public static void main(String ... argv) throws IOException
+    private static Properties load(File file) throws IOException
     {
         Properties props = new Properties();
-        //specify the annotators that we want to use to annotate the text.  We need a tokenized sentence with POS tags to extract sentiment.
-        //this forms our pipeline
-        props.setProperty("annotators", "tokenize, ssplit, parse, sentiment");
-        StanfordCoreNLP pipeline = new StanfordCoreNLP(props);
+        Reader in = new FileReader(file);
+        try
+        {
+            props.load(in);
+        }
+        finally
+        {
+            in.close();
+        }
+        return props;
+    }
+
+    /**
+     * @param argv the directory holding pos.dat and neg.dat, optionally followed by a properties file
+     *             with CoreNLP properties to use on top of the defaults.  The number of worker threads
+     *             is taken from the threads system property and defaults to the number of processors.
+     */
+    public static void main(String ... argv) throws IOException
+    {
+        Properties overrides = new Properties();
+        if(argv.length > 1)
+        {
+            overrides = load(new File(argv[1]));
+        }
+        Properties props = SharedPipeline.withDefaults(overrides);
+        int threads = Integer.getInteger("threads", Runtime.getRuntime().availableProcessors());
         String baseDir = argv[0];
         System.out.println("Processing POS");
-        write(pipeline, baseDir + "/pos.dat", baseDir + "/pos.out");
+        write(props, baseDir + "/pos.dat", baseDir + "/pos.out", threads);
 
         System.out.println("Processing NEG");
-        write(pipeline, baseDir + "/neg.dat", baseDir + "/neg.out");        }
+        write(props, baseDir + "/neg.dat", baseDir + "/neg.out", threads);
+    }
 }
@@ -0,0 +1,168 @@
+package bi.meteorite.sentiment.nlp.rollup.util;
+
+import bi.meteorite.sentiment.nlp.SentimentClass;
+
+import java.io.IOException;
+import java.util.Locale;
+
+/**
+ * The confusion matrix and the time spent by each of a set of rollups evaluated over the same documents.
+ *
+ * An instance is filled by one thread; the partial results of several threads are combined with
+ * {@link #merge(RollupEvaluation)}.
+ */
+public class RollupEvaluation
+{
+    private static final int CLASSES = SentimentClass.count();
+
+    private final String[] names;
+    private final int[][][] confusion; // [rollup][actual][predicted]
+    private final long[] nanos;
+    private int documents;
+
+    public RollupEvaluation(String[] names)
+    {
+        this.names = names;
+        confusion = new int[names.length][CLASSES][CLASSES];
+        nanos = new long[names.length];
+    }
+
+    void add(int rollup, int actual, int predicted)
+    {
+        confusion[rollup][actual][predicted]++;
+    }
+
+    void addNanos(int rollup, long elapsed)
+    {
+        nanos[rollup] += elapsed;
+    }
+
+    void addDocuments(int count)
+    {
+        documents += count;
+    }
+
+    /**
+     * Adds the counts and times of another evaluation of the same rollups.
+     */
+    public void merge(RollupEvaluation other)
+    {
+        for(int rollup = 0;rollup < names.length;++rollup)
+        {
+            for(int actual = 0;actual < CLASSES;++actual)
+            {
+                for(int predicted = 0;predicted < CLASSES;++predicted)
+                {
+                    confusion[rollup][actual][predicted] += other.confusion[rollup][actual][predicted];
+                }
+            }
+            nanos[rollup] += other.nanos[rollup];
+        }
+        documents += other.documents;
+    }
+
+    public String[] getNames() { return names;}
+
+    public int getDocuments() { return documents;}
+
+    /**
+     * @return the counts indexed by actual then predicted class
+     */
+    public int[][] getConfusion(int rollup) { return confusion[rollup];}
+
+    public double getAccuracy(int rollup)
+    {
+        int n = 0;
+        int correct = 0;
+        for(int actual = 0;actual < CLASSES;++actual)
+        {
+            for(int predicted = 0;predicted < CLASSES;++predicted)
+            {
+                if(actual == predicted)
+                {
+                    correct += confusion[rollup][actual][predicted];
+                }
+                n += confusion[rollup][actual][predicted];
+            }
+        }
+        return n == 0 ? 0 : (1.0 * correct) / n;
+    }
+
+    public double getNanosPerDocument(int rollup)
+    {
+        return documents == 0 ? 0 : (1.0 * nanos[rollup]) / documents;
+    }
+
+    /**
+     * @return the index of the most accurate of the rollups from first to last exclusive, the cheapest
+     *         one on a tie
+     */
+    public int getBest(int first, int last)
+    {
+        int best = first;
+        for(int rollup = first + 1;rollup < last;++rollup)
+        {
+            double accuracy = getAccuracy(rollup);
+            if(accuracy > getAccuracy(best)
+                    || (accuracy == getAccuracy(best) && getNanosPerDocument(rollup) < getNanosPerDocument(best)))
+            {
+                best = rollup;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Writes the evaluation as a JSON object: the class names, the document count and, per rollup, its
+     * name, accuracy, nanoseconds per document and confusion matrix (rows are actual classes, columns
+     * predicted classes).
+     */
+    public void writeJson(Appendable out) throws IOException
+    {
+        out.append("{\n  \"documents\": ").append(Integer.toString(documents)).append(",\n  \"classes\": [");
+        for(int i = 0;i < CLASSES;++i)
+        {
+            out.append(i == 0 ? "" : ", ").append(quote(SentimentClass.getSpecific(i).name()));
+        }
+        out.append("],\n  \"rollups\": [");
+        for(int rollup = 0;rollup < names.length;++rollup)
+        {
+            out.append(rollup == 0 ? "\n" : ",\n");
+            out.append("    {\"name\": ").append(quote(names[rollup]));
+            out.append(", \"accuracy\": ").append(format(getAccuracy(rollup)));
+            out.append(", \"nsPerDocument\": ").append(format(getNanosPerDocument(rollup)));
+            out.append(", \"confusion\": [");
+            for(int actual = 0;actual < CLASSES;++actual)
+            {
+                out.append(actual == 0 ? "[" : ", [");
+                for(int predicted = 0;predicted < CLASSES;++predicted)
+                {
+                    out.append(predicted == 0 ? "" : ", ").append(Integer.toString(confusion[rollup][actual][predicted]));
+                }
+                out.append("]");
+            }
+            out.append("]}");
+        }
+        out.append("\n  ]\n}\n");
+    }
+
+    private static String format(double value)
+    {
+        return String.format(Locale.ROOT, "%.6f", value);
+    }
+
+    private static String quote(String value)
+    {
+        StringBuilder ret = new StringBuilder("\"");
+        for(int i = 0;i < value.length();++i)
+        {
+            char c = value.charAt(i);
+            if(c == '"' || c == '\\')
+            {
+                ret.append('\\');
+            }
+            ret.append(c);
+        }
+        return ret.append('"').toString();
+    }
+}
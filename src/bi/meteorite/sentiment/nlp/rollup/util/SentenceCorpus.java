@@ -0,0 +1,241 @@
+package bi.meteorite.sentiment.nlp.rollup.util;
+
+import bi.meteorite.sentiment.nlp.SentimentClass;
+import bi.meteorite.sentiment.nlp.rollup.SentenceBatch;
+import bi.meteorite.sentiment.nlp.rollup.SentenceBlock;
+import com.google.common.base.Charsets;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * A memory-mapped, read-only corpus of labelled documents and the per sentence predictions made for
+ * them, the binary counterpart of the text files written by {@link GenerateTrainingData}.
+ *
+ * The file is a header followed by one column after another, all big-endian:
+ * <pre>
+ * header            magic, version, flags, classes, documents, sentences (ints)
+ * labels            one byte per document, the index of its actual class
+ * document offsets  documents + 1 ints, the first sentence of every document and the sentence count
+ * sentence classes  one byte per sentence, the index of its predicted class
+ * lengths           one int per sentence
+ * probabilities     classes floats or doubles per sentence, see FLAG_DOUBLES
+ * text offsets      sentences + 1 longs into the text column, only with FLAG_TEXT
+ * text              the UTF-8 text of every sentence, only with FLAG_TEXT
+ * </pre>
+ *
+ * Each column is mapped on its own, so a column is limited to 2 GB.  Only absolute reads are made on
+ * the mapped buffers, which makes an open corpus safe to read from several threads at once.  Nothing
+ * is loaded on open; pages come in from the OS cache as documents are read.
+ */
+public class SentenceCorpus implements Closeable
+{
+    static final int MAGIC = 0x534e5443; // "SNTC"
+    static final int VERSION = 1;
+    static final int HEADER_BYTES = 6 * 4;
+
+    static final int FLAG_DOUBLES = 1;
+    static final int FLAG_TEXT = 2;
+
+    static final int LABELS = 0;
+    static final int DOCUMENT_OFFSETS = 1;
+    static final int SENTENCE_CLASSES = 2;
+    static final int LENGTHS = 3;
+    static final int PROBABILITIES = 4;
+    static final int TEXT_OFFSETS = 5;
+    static final int TEXT = 6;
+    static final int COLUMNS = 7;
+
+    private final RandomAccessFile file;
+    private final int classes;
+    private final int documents;
+    private final int sentences;
+    private final boolean doubles;
+    private final boolean text;
+
+    private final ByteBuffer labels;
+    private final ByteBuffer documentOffsets;
+    private final ByteBuffer sentenceClasses;
+    private final ByteBuffer lengths;
+    private final ByteBuffer probabilities;
+    private final ByteBuffer textOffsets;
+    private final ByteBuffer textBytes;
+
+    private SentenceCorpus(RandomAccessFile file) throws IOException
+    {
+        this.file = file;
+        FileChannel channel = file.getChannel();
+        ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_BYTES);
+        if(header.getInt(0) != MAGIC)
+        {
+            throw new IOException("Not a sentence corpus");
+        }
+        if(header.getInt(4) != VERSION)
+        {
+            throw new IOException("Unsupported sentence corpus version " + header.getInt(4));
+        }
+        int flags = header.getInt(8);
+        classes = header.getInt(12);
+        documents = header.getInt(16);
+        sentences = header.getInt(20);
+        doubles = (flags & FLAG_DOUBLES) != 0;
+        text = (flags & FLAG_TEXT) != 0;
+        if(classes != SentimentClass.count())
+        {
+            throw new IOException("The corpus has " + classes + " classes, expected " + SentimentClass.count());
+        }
+
+        long position = HEADER_BYTES;
+        labels = map(channel, position, documents);
+        position += documents;
+        documentOffsets = map(channel, position, 4L * (documents + 1));
+        position += 4L * (documents + 1);
+        sentenceClasses = map(channel, position, sentences);
+        position += sentences;
+        lengths = map(channel, position, 4L * sentences);
+        position += 4L * sentences;
+        long probabilityBytes = (long) sentences * classes * (doubles ? 8 : 4);
+        probabilities = map(channel, position, probabilityBytes);
+        position += probabilityBytes;
+        if(text)
+        {
+            textOffsets = map(channel, position, 8L * (sentences + 1));
+            position += 8L * (sentences + 1);
+            textBytes = map(channel, position, channel.size() - position);
+        }
+        else
+        {
+            textOffsets = null;
+            textBytes = null;
+        }
+    }
+
+    private static MappedByteBuffer map(FileChannel channel, long position, long size) throws IOException
+    {
+        if(size > Integer.MAX_VALUE)
+        {
+            throw new IOException("Column of " + size + " bytes is larger than can be mapped");
+        }
+        return channel.map(FileChannel.MapMode.READ_ONLY, position, size);
+    }
+
+    public static SentenceCorpus open(File corpus) throws IOException
+    {
+        RandomAccessFile file = new RandomAccessFile(corpus, "r");
+        try
+        {
+            return new SentenceCorpus(file);
+        }
+        catch(IOException e)
+        {
+            file.close();
+            throw e;
+        }
+    }
+
+    public int getDocumentCount() { return documents;}
+
+    public int getSentenceCount() { return sentences;}
+
+    public boolean hasText() { return text;}
+
+    /**
+     * @return the index of the actual class of the document, see {@link SentimentClass#getIndex()}
+     */
+    public int getLabel(int document) { return labels.get(document);}
+
+    public SentimentClass getActualSentiment(int document) { return SentimentClass.getSpecific(getLabel(document));}
+
+    public int getFirstSentence(int document) { return documentOffsets.getInt(4 * document);}
+
+    public int getSentenceCount(int document)
+    {
+        return documentOffsets.getInt(4 * (document + 1)) - documentOffsets.getInt(4 * document);
+    }
+
+    /**
+     * @return the index of the predicted class of the sentence, see {@link SentimentClass#getIndex()}
+     */
+    public int getSentimentClass(int sentence) { return sentenceClasses.get(sentence);}
+
+    public int getLength(int sentence) { return lengths.getInt(4 * sentence);}
+
+    public double getProbability(int sentence, int sentimentClass)
+    {
+        int index = sentence * classes + sentimentClass;
+        return doubles ? probabilities.getDouble(8 * index) : probabilities.getFloat(4 * index);
+    }
+
+    /**
+     * @return the text of the sentence, or null if the corpus was written without text
+     */
+    public String getText(int sentence)
+    {
+        if(!text)
+        {
+            return null;
+        }
+        int start = (int) textOffsets.getLong(8 * sentence);
+        int end = (int) textOffsets.getLong(8 * (sentence + 1));
+        // a duplicate has its own position, which keeps the shared buffer free of relative reads
+        ByteBuffer buffer = textBytes.duplicate();
+        buffer.position(start);
+        byte[] bytes = new byte[end - start];
+        buffer.get(bytes);
+        return new String(bytes, Charsets.UTF_8);
+    }
+
+    /**
+     * Replaces the content of the batch with the sentences of the document.
+     *
+     * @param probabilities scratch space for one sentence, at least {@link SentimentClass#count()} long
+     */
+    public void read(int document, SentenceBatch batch, double[] probabilities)
+    {
+        batch.clear();
+        int first = getFirstSentence(document);
+        int end = first + getSentenceCount(document);
+        for(int sentence = first;sentence < end;++sentence)
+        {
+            for(int i = 0;i < classes;++i)
+            {
+                probabilities[i] = getProbability(sentence, i);
+            }
+            batch.add(getSentimentClass(sentence), probabilities, getLength(sentence));
+        }
+    }
+
+    /**
+     * Appends the document to the block as its next document.
+     *
+     * @param probabilities scratch space for one sentence, at least {@link SentimentClass#count()} long
+     */
+    public void append(int document, SentenceBlock block, double[] probabilities)
+    {
+        block.beginDocument();
+        int first = getFirstSentence(document);
+        int end = first + getSentenceCount(document);
+        for(int sentence = first;sentence < end;++sentence)
+        {
+            for(int i = 0;i < classes;++i)
+            {
+                probabilities[i] = getProbability(sentence, i);
+            }
+            block.add(getSentimentClass(sentence), probabilities, getLength(sentence));
+        }
+    }
+
+    /**
+     * Closes the file.  The mapped columns stay readable until they are garbage collected.
+     */
+    @Override
+    public void close() throws IOException
+    {
+        file.close();
+    }
+}
@@ -0,0 +1,217 @@
+package bi.meteorite.sentiment.nlp.rollup.util;
+
+import bi.meteorite.sentiment.nlp.SentimentClass;
+import com.google.common.base.Charsets;
+
+import java.io.*;
+
+/**
+ * Writes a {@link SentenceCorpus} one document at a time.
+ *
+ * Every column is streamed to its own temporary file next to the output and the columns are
+ * concatenated behind the header on {@link #close()}, so nothing about the corpus is held in memory.
+ */
+public class SentenceCorpusWriter implements Closeable
+{
+    private static final int CLASSES = SentimentClass.count();
+
+    private final File file;
+    private final boolean doubles;
+    private final boolean text;
+
+    private final File[] columnFiles = new File[SentenceCorpus.COLUMNS];
+    private final DataOutputStream[] columns = new DataOutputStream[SentenceCorpus.COLUMNS];
+
+    private int documents;
+    private int sentences;
+    private long textBytes;
+    private boolean closed;
+
+    /**
+     * @param file the corpus to write
+     * @param doubles true to store the probabilities as doubles, false to halve their size with floats
+     * @param text true to store the text of every sentence as well
+     */
+    public SentenceCorpusWriter(File file, boolean doubles, boolean text) throws IOException
+    {
+        this.file = file;
+        this.doubles = doubles;
+        this.text = text;
+        try
+        {
+            for(int i = 0;i < columns.length;++i)
+            {
+                columnFiles[i] = File.createTempFile(file.getName() + ".", ".col" + i, file.getAbsoluteFile().getParentFile());
+                columns[i] = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(columnFiles[i])));
+            }
+            columns[SentenceCorpus.DOCUMENT_OFFSETS].writeInt(0);
+            if(text)
+            {
+                columns[SentenceCorpus.TEXT_OFFSETS].writeLong(0);
+            }
+        }
+        catch(IOException e)
+        {
+            discard();
+            throw e;
+        }
+    }
+
+    /**
+     * Starts the next document.  Its sentences are the ones added until the next call.
+     *
+     * @param actualSentiment the label of the document
+     */
+    public void beginDocument(SentimentClass actualSentiment) throws IOException
+    {
+        if(documents > 0)
+        {
+            columns[SentenceCorpus.DOCUMENT_OFFSETS].writeInt(sentences);
+        }
+        columns[SentenceCorpus.LABELS].writeByte(actualSentiment.getIndex());
+        documents++;
+    }
+
+    /**
+     * Adds a sentence to the current document.
+     *
+     * @param sentimentClass the index of the predicted class, see {@link SentimentClass#getIndex()}
+     * @param probabilities the probability of every class
+     * @param content the text of the sentence, which gives its length and is only stored if asked for
+     */
+    public void add(int sentimentClass, double[] probabilities, String content) throws IOException
+    {
+        if(documents == 0)
+        {
+            throw new IllegalStateException("add() called before beginDocument()");
+        }
+        columns[SentenceCorpus.SENTENCE_CLASSES].writeByte(sentimentClass);
+        columns[SentenceCorpus.LENGTHS].writeInt(content.length());
+        DataOutputStream out = columns[SentenceCorpus.PROBABILITIES];
+        for(int i = 0;i < CLASSES;++i)
+        {
+            if(doubles)
+            {
+                out.writeDouble(probabilities[i]);
+            }
+            else
+            {
+                out.writeFloat((float) probabilities[i]);
+            }
+        }
+        if(text)
+        {
+            byte[] bytes = content.getBytes(Charsets.UTF_8);
+            columns[SentenceCorpus.TEXT].write(bytes);
+            textBytes += bytes.length;
+            columns[SentenceCorpus.TEXT_OFFSETS].writeLong(textBytes);
+        }
+        sentences++;
+    }
+
+    public int getDocumentCount() { return documents;}
+
+    public int getSentenceCount() { return sentences;}
+
+    /**
+     * Writes the header followed by every column and removes the temporary files.  If that fails the
+     * corpus is deleted rather than left truncated.
+     */
+    @Override
+    public void close() throws IOException
+    {
+        if(closed)
+        {
+            return;
+        }
+        closed = true;
+        boolean written = false;
+        try
+        {
+            if(documents > 0)
+            {
+                columns[SentenceCorpus.DOCUMENT_OFFSETS].writeInt(sentences);
+            }
+            for(DataOutputStream column : columns)
+            {
+                column.close();
+            }
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+            try
+            {
+                out.writeInt(SentenceCorpus.MAGIC);
+                out.writeInt(SentenceCorpus.VERSION);
+                out.writeInt((doubles ? SentenceCorpus.FLAG_DOUBLES : 0) | (text ? SentenceCorpus.FLAG_TEXT : 0));
+                out.writeInt(CLASSES);
+                out.writeInt(documents);
+                out.writeInt(sentences);
+                byte[] buffer = new byte[1 << 16];
+                for(File columnFile : columnFiles)
+                {
+                    InputStream in = new FileInputStream(columnFile);
+                    try
+                    {
+                        for(int n;(n = in.read(buffer)) > 0;)
+                        {
+                            out.write(buffer, 0, n);
+                        }
+                    }
+                    finally
+                    {
+                        in.close();
+                    }
+                }
+            }
+            finally
+            {
+                out.close();
+            }
+            written = true;
+        }
+        finally
+        {
+            discard();
+            if(!written)
+            {
+                file.delete();
+            }
+        }
+    }
+
+    /**
+     * Gives up on the corpus: removes the temporary files and deletes the corpus, so a failed write
+     * never leaves a file that looks complete.
+     */
+    public void abort()
+    {
+        if(closed)
+        {
+            return;
+        }
+        closed = true;
+        discard();
+        file.delete();
+    }
+
+    private void discard()
+    {
+        for(int i = 0;i < columns.length;++i)
+        {
+            if(columns[i] != null)
+            {
+                try
+                {
+                    columns[i].close();
+                }
+                catch(IOException e)
+                {
+                    // only cleaning up
+                }
+            }
+            if(columnFiles[i] != null)
+            {
+                columnFiles[i].delete();
+            }
+        }
+    }
+}
@@ -0,0 +1,239 @@
+package bi.meteorite.sentiment.nlp.server;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Just enough JSON for talking to a CoreNLP server: objects become maps, arrays lists, numbers
+ * doubles, and true, false and null their Java counterparts.
+ */
+class Json
+{
+    private final String text;
+    private int position;
+
+    private Json(String text)
+    {
+        this.text = text;
+    }
+
+    /**
+     * @throws IllegalArgumentException if the text is not a single JSON value
+     */
+    static Object parse(String text)
+    {
+        Json json = new Json(text);
+        Object ret = json.value();
+        json.skipWhitespace();
+        if(json.position != text.length())
+        {
+            throw json.error("Unexpected content");
+        }
+        return ret;
+    }
+
+    private Object value()
+    {
+        skipWhitespace();
+        if(position == text.length())
+        {
+            throw error("Unexpected end");
+        }
+        char c = text.charAt(position);
+        switch(c)
+        {
+            case '{':
+                return object();
+            case '[':
+                return array();
+            case '"':
+                return string();
+            case 't':
+                return literal("true", Boolean.TRUE);
+            case 'f':
+                return literal("false", Boolean.FALSE);
+            case 'n':
+                return literal("null", null);
+            default:
+                return number();
+        }
+    }
+
+    private Map<String, Object> object()
+    {
+        Map<String, Object> ret = new LinkedHashMap<String, Object>();
+        position++;
+        skipWhitespace();
+        if(consume('}'))
+        {
+            return ret;
+        }
+        do
+        {
+            skipWhitespace();
+            if(position == text.length() || text.charAt(position) != '"')
+            {
+                throw error("Expected a name");
+            }
+            String name = string();
+            skipWhitespace();
+            expect(':');
+            ret.put(name, value());
+            skipWhitespace();
+        }
+        while(consume(','));
+        expect('}');
+        return ret;
+    }
+
+    private List<Object> array()
+    {
+        List<Object> ret = new ArrayList<Object>();
+        position++;
+        skipWhitespace();
+        if(consume(']'))
+        {
+            return ret;
+        }
+        do
+        {
+            ret.add(value());
+            skipWhitespace();
+        }
+        while(consume(','));
+        expect(']');
+        return ret;
+    }
+
+    private String string()
+    {
+        StringBuilder ret = new StringBuilder();
+        position++;
+        while(position < text.length())
+        {
+            char c = text.charAt(position++);
+            if(c == '"')
+            {
+                return ret.toString();
+            }
+            if(c != '\\')
+            {
+                ret.append(c);
+                continue;
+            }
+            if(position == text.length())
+            {
+                break;
+            }
+            char escaped = text.charAt(position++);
+            switch(escaped)
+            {
+                case 'b': ret.append('\b'); break;
+                case 'f': ret.append('\f'); break;
+                case 'n': ret.append('\n'); break;
+                case 'r': ret.append('\r'); break;
+                case 't': ret.append('\t'); break;
+                case 'u':
+                    if(position + 4 > text.length())
+                    {
+                        throw error("Bad unicode escape");
+                    }
+                    ret.append((char) Integer.parseInt(text.substring(position, position + 4), 16));
+                    position += 4;
+                    break;
+                default: ret.append(escaped);
+            }
+        }
+        throw error("Unterminated string");
+    }
+
+    private Object literal(String literal, Object value)
+    {
+        if(!text.startsWith(literal, position))
+        {
+            throw error("Unexpected token");
+        }
+        position += literal.length();
+        return value;
+    }
+
+    private Double number()
+    {
+        int start = position;
+        while(position < text.length() && "+-0123456789.eE".indexOf(text.charAt(position)) >= 0)
+        {
+            position++;
+        }
+        try
+        {
+            return Double.valueOf(text.substring(start, position));
+        }
+        catch(NumberFormatException e)
+        {
+            throw error("Bad number");
+        }
+    }
+
+    private void skipWhitespace()
+    {
+        while(position < text.length() && Character.isWhitespace(text.charAt(position)))
+        {
+            position++;
+        }
+    }
+
+    private boolean consume(char c)
+    {
+        if(position < text.length() && text.charAt(position) == c)
+        {
+            position++;
+            return true;
+        }
+        return false;
+    }
+
+    private void expect(char c)
+    {
+        if(!consume(c))
+        {
+            throw error("Expected '" + c + "'");
+        }
+    }
+
+    private IllegalArgumentException error(String message)
+    {
+        return new IllegalArgumentException(message + " at offset " + position + " of the JSON");
+    }
+
+    /**
+     * Appends the value as a JSON string.
+     */
+    static StringBuilder quote(StringBuilder out, String value)
+    {
+        out.append('"');
+        for(int i = 0;i < value.length();++i)
+        {
+            char c = value.charAt(i);
+            switch(c)
+            {
+                case '"': out.append("\\\""); break;
+                case '\\': out.append("\\\\"); break;
+                case '\n': out.append("\\n"); break;
+                case '\r': out.append("\\r"); break;
+                case '\t': out.append("\\t"); break;
+                default:
+                    if(c < 0x20)
+                    {
+                        out.append(String.format("\\u%04x", (int) c));
+                    }
+                    else
+                    {
+                        out.append(c);
+                    }
+            }
+        }
+        return out.append('"');
+    }
+}
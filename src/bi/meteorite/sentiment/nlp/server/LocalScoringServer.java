@@ -0,0 +1,204 @@
+package bi.meteorite.sentiment.nlp.server;
+
+import bi.meteorite.sentiment.nlp.SentimentAnalyzer;
+import bi.meteorite.sentiment.nlp.SharedPipeline;
+import bi.meteorite.sentiment.nlp.cache.SentencePrediction;
+import com.google.common.base.Charsets;
+import com.google.common.io.CharStreams;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import edu.stanford.nlp.ling.CoreAnnotations;
+import edu.stanford.nlp.pipeline.Annotation;
+import edu.stanford.nlp.pipeline.AnnotationPipeline;
+import edu.stanford.nlp.util.CoreMap;
+
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.Executors;
+
+/**
+ * A stand-in for the CoreNLP server that runs the pipeline of this plugin, to try out the
+ * {@link RemoteScorer} or to share one warm pipeline between the transformations on a host.
+ *
+ * It answers a POST of text with the part of the JSON output of the CoreNLP server the remote scorer
+ * reads: the sentiment, sentiment value and class probabilities of every sentence.  The properties of
+ * a request go on top of those the server was started with.  A pipeline is built for every distinct
+ * set of properties and kept until the server stops.
+ */
+public class LocalScoringServer implements HttpHandler
+{
+    private static final String[] SENTIMENT_NAMES = { "Very negative", "Negative", "Neutral", "Positive", "Very positive" };
+
+    private final Properties defaults;
+    private final Map<Properties, AnnotationPipeline> pipelines = new HashMap<Properties, AnnotationPipeline>();
+
+    public LocalScoringServer(Properties defaults)
+    {
+        this.defaults = defaults;
+    }
+
+    @Override
+    public void handle(HttpExchange exchange) throws IOException
+    {
+        try
+        {
+            if(!"POST".equals(exchange.getRequestMethod()))
+            {
+                send(exchange, HttpURLConnection.HTTP_BAD_METHOD, "text/plain", "Only POST is supported");
+                return;
+            }
+            Reader in = new InputStreamReader(exchange.getRequestBody(), Charsets.UTF_8);
+            String text;
+            try
+            {
+                text = CharStreams.toString(in);
+            }
+            finally
+            {
+                in.close();
+            }
+            String response;
+            try
+            {
+                response = score(getProperties(exchange.getRequestURI().getRawQuery()), text);
+            }
+            catch(RuntimeException e)
+            {
+                send(exchange, HttpURLConnection.HTTP_INTERNAL_ERROR, "text/plain", String.valueOf(e.getMessage()));
+                return;
+            }
+            send(exchange, HttpURLConnection.HTTP_OK, "application/json", response);
+        }
+        finally
+        {
+            exchange.close();
+        }
+    }
+
+    /**
+     * The defaults with the properties of the request on top.
+     */
+    Properties getProperties(String query) throws IOException
+    {
+        Properties ret = new Properties();
+        ret.putAll(defaults);
+        if(query == null)
+        {
+            return ret;
+        }
+        for(String parameter : query.split("&"))
+        {
+            if(parameter.startsWith("properties="))
+            {
+                String json = URLDecoder.decode(parameter.substring("properties=".length()), "UTF-8");
+                for(Map.Entry<?, ?> property : ((Map<?, ?>) Json.parse(json)).entrySet())
+                {
+                    ret.setProperty(property.getKey().toString(), String.valueOf(property.getValue()));
+                }
+            }
+        }
+        // only JSON is spoken here
+        ret.remove("outputFormat");
+        return ret;
+    }
+
+    private synchronized AnnotationPipeline getPipeline(Properties props)
+    {
+        AnnotationPipeline ret = pipelines.get(props);
+        if(ret == null)
+        {
+            ret = SharedPipeline.INSTANCE.acquire(props);
+            pipelines.put(props, ret);
+        }
+        return ret;
+    }
+
+    String score(Properties props, String text)
+    {
+        Annotation annotation = new Annotation(text);
+        getPipeline(props).annotate(annotation);
+        StringBuilder ret = new StringBuilder("{\"sentences\": [");
+        int index = 0;
+        for(CoreMap sentence : annotation.get(CoreAnnotations.SentencesAnnotation.class))
+        {
+            SentencePrediction prediction = SentimentAnalyzer.getPrediction(sentence);
+            ret.append(index == 0 ? "\n" : ",\n");
+            ret.append("  {\"index\": ").append(index++);
+            ret.append(", \"sentiment\": ");
+            Json.quote(ret, SENTIMENT_NAMES[prediction.getSentimentClass()]);
+            ret.append(", \"sentimentValue\": \"").append(prediction.getSentimentClass()).append('"');
+            ret.append(", \"sentimentDistribution\": [");
+            double[] probabilities = prediction.getProbabilities();
+            for(int i = 0;i < probabilities.length;++i)
+            {
+                ret.append(i == 0 ? "" : ", ").append(probabilities[i]);
+            }
+            ret.append("]}");
+            SentimentAnalyzer.release(sentence);
+        }
+        return ret.append("\n]}\n").toString();
+    }
+
+    private static void send(HttpExchange exchange, int status, String contentType, String body) throws IOException
+    {
+        byte[] bytes = body.getBytes(Charsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", contentType + "; charset=UTF-8");
+        exchange.sendResponseHeaders(status, bytes.length);
+        OutputStream out = exchange.getResponseBody();
+        try
+        {
+            out.write(bytes);
+        }
+        finally
+        {
+            out.close();
+        }
+    }
+
+    private static Properties load(File file) throws IOException
+    {
+        Properties props = new Properties();
+        Reader in = new FileReader(file);
+        try
+        {
+            props.load(in);
+        }
+        finally
+        {
+            in.close();
+        }
+        return props;
+    }
+
+    /**
+     * @param argv the port to listen on, optionally followed by a properties file with CoreNLP
+     *             properties to use on top of the defaults.  The number of request threads is taken
+     *             from the threads system property and defaults to the number of processors.
+     */
+    public static void main(String ... argv) throws IOException
+    {
+        Properties overrides = new Properties();
+        if(argv.length > 1)
+        {
+            overrides = load(new File(argv[1]));
+        }
+        int port = Integer.parseInt(argv[0]);
+        int threads = Integer.getInteger("threads", Runtime.getRuntime().availableProcessors());
+        HttpServer server = HttpServer.create(new InetSocketAddress("localhost", port), 0);
+        server.createContext("/", new LocalScoringServer(SharedPipeline.withDefaults(overrides)));
+        server.setExecutor(Executors.newFixedThreadPool(threads));
+        server.start();
+        System.out.println("Listening on http://localhost:" + port + "/");
+    }
+}
@@ -0,0 +1,418 @@
+package bi.meteorite.sentiment.nlp.server;
+
+import bi.meteorite.sentiment.nlp.SentimentClass;
+import bi.meteorite.sentiment.nlp.budget.DeadlineAnnotator;
+import bi.meteorite.sentiment.nlp.cache.SentencePrediction;
+import com.google.common.base.Charsets;
+import com.google.common.io.CharStreams;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import edu.stanford.nlp.ling.CoreAnnotations;
+import edu.stanford.nlp.ling.CoreLabel;
+import edu.stanford.nlp.pipeline.Annotation;
+import edu.stanford.nlp.pipeline.Annotator;
+import edu.stanford.nlp.util.CoreMap;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.HttpURLConnection;
+import java.net.MalformedURLException;
+import java.net.SocketTimeoutException;
+import java.net.URL;
+import java.net.URLEncoder;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Predicts the sentiment of split sentences on a CoreNLP server over HTTP instead of in this JVM, so
+ * the parser and sentiment models never take up heap here.
+ *
+ * The sentences are sent one per line with their tokens separated by spaces, and the server is told
+ * to split on lines and whitespace only, so it scores exactly the sentences split here and the budgets
+ * and caches keep working on them.  The sentences of many documents go out together in requests of up
+ * to a batch size, with at most a fixed number of requests in flight, over connections the JDK keeps
+ * alive between requests.  The JDK keeps at most {@link #getKeepAliveConnections()} idle connections
+ * per host, 5 unless the http.maxConnections system property says otherwise, so any requests in
+ * flight beyond that open a new connection each time.  Every scored sentence gets a {@link SentencePrediction.Annotation}, like
+ * the ones the sentence cache attaches.
+ *
+ * With a time budget the batches never mix documents, and every request of a document may only wait
+ * for the time the document has left, as its read timeout.  The sentences of a request that runs out
+ * of time, or that is not sent before the deadline, carry a {@link DeadlineAnnotator.UnfinishedAnnotation}
+ * like those the deadline annotator leaves.  The read timeout bounds each wait for data rather than the
+ * whole answer, which a CoreNLP server sends at once.
+ *
+ * Any server answering the JSON output of the CoreNLP server will do, see {@link LocalScoringServer}.
+ * When the server does not send the probability of every class, the predicted class gets all of it.
+ */
+public class RemoteScorer implements Annotator, Closeable
+{
+    static final int CONNECT_TIMEOUT_MILLIS = 10 * 1000;
+    static final int READ_TIMEOUT_MILLIS = 5 * 60 * 1000;
+
+    private final String serverUrl;
+    private final URL url;
+    private final int batchSentences;
+    private final ExecutorService executor;
+
+    /**
+     * @param serverUrl the address of the server, for example http://localhost:9000/
+     * @param props the pipeline properties, passed on to the server with every request
+     * @param batchSentences the most sentences sent in one request
+     * @param maxInFlight the most requests sent at the same time, best kept within
+     *                    {@link #getKeepAliveConnections()}
+     */
+    public RemoteScorer(String serverUrl, Properties props, int batchSentences, int maxInFlight)
+            throws MalformedURLException
+    {
+        this.serverUrl = serverUrl;
+        this.url = new URL(serverUrl + (serverUrl.indexOf('?') < 0 ? "?" : "&") + "properties=" + encode(requestProperties(props)));
+        this.batchSentences = Math.max(1, batchSentences);
+        this.executor = Executors.newFixedThreadPool(Math.max(1, maxInFlight),
+                new ThreadFactoryBuilder().setDaemon(true).setNameFormat("RemoteScorer-%d").build());
+    }
+
+    /**
+     * The pipeline properties as a JSON object, with the server told to keep the sentences and tokens
+     * sent to it.
+     */
+    static String requestProperties(Properties props)
+    {
+        Properties request = new Properties();
+        request.putAll(props);
+        request.setProperty("annotators", "tokenize, ssplit, parse, sentiment");
+        request.setProperty("tokenize.whitespace", "true");
+        request.setProperty("ssplit.eolonly", "true");
+        request.setProperty("outputFormat", "json");
+        StringBuilder ret = new StringBuilder("{");
+        for(String name : request.stringPropertyNames())
+        {
+            if(ret.length() > 1)
+            {
+                ret.append(", ");
+            }
+            Json.quote(ret, name).append(": ");
+            Json.quote(ret, request.getProperty(name));
+        }
+        return ret.append('}').toString();
+    }
+
+    private static String encode(String value)
+    {
+        try
+        {
+            return URLEncoder.encode(value, "UTF-8");
+        }
+        catch(UnsupportedEncodingException e)
+        {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * @return the most idle connections to a host the JDK keeps alive for reuse
+     */
+    public static int getKeepAliveConnections()
+    {
+        return Integer.getInteger("http.maxConnections", 5);
+    }
+
+    public String getServerUrl()
+    {
+        return serverUrl;
+    }
+
+    /**
+     * Scores the sentences of every document, in as few requests as the batch size allows.
+     *
+     * @throws IllegalStateException when a request fails
+     */
+    public void score(List<Annotation> documents)
+    {
+        score(documents, 0);
+    }
+
+    /**
+     * Scores the sentences of every document, giving up on those of a document that are not scored
+     * within its time budget.
+     *
+     * @param timeoutMillis the time each document may take from its first request, 0 for no limit
+     * @throws IllegalStateException when a request fails other than by running out of time
+     */
+    public void score(List<Annotation> documents, long timeoutMillis)
+    {
+        List<Callable<Void>> batches = new ArrayList<Callable<Void>>();
+        if(timeoutMillis > 0)
+        {
+            for(Annotation document : documents)
+            {
+                batch(getSentences(document), new Deadline(timeoutMillis), batches);
+            }
+        }
+        else
+        {
+            List<CoreMap> sentences = new ArrayList<CoreMap>();
+            for(Annotation document : documents)
+            {
+                sentences.addAll(getSentences(document));
+            }
+            batch(sentences, null, batches);
+        }
+        List<Future<Void>> requests = new ArrayList<Future<Void>>();
+        for(Callable<Void> batch : batches)
+        {
+            requests.add(executor.submit(batch));
+        }
+        try
+        {
+            for(Future<Void> request : requests)
+            {
+                request.get();
+            }
+        }
+        catch(InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for " + serverUrl, e);
+        }
+        catch(ExecutionException e)
+        {
+            throw new IllegalStateException("Unable to score on " + serverUrl + ": " + e.getCause().getMessage(), e.getCause());
+        }
+        finally
+        {
+            for(Future<Void> request : requests)
+            {
+                request.cancel(true);
+            }
+        }
+    }
+
+    private static List<CoreMap> getSentences(Annotation document)
+    {
+        List<CoreMap> ret = document.get(CoreAnnotations.SentencesAnnotation.class);
+        return ret == null ? Collections.<CoreMap>emptyList() : ret;
+    }
+
+    /**
+     * Splits the sentences into requests of up to the batch size.
+     *
+     * @param deadline the deadline of the document the sentences belong to, null for none
+     */
+    private void batch(List<CoreMap> sentences, final Deadline deadline, List<Callable<Void>> batches)
+    {
+        for(int from = 0;from < sentences.size();from += batchSentences)
+        {
+            final List<CoreMap> batch = sentences.subList(from, Math.min(sentences.size(), from + batchSentences));
+            batches.add(new Callable<Void>()
+            {
+                @Override
+                public Void call() throws IOException
+                {
+                    if(deadline == null)
+                    {
+                        post(batch, READ_TIMEOUT_MILLIS);
+                        return null;
+                    }
+                    long remaining = deadline.getRemainingMillis();
+                    if(remaining <= 0 || !post(batch, (int) Math.min(READ_TIMEOUT_MILLIS, remaining)))
+                    {
+                        for(CoreMap sentence : batch)
+                        {
+                            sentence.set(DeadlineAnnotator.UnfinishedAnnotation.class, Boolean.TRUE);
+                        }
+                    }
+                    return null;
+                }
+            });
+        }
+    }
+
+    /**
+     * The time budget of one document, which starts with the first of its requests to be sent.
+     */
+    private static class Deadline
+    {
+        private final long timeoutNanos;
+        private long deadline;
+        private boolean started;
+
+        Deadline(long timeoutMillis)
+        {
+            this.timeoutNanos = TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        }
+
+        synchronized long getRemainingMillis()
+        {
+            if(!started)
+            {
+                deadline = System.nanoTime() + timeoutNanos;
+                started = true;
+            }
+            return TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+        }
+    }
+
+    /**
+     * @return false if the server did not answer within the read timeout
+     */
+    private boolean post(List<CoreMap> batch, int readTimeoutMillis) throws IOException
+    {
+        StringBuilder body = new StringBuilder();
+        for(CoreMap sentence : batch)
+        {
+            boolean first = true;
+            for(CoreLabel token : sentence.get(CoreAnnotations.TokensAnnotation.class))
+            {
+                if(!first)
+                {
+                    body.append(' ');
+                }
+                body.append(token.word());
+                first = false;
+            }
+            body.append('\n');
+        }
+        byte[] bytes = body.toString().getBytes(Charsets.UTF_8);
+
+        HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+        connection.setConnectTimeout(CONNECT_TIMEOUT_MILLIS);
+        connection.setReadTimeout(readTimeoutMillis);
+        connection.setRequestMethod("POST");
+        connection.setRequestProperty("Content-Type", "text/plain; charset=UTF-8");
+        connection.setDoOutput(true);
+        connection.setFixedLengthStreamingMode(bytes.length);
+        OutputStream out = connection.getOutputStream();
+        try
+        {
+            out.write(bytes);
+        }
+        finally
+        {
+            out.close();
+        }
+        String response;
+        try
+        {
+            int status = connection.getResponseCode();
+            if(status != HttpURLConnection.HTTP_OK)
+            {
+                // reading the error to the end lets the connection be reused
+                InputStream error = connection.getErrorStream();
+                String message = error == null ? connection.getResponseMessage() : read(error);
+                throw new IOException("The server answered " + status + ": " + message);
+            }
+            response = read(connection.getInputStream());
+        }
+        catch(SocketTimeoutException e)
+        {
+            // the server may still answer on this connection, so it cannot be reused
+            connection.disconnect();
+            return false;
+        }
+        setPredictions(batch, response);
+        return true;
+    }
+
+    private static String read(InputStream in) throws IOException
+    {
+        try
+        {
+            return CharStreams.toString(new InputStreamReader(in, Charsets.UTF_8));
+        }
+        finally
+        {
+            in.close();
+        }
+    }
+
+    static void setPredictions(List<CoreMap> batch, String response) throws IOException
+    {
+        List<?> sentences;
+        try
+        {
+            sentences = (List<?>) ((Map<?, ?>) Json.parse(response)).get("sentences");
+        }
+        catch(RuntimeException e)
+        {
+            throw new IOException("Unexpected answer from the server: " + e.getMessage());
+        }
+        if(sentences == null || sentences.size() != batch.size())
+        {
+            throw new IOException("Sent " + batch.size() + " sentences, the server answered "
+                    + (sentences == null ? "none" : String.valueOf(sentences.size())));
+        }
+        for(int i = 0;i < sentences.size();++i)
+        {
+            batch.get(i).set(SentencePrediction.Annotation.class, getPrediction((Map<?, ?>) sentences.get(i)));
+        }
+    }
+
+    private static SentencePrediction getPrediction(Map<?, ?> sentence) throws IOException
+    {
+        Object value = sentence.get("sentimentValue");
+        if(value == null)
+        {
+            throw new IOException("The server did not predict the sentiment, is the sentiment annotator available?");
+        }
+        int sentimentClass = value instanceof Number ? ((Number) value).intValue() : Integer.parseInt(value.toString().trim());
+        if(sentimentClass < 0 || sentimentClass >= SentimentClass.count())
+        {
+            throw new IOException("Unknown sentiment class " + value);
+        }
+        double[] probabilities = new double[SentimentClass.count()];
+        Object distribution = sentence.get("sentimentDistribution");
+        if(distribution instanceof List && ((List<?>) distribution).size() == probabilities.length)
+        {
+            for(int i = 0;i < probabilities.length;++i)
+            {
+                probabilities[i] = ((Number) ((List<?>) distribution).get(i)).doubleValue();
+            }
+        }
+        else
+        {
+            probabilities[sentimentClass] = 1;
+        }
+        return new SentencePrediction(sentimentClass, probabilities);
+    }
+
+    @Override
+    public void annotate(Annotation annotation)
+    {
+        score(Collections.singletonList(annotation));
+    }
+
+    @Override
+    public Set<Requirement> requirementsSatisfied()
+    {
+        return Collections.emptySet();
+    }
+
+    @Override
+    public Set<Requirement> requires()
+    {
+        return TOKENIZE_AND_SSPLIT;
+    }
+
+    /**
+     * Stops the request threads.  Idle connections are left to the JDK keep-alive cache.
+     */
+    @Override
+    public void close()
+    {
+        executor.shutdownNow();
+    }
+}
@@ -0,0 +1,58 @@
+package bi.meteorite.sentiment.nlp.rollup.strategy;
+
+import bi.meteorite.sentiment.nlp.SentimentClass;
+import bi.meteorite.sentiment.nlp.rollup.ISentimentAccumulator;
+import junit.framework.TestCase;
+
+/**
+ * Checks the precomputed decisions of {@link WilsonScore} against the closed form of the bound.
+ */
+public class WilsonScoreTest extends TestCase {
+
+    public void testTableMatchesBoundForDefaults() {
+        assertTableMatchesBound(new WilsonScore());
+    }
+
+    public void testTableMatchesBoundForOtherSettings() {
+        assertTableMatchesBound(new WilsonScore(0.95, 0.5));
+        assertTableMatchesBound(new WilsonScore(0.8, 0.25));
+    }
+
+    public void testBeyondTheTable() {
+        WilsonScore rollup = new WilsonScore();
+        int n = WilsonScore.TABLE_SENTENCES + 1;
+        for(int pos = 0;pos <= n;++pos)
+        {
+            assertEquals("pos=" + pos + " n=" + n, expected(rollup, pos, n), classify(rollup, pos, n));
+        }
+    }
+
+    private static void assertTableMatchesBound(WilsonScore rollup) {
+        for(int n = 0;n <= WilsonScore.TABLE_SENTENCES;++n)
+        {
+            for(int pos = 0;pos <= n;++pos)
+            {
+                assertEquals("pos=" + pos + " n=" + n, expected(rollup, pos, n), classify(rollup, pos, n));
+            }
+        }
+    }
+
+    private static SentimentClass expected(WilsonScore rollup, int pos, int n) {
+        return WilsonScore.ci_lower_bound(pos, n, rollup.getPower()) > rollup.getThreshold()
+                ? SentimentClass.POSITIVE : SentimentClass.NEGATIVE;
+    }
+
+    /**
+     * Feeds pos positive and n - pos negative sentences through an accumulator.
+     */
+    private static SentimentClass classify(WilsonScore rollup, int pos, int n) {
+        ISentimentAccumulator accumulator = rollup.newAccumulator();
+        double[] probabilities = new double[SentimentClass.count()];
+        accumulator.begin();
+        for(int i = 0;i < n;++i)
+        {
+            accumulator.add(i < pos ? 3 : 1, probabilities, 1);
+        }
+        return accumulator.finish();
+    }
+}
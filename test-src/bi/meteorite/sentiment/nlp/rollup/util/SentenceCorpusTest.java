@@ -0,0 +1,153 @@
+package bi.meteorite.sentiment.nlp.rollup.util;
+
+import bi.meteorite.sentiment.nlp.SentimentClass;
+import bi.meteorite.sentiment.nlp.rollup.SentenceBatch;
+import junit.framework.TestCase;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Writes corpora with {@link SentenceCorpusWriter} and reads them back with {@link SentenceCorpus}.
+ */
+public class SentenceCorpusTest extends TestCase
+{
+    /**
+     * The label and the sentences of every document; the empty documents come first, in the middle
+     * and last so every document offset is checked next to one.
+     */
+    private static final int[] LABELS = { 0, 4, 2, 1, 3 };
+    private static final String[][] SENTENCES = {
+            {},
+            { "This movie is great.", "", "Caf\u00e9 \u2603 \ud83d\ude00 unicode." },
+            {},
+            { "One sentence only." },
+            {}
+    };
+
+    private File file;
+
+    @Override
+    protected void setUp() throws IOException
+    {
+        file = File.createTempFile("SentenceCorpusTest", ".corpus");
+    }
+
+    @Override
+    protected void tearDown()
+    {
+        file.delete();
+    }
+
+    public void testFloatsWithText() throws IOException
+    {
+        roundTrip(false, true);
+    }
+
+    public void testDoublesWithText() throws IOException
+    {
+        roundTrip(true, true);
+    }
+
+    public void testFloatsWithoutText() throws IOException
+    {
+        roundTrip(false, false);
+    }
+
+    public void testDoublesWithoutText() throws IOException
+    {
+        roundTrip(true, false);
+    }
+
+    public void testEmptyCorpus() throws IOException
+    {
+        new SentenceCorpusWriter(file, true, true).close();
+        SentenceCorpus corpus = SentenceCorpus.open(file);
+        try
+        {
+            assertEquals(0, corpus.getDocumentCount());
+            assertEquals(0, corpus.getSentenceCount());
+        }
+        finally
+        {
+            corpus.close();
+        }
+    }
+
+    private void roundTrip(boolean doubles, boolean text) throws IOException
+    {
+        SentenceCorpusWriter writer = new SentenceCorpusWriter(file, doubles, text);
+        int sentence = 0;
+        for(int document = 0;document < LABELS.length;++document)
+        {
+            writer.beginDocument(SentimentClass.getSpecific(LABELS[document]));
+            for(String content : SENTENCES[document])
+            {
+                writer.add(sentimentClass(sentence), probabilities(sentence), content);
+                sentence++;
+            }
+        }
+        writer.close();
+
+        SentenceCorpus corpus = SentenceCorpus.open(file);
+        try
+        {
+            assertEquals(LABELS.length, corpus.getDocumentCount());
+            assertEquals(sentence, corpus.getSentenceCount());
+            assertEquals(text, corpus.hasText());
+            // doubles are exact, floats are rounded once
+            double delta = doubles ? 0 : 1e-6;
+            SentenceBatch batch = new SentenceBatch();
+            double[] scratch = new double[SentimentClass.count()];
+            int first = 0;
+            for(int document = 0;document < LABELS.length;++document)
+            {
+                String[] contents = SENTENCES[document];
+                assertEquals(LABELS[document], corpus.getLabel(document));
+                assertEquals(SentimentClass.getSpecific(LABELS[document]), corpus.getActualSentiment(document));
+                assertEquals("first sentence of " + document, first, corpus.getFirstSentence(document));
+                assertEquals("sentences of " + document, contents.length, corpus.getSentenceCount(document));
+                corpus.read(document, batch, scratch);
+                assertEquals(contents.length, batch.size());
+                for(int i = 0;i < contents.length;++i)
+                {
+                    int s = first + i;
+                    assertEquals(sentimentClass(s), corpus.getSentimentClass(s));
+                    assertEquals(contents[i].length(), corpus.getLength(s));
+                    assertEquals(sentimentClass(s), batch.getSentimentClass(i));
+                    assertEquals(contents[i].length(), batch.getLength(i));
+                    double[] expected = probabilities(s);
+                    for(int c = 0;c < expected.length;++c)
+                    {
+                        assertEquals(expected[c], corpus.getProbability(s, c), delta);
+                        assertEquals(expected[c], batch.getProbability(i, c), delta);
+                    }
+                    assertEquals(text ? contents[i] : null, corpus.getText(s));
+                }
+                first += contents.length;
+            }
+        }
+        finally
+        {
+            corpus.close();
+        }
+    }
+
+    private static int sentimentClass(int sentence)
+    {
+        return (sentence * 3 + 1) % SentimentClass.count();
+    }
+
+    /**
+     * Distinct per sentence and class, and not exactly representable as a float.
+     */
+    private static double[] probabilities(int sentence)
+    {
+        double[] ret = new double[SentimentClass.count()];
+        for(int c = 0;c < ret.length;++c)
+        {
+            ret[c] = (sentence + 1) / 10.0 + c / 7.0;
+        }
+        return ret;
+    }
+}
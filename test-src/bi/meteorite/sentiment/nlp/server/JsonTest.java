@@ -0,0 +1,85 @@
+package bi.meteorite.sentiment.nlp.server;
+
+import junit.framework.TestCase;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Round trips through {@link Json#quote(StringBuilder, String)} and {@link Json#parse(String)}.
+ */
+public class JsonTest extends TestCase
+{
+    public void testQuoteRoundTrip()
+    {
+        String[] values = { "", "plain", "with \"quotes\"", "back\\slash", "new\nline", "tab\tand\rreturn",
+                "\b\f\u0000\u001f", "caf\u00e9 \u2603", "/slash/" };
+        for(String value : values)
+        {
+            assertEquals(value, Json.parse(Json.quote(new StringBuilder(), value).toString()));
+        }
+    }
+
+    public void testQuoteEscapesControlCharacters()
+    {
+        String quoted = Json.quote(new StringBuilder(), "a\u0001b").toString();
+        assertEquals("\"a\\u0001b\"", quoted);
+    }
+
+    public void testObjectRoundTrip()
+    {
+        Map<String, String> properties = new LinkedHashMap<String, String>();
+        properties.put("annotators", "tokenize, ssplit, parse, sentiment");
+        properties.put("weird \"name\"", "line\none");
+        StringBuilder json = new StringBuilder("{");
+        for(Map.Entry<String, String> property : properties.entrySet())
+        {
+            if(json.length() > 1)
+            {
+                json.append(", ");
+            }
+            Json.quote(json, property.getKey()).append(": ");
+            Json.quote(json, property.getValue());
+        }
+        json.append('}');
+        assertEquals(properties, Json.parse(json.toString()));
+    }
+
+    public void testParseValues()
+    {
+        Map<?, ?> parsed = (Map<?, ?>) Json.parse(" {\"sentences\": [ {\"index\": 0, \"sentimentValue\": \"3\","
+                + " \"sentimentDistribution\": [0.1, 2.5e-1, -1, 0, 1E2]}, {} ], \"ok\": true, \"no\": false,"
+                + " \"none\": null, \"escaped\": \"\\u00e9\\/\\\"\"} ");
+        List<?> sentences = (List<?>) parsed.get("sentences");
+        assertEquals(2, sentences.size());
+        Map<?, ?> first = (Map<?, ?>) sentences.get(0);
+        assertEquals(0.0, first.get("index"));
+        assertEquals("3", first.get("sentimentValue"));
+        assertEquals(Arrays.asList(0.1, 0.25, -1.0, 0.0, 100.0), first.get("sentimentDistribution"));
+        assertTrue(((Map<?, ?>) sentences.get(1)).isEmpty());
+        assertEquals(Boolean.TRUE, parsed.get("ok"));
+        assertEquals(Boolean.FALSE, parsed.get("no"));
+        assertTrue(parsed.containsKey("none"));
+        assertNull(parsed.get("none"));
+        assertEquals("\u00e9/\"", parsed.get("escaped"));
+    }
+
+    public void testParseRejectsMalformed()
+    {
+        String[] malformed = { "", "{", "[1, 2", "{\"a\" 1}", "{a: 1}", "\"unterminated", "tru", "1 2", "\"\\u12\"", "-" };
+        for(String json : malformed)
+        {
+            try
+            {
+                Json.parse(json);
+                fail("parsed " + json);
+            }
+            catch(IllegalArgumentException expected)
+            {
+                // expected
+            }
+        }
+    }
+}